@@ -0,0 +1,277 @@
+package mytunes.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * The {@code InMemoryDataSource} class is a data source for benchmarks run
+ * without the database. Its connections answer queries with rows generated
+ * in memory by given {@code Query}, so DAOs can be measured without the time
+ * spent in the database and on the network. Only the methods used by DAOs
+ * for reading are supported.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class InMemoryDataSource {
+
+    /**
+     * The rows returned by query. Rows are read by index,
+     * so they do not have to be stored.
+     */
+    public interface Rows {
+
+        /**
+         * Returns the number of rows.
+         *
+         * @return The number of rows.
+         */
+        int size();
+
+        /**
+         * Returns the value in given column of given row.
+         *
+         * @param row The index of row, from 0.
+         * @param column The index of column, from 0.
+         * @return The value.
+         */
+        Object get(int row, int column);
+    }
+
+    /**
+     * The answer to SQL statements.
+     */
+    public interface Query {
+
+        /**
+         * Returns the rows of given statement.
+         *
+         * @param sql The text of statement.
+         * @param parameters The bound parameters, the first one at index 0.
+         * @return The rows.
+         */
+        Rows execute(String sql, List<Object> parameters);
+
+        /**
+         * Returns the names of columns of given statement.
+         *
+         * @param sql The text of statement.
+         * @return The names of columns.
+         */
+        String[] getColumns(String sql);
+    }
+
+    private final Query query;
+
+    /**
+     * Creates data source answering statements with given query.
+     *
+     * @param query The answer to statements.
+     */
+    public InMemoryDataSource(Query query)
+    {
+        this.query = query;
+    }
+
+    /**
+     * Returns the data source which can be given to {@code DbConnectionProvider}.
+     *
+     * @return The data source.
+     */
+    public DataSource getDataSource()
+    {
+        return proxy(DataSource.class, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                {
+                    if(method.getName().equals("getConnection"))
+                    {
+                        return createConnection();
+                    }
+                    return unsupported(proxy, method, args);
+                }
+            }
+        );
+    }
+
+    /**
+     * Creates connection which prepares statements answered by the query.
+     */
+    private Connection createConnection()
+    {
+        return proxy(Connection.class, new InvocationHandler()
+            {
+                private boolean autoCommit = true;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                {
+                    switch(method.getName())
+                    {
+                        case "prepareStatement":
+                            return createStatement((String) args[0]);
+                        case "isValid":
+                            return true;
+                        case "isClosed":
+                            return false;
+                        case "getAutoCommit":
+                            return autoCommit;
+                        case "setAutoCommit":
+                            autoCommit = (Boolean) args[0];
+                            return null;
+                        case "commit":
+                        case "rollback":
+                        case "close":
+                            return null;
+                        default:
+                            return unsupported(proxy, method, args);
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Creates statement which binds parameters and answers them with the query.
+     */
+    private PreparedStatement createStatement(final String sql)
+    {
+        final List<Object> parameters = new ArrayList<Object>();
+        return proxy(PreparedStatement.class, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                {
+                    String name = method.getName();
+                    if(name.equals("executeQuery"))
+                    {
+                        return createResultSet(query.getColumns(sql), query.execute(sql, parameters));
+                    }
+                    if(name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer)
+                    {
+                        int index = (Integer) args[0] - 1;
+                        while(parameters.size() <= index)
+                        {
+                            parameters.add(null);
+                        }
+                        parameters.set(index, args[1]);
+                        return null;
+                    }
+                    if(name.equals("setFetchSize") || name.equals("close") || name.equals("clearParameters"))
+                    {
+                        if(name.equals("clearParameters"))
+                        {
+                            parameters.clear();
+                        }
+                        return null;
+                    }
+                    return unsupported(proxy, method, args);
+                }
+            }
+        );
+    }
+
+    /**
+     * Creates result set reading given rows.
+     */
+    private ResultSet createResultSet(final String[] columns, final Rows rows)
+    {
+        return proxy(ResultSet.class, new InvocationHandler()
+            {
+                private int row = -1;
+                private boolean wasNull;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                {
+                    String name = method.getName();
+                    if(name.equals("next"))
+                    {
+                        row++;
+                        return row < rows.size();
+                    }
+                    if(name.equals("close"))
+                    {
+                        return null;
+                    }
+                    if(name.equals("wasNull"))
+                    {
+                        return wasNull;
+                    }
+                    if(name.startsWith("get") && args != null && args.length == 1)
+                    {
+                        Object value = rows.get(row, getColumn(args[0]));
+                        wasNull = value == null;
+                        if(name.equals("getInt"))
+                        {
+                            return value == null ? 0 : ((Number) value).intValue();
+                        }
+                        if(name.equals("getLong"))
+                        {
+                            return value == null ? 0L : ((Number) value).longValue();
+                        }
+                        if(name.equals("getString"))
+                        {
+                            return value == null ? null : value.toString();
+                        }
+                    }
+                    return unsupported(proxy, method, args);
+                }
+
+                /**
+                 * Returns the index of column given by its label or by its index from 1.
+                 */
+                private int getColumn(Object column)
+                {
+                    if(column instanceof Integer)
+                    {
+                        return (Integer) column - 1;
+                    }
+                    for(int i = 0; i < columns.length; i++)
+                    {
+                        if(columns[i].equalsIgnoreCase((String) column))
+                        {
+                            return i;
+                        }
+                    }
+                    throw new IllegalArgumentException("Unknown column " + column);
+                }
+            }
+        );
+    }
+
+    /**
+     * Answers methods of {@code Object} and rejects all other methods.
+     */
+    private static Object unsupported(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        switch(method.getName())
+        {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "InMemory" + method.getDeclaringClass().getSimpleName();
+            default:
+                throw new SQLFeatureNotSupportedException(method.toString());
+        }
+    }
+
+    /**
+     * Creates proxy of given interface.
+     */
+    private static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return type.cast(Proxy.newProxyInstance(InMemoryDataSource.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+}
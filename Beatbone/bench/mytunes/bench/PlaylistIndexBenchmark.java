@@ -0,0 +1,185 @@
+package mytunes.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import mytunes.be.Playlist;
+import mytunes.be.Song;
+
+/**
+ * The {@code PlaylistIndexBenchmark} class measures operations of {@code Playlist}
+ * on a playlist with 50 000 tracks - membership and position queries answered
+ * by the index of positions compared with a linear scan of tracklist, and
+ * operations which have to keep the index up to date. Run with
+ * {@code ant bench -Dbench.class=mytunes.bench.PlaylistIndexBenchmark}.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class PlaylistIndexBenchmark {
+
+    private static final int TRACKS = 50000;
+    private static final int ROUNDS = 5;
+    private static final Random RANDOM = new Random(42);
+
+    private static Playlist playlist;
+    private static List<Song> songs;
+    private static long sink;
+
+    public static void main(String[] args)
+    {
+        songs = new ArrayList<Song>(TRACKS * 2);
+        for(int id = 1; id <= TRACKS * 2; id++)
+        {
+            songs.add(new Song(id, "title " + id, "artist " + id, "genre", "song" + id + ".mp3", 180));
+        }
+        playlist = new Playlist(1, "bench");
+        for(int i = 0; i < TRACKS; i++)
+        {
+            playlist.addSong(songs.get(i));
+        }
+        System.out.println("Playlist with " + TRACKS + " tracks, time per operation:");
+        for(int round = 0; round < ROUNDS; round++)
+        {
+            boolean print = round == ROUNDS - 1;
+            measure(print, "isSongOnTracklist (index)", 1000000, new Operation()
+                {
+                    @Override
+                    public void run(Song song)
+                    {
+                        sink += playlist.isSongOnTracklist(song) ? 1 : 0;
+                    }
+                }
+            );
+            measure(print, "isSongOnTracklist (linear scan)", 2000, new Operation()
+                {
+                    @Override
+                    public void run(Song song)
+                    {
+                        sink += containsById(playlist.getTracklist(), song) ? 1 : 0;
+                    }
+                }
+            );
+            measure(print, "getPositionOfSong (index)", 1000000, new Operation()
+                {
+                    @Override
+                    public void run(Song song)
+                    {
+                        sink += playlist.getPositionOfSong(song);
+                    }
+                }
+            );
+            measure(print, "getPositionOfSong (indexOf)", 2000, new Operation()
+                {
+                    @Override
+                    public void run(Song song)
+                    {
+                        sink += playlist.getTracklist().indexOf(song);
+                    }
+                }
+            );
+            measure(print, "moveSongs one place down", 100000, new Operation()
+                {
+                    @Override
+                    public void run(Song song)
+                    {
+                        int position = playlist.getPositionOfSong(song);
+                        if(position != -1)
+                        {
+                            playlist.moveSongs(Collections.singletonList(song), position + 1);
+                        }
+                    }
+                }
+            );
+            measure(print, "moveSongs bottom to top", 2000, new Operation()
+                {
+                    @Override
+                    public void run(Song song)
+                    {
+                        List<Song> tracklist = playlist.getTracklist();
+                        playlist.moveSongs(Collections.singletonList(tracklist.get(tracklist.size() - 1)), 0);
+                    }
+                }
+            );
+            measure(print, "removeSong + addSong (random place)", 2000, new Operation()
+                {
+                    @Override
+                    public void run(Song song)
+                    {
+                        List<Song> tracklist = playlist.getTracklist();
+                        Song removed = tracklist.get(RANDOM.nextInt(tracklist.size()));
+                        playlist.removeSong(removed);
+                        playlist.addSong(removed);
+                    }
+                }
+            );
+            measure(print, "removeSong + addSong (last song)", 1000000, new Operation()
+                {
+                    @Override
+                    public void run(Song song)
+                    {
+                        List<Song> tracklist = playlist.getTracklist();
+                        Song removed = tracklist.get(tracklist.size() - 1);
+                        playlist.removeSong(removed);
+                        playlist.addSong(removed);
+                    }
+                }
+            );
+        }
+        if(sink == 42)
+        {
+            System.out.println();
+        }
+    }
+
+    /**
+     * The measured operation.
+     */
+    private interface Operation {
+
+        /**
+         * Runs the operation once.
+         *
+         * @param song The random song, on the playlist or not.
+         */
+        void run(Song song);
+    }
+
+    /**
+     * Runs given operation with random songs and prints the time of one operation.
+     */
+    private static void measure(boolean print, String name, int count, Operation operation)
+    {
+        Song[] arguments = new Song[count];
+        for(int i = 0; i < count; i++)
+        {
+            arguments[i] = songs.get(RANDOM.nextInt(songs.size()));
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < count; i++)
+        {
+            operation.run(arguments[i]);
+        }
+        long elapsed = System.nanoTime() - start;
+        if(print)
+        {
+            System.out.printf("  %-38s %12.0f ns%n", name, (double) elapsed / count);
+        }
+    }
+
+    /**
+     * Checks membership like {@code Playlist} did before it had the index.
+     */
+    private static boolean containsById(List<Song> tracklist, Song song)
+    {
+        for(Song s : tracklist)
+        {
+            if(s.getId() == song.getId())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,200 @@
+package mytunes.bench;
+
+import java.util.Arrays;
+import java.util.List;
+import mytunes.be.Playlist;
+import mytunes.be.User;
+import mytunes.dal.DbConnectionProvider;
+import mytunes.dal.SongIdentityMap;
+import mytunes.dal.daos.PlaylistDAO;
+import mytunes.dal.daos.PlaylistSongsDAO;
+
+/**
+ * The {@code PlaylistLoadBenchmark} class measures loading of all playlists
+ * of user with {@code PlaylistDAO.getAllPlaylists}, which reads playlists and
+ * groups their tracks in {@code PlaylistSongsDAO.addAllSongsToPlaylists}.
+ * The library has 10 000 playlists with 200 tracks each, chosen from 20 000 songs.
+ * Rows come from {@code InMemoryDataSource}, so the measured time is the time
+ * spent by the application, without the database and the network. Two cases
+ * are measured - songs already loaded to {@code SongIdentityMap} and songs
+ * which have to be read by their ids. Run with
+ * {@code ant bench -Dbench.class=mytunes.bench.PlaylistLoadBenchmark}.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class PlaylistLoadBenchmark {
+
+    private static final int PLAYLISTS = 10000;
+    private static final int TRACKS = 200;
+    private static final int SONGS = 20000;
+    private static final int WARMUP = 3;
+    private static final int RUNS = 7;
+
+    public static void main(String[] args) throws Exception
+    {
+        DbConnectionProvider.createInstance(new InMemoryDataSource(new LibraryQuery()).getDataSource());
+        User user = new User(1, "bench@beatbone", "");
+        System.out.println("Playlists: " + PLAYLISTS + " x " + TRACKS + " tracks = " + PLAYLISTS * TRACKS + " rows");
+        measure("songs loaded", user, true);
+        measure("songs read by id", user, false);
+        System.exit(0);
+    }
+
+    /**
+     * Loads all playlists several times and prints the times.
+     */
+    private static void measure(String name, User user, boolean songsLoaded) throws Exception
+    {
+        long[] times = new long[RUNS];
+        for(int run = -WARMUP; run < RUNS; run++)
+        {
+            SongIdentityMap identityMap = new SongIdentityMap();
+            if(songsLoaded)
+            {
+                for(int id = 1; id <= SONGS; id++)
+                {
+                    identityMap.getOrCreate(id, "title " + id, "artist " + id, "genre", "song" + id + ".mp3", 180);
+                }
+            }
+            PlaylistDAO dao = new PlaylistDAO(new PlaylistSongsDAO(identityMap));
+            System.gc();
+            long start = System.nanoTime();
+            List<Playlist> playlists = dao.getAllPlaylists(user);
+            long elapsed = System.nanoTime() - start;
+            check(playlists);
+            if(run >= 0)
+            {
+                times[run] = elapsed;
+            }
+        }
+        Arrays.sort(times);
+        System.out.printf("%-18s min=%7.1f ms  median=%7.1f ms  max=%7.1f ms  (%.1f M rows/s)%n", name,
+                times[0] / 1e6, times[RUNS / 2] / 1e6, times[RUNS - 1] / 1e6, PLAYLISTS * TRACKS / (times[RUNS / 2] / 1e3));
+    }
+
+    /**
+     * Checks that all playlists were loaded with all their tracks.
+     */
+    private static void check(List<Playlist> playlists)
+    {
+        if(playlists.size() != PLAYLISTS)
+        {
+            throw new IllegalStateException("Loaded " + playlists.size() + " playlists");
+        }
+        for(Playlist playlist : playlists)
+        {
+            if(playlist.getNumberOfSongs() != TRACKS)
+            {
+                throw new IllegalStateException("Playlist " + playlist.getId() + " has " + playlist.getNumberOfSongs() + " tracks");
+            }
+        }
+    }
+
+    /**
+     * Returns the id of song on given position of given playlist.
+     * Songs on one playlist are different.
+     */
+    private static int getSongId(int playlistIndex, int track)
+    {
+        return (playlistIndex * TRACKS + track * 37) % SONGS + 1;
+    }
+
+    /**
+     * Answers the statements of playlist loading with the generated library.
+     */
+    private static class LibraryQuery implements InMemoryDataSource.Query {
+
+        @Override
+        public String[] getColumns(String sql)
+        {
+            if(sql.startsWith("SELECT * FROM Playlists"))
+            {
+                return new String[] { "id", "name", "userId" };
+            }
+            if(sql.startsWith("SELECT PlaylistSongs.playlistId"))
+            {
+                return new String[] { "playlistId", "songId", "position" };
+            }
+            if(sql.startsWith("SELECT id, title, artist, genre, path, time FROM Songs"))
+            {
+                return new String[] { "id", "title", "artist", "genre", "path", "time" };
+            }
+            throw new IllegalArgumentException("Unexpected statement: " + sql);
+        }
+
+        @Override
+        public InMemoryDataSource.Rows execute(String sql, final List<Object> parameters)
+        {
+            if(sql.startsWith("SELECT * FROM Playlists"))
+            {
+                return new InMemoryDataSource.Rows()
+                    {
+                        @Override
+                        public int size()
+                        {
+                            return PLAYLISTS;
+                        }
+
+                        @Override
+                        public Object get(int row, int column)
+                        {
+                            return column == 0 ? row + 1 : column == 1 ? "playlist " + (row + 1) : 1;
+                        }
+                    };
+            }
+            if(sql.startsWith("SELECT PlaylistSongs.playlistId"))
+            {
+                return new InMemoryDataSource.Rows()
+                    {
+                        @Override
+                        public int size()
+                        {
+                            return PLAYLISTS * TRACKS;
+                        }
+
+                        @Override
+                        public Object get(int row, int column)
+                        {
+                            int playlistIndex = row / TRACKS;
+                            int track = row % TRACKS;
+                            if(column == 0)
+                            {
+                                return playlistIndex + 1;
+                            }
+                            return column == 1 ? getSongId(playlistIndex, track) : (track + 1L) * Playlist.ORDER_KEY_GAP;
+                        }
+                    };
+            }
+            return new InMemoryDataSource.Rows()
+                {
+                    @Override
+                    public int size()
+                    {
+                        return parameters.size() - 1;
+                    }
+
+                    @Override
+                    public Object get(int row, int column)
+                    {
+                        int id = (Integer) parameters.get(row + 1);
+                        switch(column)
+                        {
+                            case 0:
+                                return id;
+                            case 1:
+                                return "title " + id;
+                            case 2:
+                                return "artist " + id;
+                            case 3:
+                                return "genre";
+                            case 4:
+                                return "song" + id + ".mp3";
+                            default:
+                                return 180;
+                        }
+                    }
+                };
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package mytunes.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import mytunes.be.LibrarySnapshot;
+import mytunes.be.Playlist;
+import mytunes.be.Song;
+import mytunes.be.User;
+import mytunes.dal.LibrarySnapshotStore;
+import mytunes.dal.SongIdentityMap;
+
+/**
+ * The {@code SnapshotReloadCheck} class is a manual check of starting from
+ * a stale snapshot. It writes and reads a snapshot like the application does
+ * on start and then reads the same songs again like the full reload which
+ * follows when the change token of database differs from the token of snapshot.
+ * The reload has to return the same objects which are on the list of songs
+ * and on playlists. It does not need a database and is run with
+ * {@code ant bench -Dbench.class=mytunes.bench.SnapshotReloadCheck}.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class SnapshotReloadCheck {
+
+    private static final int SONG_COUNT = 2000;
+
+    public static void main(String[] args) throws Exception
+    {
+        Path directory = Files.createTempDirectory("beatbone-snapshot");
+        User user = new User(1, "check@beatbone", "");
+        List<Song> songs = new ArrayList<Song>();
+        Playlist playlist = new Playlist(1, "check");
+        for(int i = 1; i <= SONG_COUNT; i++)
+        {
+            Song song = new Song(i, "title " + i, "artist " + i, "genre", "song" + i + ".mp3", 180);
+            songs.add(song);
+            playlist.addSong(song);
+        }
+        List<Playlist> playlists = new ArrayList<Playlist>();
+        playlists.add(playlist);
+        new LibrarySnapshotStore(directory, new SongIdentityMap()).write(user, "stale", 0, songs, playlists);
+
+        SongIdentityMap identityMap = new SongIdentityMap();
+        LibrarySnapshot snapshot = new LibrarySnapshotStore(directory, identityMap).read(user);
+        check(snapshot != null, "snapshot was not read");
+        check(identityMap.isLoaded(user.getId()), "songs of snapshot are not marked as loaded");
+
+        //the full reload after stale change token, read in pages like SongDAO.getSongsPage
+        identityMap.startLoading(user.getId());
+        int reused = 0;
+        for(Song song : snapshot.getSongs())
+        {
+            Song reloaded = identityMap.getOrCreate(song.getId(), song.getTitle(), song.getArtist(),
+                    song.getGenre(), song.getPath(), song.getTime());
+            if(reloaded == song)
+            {
+                reused++;
+            }
+        }
+        identityMap.finishLoading(user.getId());
+        check(reused == SONG_COUNT, "reload created " + (SONG_COUNT - reused) + " new objects");
+        for(Song song : snapshot.getPlaylists().get(0).getTracklist())
+        {
+            check(identityMap.get(song.getId()) == song, "song " + song.getId() + " on playlist is another object");
+        }
+
+        //songs of another user are never reused
+        identityMap.startLoading(user.getId() + 1);
+        check(identityMap.size() == 0, "songs of previous user were kept");
+        System.out.println("Snapshot with stale token: " + reused + " of " + SONG_COUNT + " songs reused, OK");
+    }
+
+    /**
+     * Fails the check with given message if condition is not true.
+     */
+    private static void check(boolean condition, String message)
+    {
+        if(!condition)
+        {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import mytunes.gui.util.FxStallWatchdog;
 import mytunes.gui.util.WindowDecorator;
 
 /**
@@ -22,6 +23,7 @@ public class Beatbone extends Application {
     
     @Override
     public void start(Stage stage) throws Exception {
+        FxStallWatchdog.createInstance().start();
         Parent root = FXMLLoader.load(getClass().getResource("gui/view/LoginView.fxml"));
         
         stage.setTitle("Beatbone");
@@ -0,0 +1,121 @@
+package mytunes.be;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code LibraryChanges} class is representing changes in the library
+ * of user made in database since some version. It consist of added or changed
+ * songs, the data read from database for changed songs, ids of deleted songs, added or changed playlists with all their songs,
+ * ids of deleted playlists and the version from which the next changes
+ * should be read.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class LibraryChanges {
+
+    private final long version;
+    private final List<Song> songs;
+    private final Map<Song, Song> changedRows;
+    private final Set<Integer> deletedSongIds;
+    private final List<Playlist> playlists;
+    private final Set<Integer> deletedPlaylistIds;
+
+    /**
+     * Constructs a new set of changes.
+     *
+     * @param version The version from which the next changes should be read.
+     * @param songs The added or changed songs.
+     * @param changedRows The changed songs mapped to songs with data read from database.
+     * @param deletedSongIds The ids of deleted songs.
+     * @param playlists The added or changed playlists.
+     * @param deletedPlaylistIds The ids of deleted playlists.
+     */
+    public LibraryChanges(long version, List<Song> songs, Map<Song, Song> changedRows, Set<Integer> deletedSongIds,
+            List<Playlist> playlists, Set<Integer> deletedPlaylistIds)
+    {
+        this.version = version;
+        this.songs = Collections.unmodifiableList(songs);
+        this.changedRows = Collections.unmodifiableMap(changedRows);
+        this.deletedSongIds = Collections.unmodifiableSet(deletedSongIds);
+        this.playlists = Collections.unmodifiableList(playlists);
+        this.deletedPlaylistIds = Collections.unmodifiableSet(deletedPlaylistIds);
+    }
+
+    /**
+     * Returns the version from which the next changes should be read.
+     *
+     * @return The version of library.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns songs added or changed since the previous version.
+     *
+     * @return The list of songs.
+     */
+    public List<Song> getSongs()
+    {
+        return songs;
+    }
+
+    /**
+     * Returns changed songs which were already loaded, mapped to songs with
+     * data read from database. Songs with data from database are not shared
+     * with the rest of library, their data have to be copied to loaded songs.
+     *
+     * @return The map with songs and their data from database.
+     */
+    public Map<Song, Song> getChangedRows()
+    {
+        return changedRows;
+    }
+
+    /**
+     * Returns ids of songs deleted since the previous version.
+     *
+     * @return The set of ids.
+     */
+    public Set<Integer> getDeletedSongIds()
+    {
+        return deletedSongIds;
+    }
+
+    /**
+     * Returns playlists added or changed since the previous version,
+     * with all songs which are on them.
+     *
+     * @return The list of playlists.
+     */
+    public List<Playlist> getPlaylists()
+    {
+        return playlists;
+    }
+
+    /**
+     * Returns ids of playlists deleted since the previous version.
+     *
+     * @return The set of ids.
+     */
+    public Set<Integer> getDeletedPlaylistIds()
+    {
+        return deletedPlaylistIds;
+    }
+
+    /**
+     * Returns true if nothing was changed.
+     *
+     * @return true if there are no changes.
+     */
+    public boolean isEmpty()
+    {
+        return songs.isEmpty() && deletedSongIds.isEmpty() && playlists.isEmpty() && deletedPlaylistIds.isEmpty();
+    }
+
+}
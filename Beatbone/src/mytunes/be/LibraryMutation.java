@@ -0,0 +1,267 @@
+package mytunes.be;
+
+/**
+ * The {@code LibraryMutation} class is representing one change of library
+ * which has to be written to database. It keeps only ids and new values,
+ * so it can be written after songs and playlists were changed again.
+ * Mutations of the same row have the same key and a newer mutation
+ * can be merged with the older one with {@code mergeWith}.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class LibraryMutation {
+
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        UPDATE_SONG, DELETE_SONG, RENAME_PLAYLIST, DELETE_PLAYLIST, ADD_TRACK, MOVE_TRACK, REMOVE_TRACK
+    }
+
+    private final Type type;
+    private final int songId;
+    private final int playlistId;
+    private final String title;
+    private final String artist;
+    private final String genre;
+    private final long orderKey;
+
+    /**
+     * Constructs a new mutation.
+     */
+    private LibraryMutation(Type type, int songId, int playlistId, String title, String artist, String genre, long orderKey)
+    {
+        this.type = type;
+        this.songId = songId;
+        this.playlistId = playlistId;
+        this.title = title;
+        this.artist = artist;
+        this.genre = genre;
+        this.orderKey = orderKey;
+    }
+
+    /**
+     * Creates mutation changing title, artist and genre of song.
+     *
+     * @param song The song.
+     * @param title The new title.
+     * @param artist The new artist.
+     * @param genre The new genre.
+     * @return The mutation.
+     */
+    public static LibraryMutation updateSong(Song song, String title, String artist, String genre)
+    {
+        return new LibraryMutation(Type.UPDATE_SONG, song.getId(), 0, title, artist, genre, 0);
+    }
+
+    /**
+     * Creates mutation deleting song from all playlists and from library.
+     *
+     * @param song The song.
+     * @return The mutation.
+     */
+    public static LibraryMutation deleteSong(Song song)
+    {
+        return new LibraryMutation(Type.DELETE_SONG, song.getId(), 0, null, null, null, 0);
+    }
+
+    /**
+     * Creates mutation changing name of playlist.
+     *
+     * @param playlist The playlist.
+     * @param name The new name.
+     * @return The mutation.
+     */
+    public static LibraryMutation renamePlaylist(Playlist playlist, String name)
+    {
+        return new LibraryMutation(Type.RENAME_PLAYLIST, 0, playlist.getId(), name, null, null, 0);
+    }
+
+    /**
+     * Creates mutation deleting playlist with all its songs.
+     *
+     * @param playlist The playlist.
+     * @return The mutation.
+     */
+    public static LibraryMutation deletePlaylist(Playlist playlist)
+    {
+        return new LibraryMutation(Type.DELETE_PLAYLIST, 0, playlist.getId(), null, null, null, 0);
+    }
+
+    /**
+     * Creates mutation adding song to playlist with given order key.
+     *
+     * @param playlist The playlist.
+     * @param song The song.
+     * @param orderKey The order key of song on playlist.
+     * @return The mutation.
+     */
+    public static LibraryMutation addTrack(Playlist playlist, Song song, long orderKey)
+    {
+        return new LibraryMutation(Type.ADD_TRACK, song.getId(), playlist.getId(), null, null, null, orderKey);
+    }
+
+    /**
+     * Creates mutation changing order key of song on playlist.
+     *
+     * @param playlist The playlist.
+     * @param song The song.
+     * @param orderKey The new order key of song on playlist.
+     * @return The mutation.
+     */
+    public static LibraryMutation moveTrack(Playlist playlist, Song song, long orderKey)
+    {
+        return new LibraryMutation(Type.MOVE_TRACK, song.getId(), playlist.getId(), null, null, null, orderKey);
+    }
+
+    /**
+     * Creates mutation removing song from playlist.
+     *
+     * @param playlist The playlist.
+     * @param song The song.
+     * @return The mutation.
+     */
+    public static LibraryMutation removeTrack(Playlist playlist, Song song)
+    {
+        return new LibraryMutation(Type.REMOVE_TRACK, song.getId(), playlist.getId(), null, null, null, 0);
+    }
+
+    /**
+     * Returns the key of changed row. Mutations of songs, of playlists
+     * and of songs on playlists have different keys.
+     *
+     * @return The key.
+     */
+    public String getKey()
+    {
+        if(isTrack())
+        {
+            return "track:" + playlistId + ":" + songId;
+        }
+        return playlistId == 0 ? "song:" + songId : "playlist:" + playlistId;
+    }
+
+    /**
+     * Returns true if mutation changes song on playlist.
+     *
+     * @return true for mutations of tracks.
+     */
+    public boolean isTrack()
+    {
+        return type == Type.ADD_TRACK || type == Type.MOVE_TRACK || type == Type.REMOVE_TRACK;
+    }
+
+    /**
+     * Returns the mutation which has the same effect as this mutation
+     * followed by given newer mutation with the same key. Adding and then
+     * removing a song does nothing, so null is returned. Moves and updates
+     * keep only the newest values, and deletes replace everything before.
+     *
+     * @param newer The newer mutation of the same row.
+     * @return The merged mutation or null if mutations cancel each other.
+     */
+    public LibraryMutation mergeWith(LibraryMutation newer)
+    {
+        if(type == Type.ADD_TRACK)
+        {
+            if(newer.type == Type.REMOVE_TRACK)
+            {
+                return null;
+            }
+            return new LibraryMutation(Type.ADD_TRACK, songId, playlistId, null, null, null, newer.orderKey);
+        }
+        if(type == Type.REMOVE_TRACK && newer.type == Type.ADD_TRACK)
+        {
+            return new LibraryMutation(Type.MOVE_TRACK, songId, playlistId, null, null, null, newer.orderKey);
+        }
+        return newer;
+    }
+
+    /**
+     * Returns the kind of change.
+     *
+     * @return The type.
+     */
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * Returns the id of changed song or 0 for mutations of playlists.
+     *
+     * @return The id of song.
+     */
+    public int getSongId()
+    {
+        return songId;
+    }
+
+    /**
+     * Returns the id of changed playlist or 0 for mutations of songs.
+     *
+     * @return The id of playlist.
+     */
+    public int getPlaylistId()
+    {
+        return playlistId;
+    }
+
+    /**
+     * Returns the new title of song.
+     *
+     * @return The title.
+     */
+    public String getTitle()
+    {
+        return title;
+    }
+
+    /**
+     * Returns the new name of playlist.
+     *
+     * @return The name.
+     */
+    public String getName()
+    {
+        return title;
+    }
+
+    /**
+     * Returns the new artist of song.
+     *
+     * @return The artist.
+     */
+    public String getArtist()
+    {
+        return artist;
+    }
+
+    /**
+     * Returns the new genre of song.
+     *
+     * @return The genre.
+     */
+    public String getGenre()
+    {
+        return genre;
+    }
+
+    /**
+     * Returns the new order key of song on playlist.
+     *
+     * @return The order key.
+     */
+    public long getOrderKey()
+    {
+        return orderKey;
+    }
+
+    @Override
+    public String toString()
+    {
+        return type + " " + getKey();
+    }
+
+}
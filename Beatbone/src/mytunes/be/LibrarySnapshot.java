@@ -0,0 +1,80 @@
+package mytunes.be;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code LibrarySnapshot} class is representing the library
+ * of user read from the local copy on disk. It consist of songs,
+ * playlists with their songs and the change token and the version
+ * of database at the moment when the copy was saved.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class LibrarySnapshot {
+
+    private final List<Song> songs;
+    private final List<Playlist> playlists;
+    private final String changeToken;
+    private final long version;
+
+    /**
+     * Constructs a new snapshot.
+     *
+     * @param songs The songs of user.
+     * @param playlists The playlists of user.
+     * @param changeToken The change token of database.
+     * @param version The version of library in database, or 0 if it is unknown.
+     */
+    public LibrarySnapshot(List<Song> songs, List<Playlist> playlists, String changeToken, long version)
+    {
+        this.version = version;
+        this.songs = Collections.unmodifiableList(songs);
+        this.playlists = Collections.unmodifiableList(playlists);
+        this.changeToken = changeToken;
+    }
+
+    /**
+     * Returns songs of user.
+     *
+     * @return The list of songs.
+     */
+    public List<Song> getSongs()
+    {
+        return songs;
+    }
+
+    /**
+     * Returns playlists of user.
+     *
+     * @return The list of playlists.
+     */
+    public List<Playlist> getPlaylists()
+    {
+        return playlists;
+    }
+
+    /**
+     * Returns the change token of database from the moment
+     * when the snapshot was saved.
+     *
+     * @return The change token.
+     */
+    public String getChangeToken()
+    {
+        return changeToken;
+    }
+
+    /**
+     * Returns the version of library in database from the moment
+     * when the snapshot was saved.
+     *
+     * @return The version or 0 if it is unknown.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+}
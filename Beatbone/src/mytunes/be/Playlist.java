@@ -1,14 +1,23 @@
 package mytunes.be;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import mytunes.bll.util.TimeConverter;
 
 /**
  * The {@code Playlist} class is representing 
  * playlist in our application. It consist of basic
  * informations about playlist and stores songs that
- * appear on it.
+ * appear on it. Every song on playlist has an order key. Keys grow
+ * along the tracklist but are not consecutive, so a song can be moved
+ * by giving it a key between the keys of its new neighbours.
+ * Playlist also keeps the positions of songs by their ids, so checking
+ * if song is on playlist and finding its position takes constant time.
  * 
  * @author schemabuoi
  * @author kiddo
@@ -16,11 +25,18 @@ import mytunes.bll.util.TimeConverter;
 
 public class Playlist {
     
+    /**
+     * The default distance between order keys of neighbouring songs.
+     */
+    public static final long ORDER_KEY_GAP = 1 << 16;
+    
     private int id;
     private String name;
     private int time;
     private int numberOfSongs;
     private List<Song> tracklist;
+    private List<Long> orderKeys;
+    private Map<Integer, Integer> positionsBySongId;
     
     /**
      * Constructs a new playlist without any songs.
@@ -35,30 +51,201 @@ public class Playlist {
         time = 0;
         numberOfSongs = 0;
         tracklist = new ArrayList();
+        orderKeys = new ArrayList<Long>();
+        positionsBySongId = new HashMap<Integer, Integer>();
     }
     
     /**
-     * Adds song to playlist.
+     * Adds song to the end of playlist.
      * 
      * @param song The song to add.
      */
     public void addSong(Song song)
+    {
+        addSong(song, getLastOrderKey() + ORDER_KEY_GAP);
+    }
+    
+    /**
+     * Adds song to the end of playlist with given order key.
+     * The key has to be greater than keys of all songs on playlist.
+     * 
+     * @param song The song to add.
+     * @param orderKey The order key of song.
+     */
+    public void addSong(Song song, long orderKey)
     {
         tracklist.add(song);
+        orderKeys.add(orderKey);
+        positionsBySongId.put(song.getId(), tracklist.size() - 1);
         time += song.getTime();
         numberOfSongs++;
     }
     
     /**
-     * Removes song from playlist.
+     * Removes song from playlist. Songs after the removed one move
+     * one place up, so their positions are updated in the same pass - removing
+     * takes time proportional to the number of songs after the removed song
+     * and removing the last song takes constant time.
      * 
      * @param song The song to remove.
      */
     public void removeSong(Song song)
     {
-        tracklist.remove(song);
-        time -= song.getTime();
-        numberOfSongs--;
+        int index = getPositionOfSong(song);
+        if(index != -1)
+        {
+            Song removed = tracklist.remove(index);
+            orderKeys.remove(index);
+            positionsBySongId.remove(song.getId());
+            updatePositions(index, tracklist.size());
+            time -= removed.getTime();
+            numberOfSongs--;
+        }
+    }
+    
+    /**
+     * Moves given songs so they start at the given index. Moved songs
+     * keep their relative order. Target index is counted on the tracklist
+     * without moved songs, so 0 moves them to the top and number of
+     * remaining songs moves them to the bottom. Moved songs get new keys
+     * between keys of their new neighbours. If there is no room between
+     * these keys, all songs on playlist get new keys.
+     * Moved songs are found by the index of positions and only the part of
+     * tracklist between the first and the last changed position is rebuilt,
+     * so moving songs by a few places does not depend on the length of playlist.
+     * 
+     * @param songs The songs to move.
+     * @param targetIndex The index where moved songs should start.
+     * @return The songs which order keys were changed.
+     */
+    public List<Song> moveSongs(List<Song> songs, int targetIndex)
+    {
+        List<Integer> movedIndexes = new ArrayList<Integer>(songs.size());
+        for(Song song : songs)
+        {
+            Integer index = positionsBySongId.get(song.getId());
+            if(index != null)
+            {
+                movedIndexes.add(index);
+            }
+        }
+        if(movedIndexes.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        Collections.sort(movedIndexes);
+        for(int i = movedIndexes.size() - 1; i > 0; i--)
+        {
+            if(movedIndexes.get(i).equals(movedIndexes.get(i - 1)))
+            {
+                movedIndexes.remove(i);
+            }
+        }
+        int movedCount = movedIndexes.size();
+        int remainingCount = tracklist.size() - movedCount;
+        targetIndex = Math.max(0, Math.min(targetIndex, remainingCount));
+        //positions before from and after to do not change
+        int from = Math.min(movedIndexes.get(0), targetIndex);
+        int to = Math.max(movedIndexes.get(movedCount - 1) + 1, targetIndex + movedCount);
+        
+        List<Song> moved = new ArrayList<Song>(movedCount);
+        List<Song> remaining = new ArrayList<Song>(to - from);
+        List<Long> remainingKeys = new ArrayList<Long>(to - from);
+        int next = 0;
+        for(int i = from; i < to; i++)
+        {
+            if(next < movedCount && movedIndexes.get(next) == i)
+            {
+                moved.add(tracklist.get(i));
+                next++;
+            }
+            else
+            {
+                remaining.add(tracklist.get(i));
+                remainingKeys.add(orderKeys.get(i));
+            }
+        }
+        //keys of neighbours, which are outside of the rebuilt part when moved songs go to its edge
+        int offset = targetIndex - from;
+        long lowerKey = targetIndex == 0 ? 0 : offset == 0 ? orderKeys.get(from - 1) : remainingKeys.get(offset - 1);
+        long upperKey;
+        if(targetIndex == remainingCount)
+        {
+            upperKey = lowerKey + ORDER_KEY_GAP * (movedCount + 1);
+        }
+        else
+        {
+            upperKey = offset == remaining.size() ? orderKeys.get(to) : remainingKeys.get(offset);
+        }
+        long step = (upperKey - lowerKey) / (movedCount + 1);
+        
+        remaining.addAll(offset, moved);
+        for(int i = from; i < to; i++)
+        {
+            tracklist.set(i, remaining.get(i - from));
+        }
+        updatePositions(from, to);
+        if(step > 0)
+        {
+            for(int i = 1; i <= movedCount; i++)
+            {
+                remainingKeys.add(offset + i - 1, lowerKey + step * i);
+            }
+            for(int i = from; i < to; i++)
+            {
+                orderKeys.set(i, remainingKeys.get(i - from));
+            }
+            return moved;
+        }
+        renumberOrderKeys();
+        return new ArrayList<Song>(tracklist);
+    }
+    
+    /**
+     * Returns true if given playlist has the same name
+     * and the same songs with the same order keys.
+     * 
+     * @param playlist The playlist to compare.
+     * @return true if playlists have the same content.
+     */
+    public boolean hasSameContent(Playlist playlist)
+    {
+        return (name == null ? playlist.name == null : name.equals(playlist.name))
+                && tracklist.equals(playlist.tracklist)
+                && orderKeys.equals(playlist.orderKeys);
+    }
+    
+    /**
+     * Replaces the name and songs of this playlist with
+     * the name and songs of given playlist, keeping their order keys.
+     * 
+     * @param playlist The playlist to copy.
+     */
+    public void replaceContent(Playlist playlist)
+    {
+        name = playlist.name;
+        tracklist.clear();
+        orderKeys.clear();
+        positionsBySongId.clear();
+        time = 0;
+        numberOfSongs = 0;
+        for(int i = 0; i < playlist.tracklist.size(); i++)
+        {
+            addSong(playlist.tracklist.get(i), playlist.orderKeys.get(i));
+        }
+    }
+    
+    /**
+     * Returns the order key of given song. If song is not
+     * on playlist returns -1.
+     * 
+     * @param song The song from playlist.
+     * @return The order key of song.
+     */
+    public long getOrderKey(Song song)
+    {
+        int index = getPositionOfSong(song);
+        return index == -1 ? -1 : orderKeys.get(index);
     }
     
     /**
@@ -92,18 +279,20 @@ public class Playlist {
     }
     
     /**
-     * Returns the list of songs on playlist.
+     * Returns the list of songs on playlist. The list cannot be
+     * modified - songs have to be added, removed and moved by 
+     * methods of playlist.
      * 
      * @return The list of songs.
      */
     public List<Song> getTracklist() 
     {
-        return tracklist;
+        return Collections.unmodifiableList(tracklist);
     }
     
     /**
      * Sets the list of songs on playlist to 
-     * given list of songs.
+     * given list of songs. Songs get new order keys.
      * 
      * @param songs The list of songs to set.
      */
@@ -111,6 +300,9 @@ public class Playlist {
     {
         tracklist.clear();
         tracklist.addAll(songs);
+        positionsBySongId.clear();
+        updatePositions(0, tracklist.size());
+        renumberOrderKeys();
     }
     
     /**
@@ -153,7 +345,8 @@ public class Playlist {
      */
     public int getPositionOfSong(Song song)
     {
-        return tracklist.indexOf(song);
+        Integer position = positionsBySongId.get(song.getId());
+        return position == null ? -1 : position;
     }
     
     /**
@@ -164,13 +357,56 @@ public class Playlist {
      */
     public boolean isSongOnTracklist(Song song)
     {
-        for(Song s : tracklist)
+        return positionsBySongId.containsKey(song.getId());
+    }
+    
+    /**
+     * Switches the places of songs at given positions. Order keys
+     * stay at their positions, so songs exchange their keys.
+     * 
+     * @param firstPosition The position of first song.
+     * @param secondPosition The position of second song.
+     */
+    public void swapSongs(int firstPosition, int secondPosition)
+    {
+        Collections.swap(tracklist, firstPosition, secondPosition);
+        positionsBySongId.put(tracklist.get(firstPosition).getId(), firstPosition);
+        positionsBySongId.put(tracklist.get(secondPosition).getId(), secondPosition);
+    }
+    
+    /**
+     * Returns the order key of the last song or 0 if playlist is empty.
+     */
+    private long getLastOrderKey()
+    {
+        return orderKeys.isEmpty() ? 0 : orderKeys.get(orderKeys.size() - 1);
+    }
+    
+    /**
+     * Stores the positions of songs between given 
+     * positions (exclusive end) in the map of positions.
+     */
+    private void updatePositions(int from, int to)
+    {
+        for(int i = from; i < to; i++)
         {
-            if(s.getId() == song.getId())
-            {
-                return true;
-            }
+            positionsBySongId.put(tracklist.get(i).getId(), i);
+        }
+    }
+    
+    /**
+     * Gives all songs evenly spaced order keys and recalculates
+     * total time and number of songs.
+     */
+    private void renumberOrderKeys()
+    {
+        orderKeys.clear();
+        time = 0;
+        for(Song song : tracklist)
+        {
+            orderKeys.add(ORDER_KEY_GAP * (orderKeys.size() + 1));
+            time += song.getTime();
         }
-        return false;
+        numberOfSongs = tracklist.size();
     }
 }
@@ -5,6 +5,7 @@
  */
 package mytunes.be;
 
+import mytunes.bll.util.TextFolder;
 import mytunes.bll.util.TimeConverter;
 
 /**
@@ -23,6 +24,9 @@ public class Song {
     private String genre;
     private String path;
     private int time;
+    private String foldedTitle;
+    private String foldedArtist;
+    private String foldedGenre;
     
     /**
      * Constructs a new song.
@@ -41,6 +45,9 @@ public class Song {
         this.genre = genre;
         this.path = path;
         this.time = time;
+        foldedTitle = fold(title);
+        foldedArtist = fold(artist);
+        foldedGenre = fold(genre);
     }
     
     /**
@@ -101,6 +108,7 @@ public class Song {
     public void setTitle(String title) 
     {
         this.title = title;
+        foldedTitle = fold(title);
     }
     
     /**
@@ -111,6 +119,7 @@ public class Song {
     public void setArtist(String artist) 
     {
         this.artist = artist;
+        foldedArtist = fold(artist);
     }
     
     /**
@@ -121,6 +130,40 @@ public class Song {
     public void setGenre(String genre) 
     {
         this.genre = genre;
+        foldedGenre = fold(genre);
+    }
+    
+    /**
+     * Returns title of the song in the form used for searching,
+     * without accents and in lower case.
+     * 
+     * @return The folded title of song.
+     */
+    public String getFoldedTitle()
+    {
+        return foldedTitle;
+    }
+    
+    /**
+     * Returns artist of the song in the form used for searching,
+     * without accents and in lower case.
+     * 
+     * @return The folded artist of song.
+     */
+    public String getFoldedArtist()
+    {
+        return foldedArtist;
+    }
+    
+    /**
+     * Returns genre of the song in the form used for searching,
+     * without accents and in lower case.
+     * 
+     * @return The folded genre of song.
+     */
+    public String getFoldedGenre()
+    {
+        return foldedGenre;
     }
     
     /**
@@ -153,6 +196,14 @@ public class Song {
         return TimeConverter.convertToString(time);
     }
     
+    /**
+     * Returns folded form of given text or empty text if it is null.
+     */
+    private static String fold(String text)
+    {
+        return text == null ? "" : TextFolder.fold(text);
+    }
+    
     @Override
     public String toString()
     {
@@ -0,0 +1,95 @@
+package mytunes.be;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code SongPage} class is representing one page
+ * of songs read from database. It consist of songs on the page,
+ * the data read from database for songs which were already loaded with
+ * other data and the cursor which is used for reading the next page.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class SongPage {
+
+    private final List<Song> songs;
+    private final Map<Song, Song> changedRows;
+    private final int nextCursor;
+    private final boolean hasMore;
+
+    /**
+     * Constructs a new page of songs.
+     *
+     * @param songs The songs on page.
+     * @param nextCursor The cursor of the next page.
+     * @param hasMore true if there are more songs after this page.
+     */
+    public SongPage(List<Song> songs, int nextCursor, boolean hasMore)
+    {
+        this(songs, Collections.<Song, Song>emptyMap(), nextCursor, hasMore);
+    }
+
+    /**
+     * Constructs a new page of songs with data read from database
+     * for songs which differ from their loaded objects.
+     *
+     * @param songs The songs on page.
+     * @param changedRows The songs which data differ mapped to songs with data read from database.
+     * @param nextCursor The cursor of the next page.
+     * @param hasMore true if there are more songs after this page.
+     */
+    public SongPage(List<Song> songs, Map<Song, Song> changedRows, int nextCursor, boolean hasMore)
+    {
+        this.songs = Collections.unmodifiableList(songs);
+        this.changedRows = Collections.unmodifiableMap(changedRows);
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Returns songs on the page.
+     *
+     * @return The list of songs.
+     */
+    public List<Song> getSongs()
+    {
+        return songs;
+    }
+
+    /**
+     * Returns songs on the page which data in database differ from data
+     * of their objects, mapped to songs with data read from database.
+     * Songs with data from database are not shared with the rest of library.
+     *
+     * @return The map with songs and their data from database.
+     */
+    public Map<Song, Song> getChangedRows()
+    {
+        return changedRows;
+    }
+
+    /**
+     * Returns the cursor which should be passed
+     * to read the page after this one.
+     *
+     * @return The cursor of the next page.
+     */
+    public int getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    /**
+     * Returns true if there are more songs after this page.
+     *
+     * @return true if next page can be read.
+     */
+    public boolean hasMore()
+    {
+        return hasMore;
+    }
+
+}
@@ -0,0 +1,132 @@
+package mytunes.be;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code SongSearchPage} class is representing one page of songs
+ * found in database by the prefix of title or artist. Songs which title
+ * starts with the prefix are read first, ordered by title, and then songs
+ * found only by artist, ordered by artist. The cursor of the next page
+ * keeps the value and the id of the last song read, so the next page
+ * continues in the index from this song.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class SongSearchPage {
+
+    /**
+     * The place in search where the next page starts.
+     */
+    public static class Cursor {
+
+        /**
+         * The cursor of the first page.
+         */
+        public static final Cursor FIRST = new Cursor(false, null, 0);
+
+        /**
+         * The cursor of the first page of songs found by artist.
+         */
+        public static final Cursor FIRST_ARTIST = new Cursor(true, null, 0);
+
+        private final boolean artist;
+        private final String lastKey;
+        private final int lastId;
+
+        /**
+         * Constructs a new cursor.
+         *
+         * @param artist true if songs are read by artist.
+         * @param lastKey The title or artist of the last song read, or null before the first one.
+         * @param lastId The id of the last song read.
+         */
+        public Cursor(boolean artist, String lastKey, int lastId)
+        {
+            this.artist = artist;
+            this.lastKey = lastKey;
+            this.lastId = lastId;
+        }
+
+        /**
+         * Returns true if songs are read by artist, false if by title.
+         *
+         * @return true for songs found by artist.
+         */
+        public boolean isArtist()
+        {
+            return artist;
+        }
+
+        /**
+         * Returns the title or artist of the last song read.
+         *
+         * @return The value of the last song or null if no song was read.
+         */
+        public String getLastKey()
+        {
+            return lastKey;
+        }
+
+        /**
+         * Returns the id of the last song read.
+         *
+         * @return The id of the last song.
+         */
+        public int getLastId()
+        {
+            return lastId;
+        }
+    }
+
+    private final List<Song> songs;
+    private final Cursor nextCursor;
+    private final boolean hasMore;
+
+    /**
+     * Constructs a new page of found songs.
+     *
+     * @param songs The songs on page.
+     * @param nextCursor The cursor of the next page.
+     * @param hasMore true if there are more songs after this page.
+     */
+    public SongSearchPage(List<Song> songs, Cursor nextCursor, boolean hasMore)
+    {
+        this.songs = Collections.unmodifiableList(songs);
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Returns songs on the page.
+     *
+     * @return The list of songs.
+     */
+    public List<Song> getSongs()
+    {
+        return songs;
+    }
+
+    /**
+     * Returns the cursor which should be passed
+     * to read the page after this one.
+     *
+     * @return The cursor of the next page.
+     */
+    public Cursor getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    /**
+     * Returns true if there are more songs after this page.
+     *
+     * @return true if next page can be read.
+     */
+    public boolean hasMore()
+    {
+        return hasMore;
+    }
+
+}
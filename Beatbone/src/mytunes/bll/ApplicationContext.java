@@ -0,0 +1,124 @@
+package mytunes.bll;
+
+import java.util.concurrent.ExecutorService;
+import mytunes.bll.util.DatabaseExecutor;
+import mytunes.dal.DalController;
+import mytunes.dal.DbConnectionProvider;
+import mytunes.dal.IDalFacade;
+import mytunes.diagnostics.StartupReport;
+
+/**
+ * The {@code ApplicationContext} class is responsible for
+ * building the single graph of Business Logic Layer and Data Access Layer
+ * objects shared by all models. It is using singleton design pattern.
+ * Objects are created lazily when they are requested for the first time,
+ * and DAOs inside {@code DalController} are created only when they are used.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class ApplicationContext {
+
+    private static ApplicationContext instance;
+    private IDalFacade dalFacade;
+    private IBllFacade bllFacade;
+    private IAsyncBllFacade asyncBllFacade;
+    private ExecutorService databaseExecutor;
+    private StartupReport startupReport;
+
+    /**
+     * Creates an empty context.
+     */
+    private ApplicationContext()
+    {
+        startupReport = StartupReport.createInstance();
+    }
+
+    /**
+     * Returns single instance of ApplicationContext class.
+     *
+     * @return The instance of ApplicationContext class.
+     */
+    public static synchronized ApplicationContext createInstance()
+    {
+        if(instance == null)
+        {
+            instance = new ApplicationContext();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the facade for Business Logic Layer shared by all models.
+     *
+     * @return The BLL facade.
+     */
+    public synchronized IBllFacade getBllFacade()
+    {
+        if(bllFacade == null)
+        {
+            IDalFacade dal = getDalFacade();
+            long start = System.nanoTime();
+            bllFacade = new BllManager(dal);
+            startupReport.record("BllManager", System.nanoTime() - start);
+        }
+        return bllFacade;
+    }
+
+    /**
+     * Returns the asynchronous facade for Business Logic Layer shared by all
+     * models. Its operations run on the executor of database operations.
+     *
+     * @return The asynchronous BLL facade.
+     */
+    public synchronized IAsyncBllFacade getAsyncBllFacade()
+    {
+        if(asyncBllFacade == null)
+        {
+            asyncBllFacade = new AsyncBllManager(getBllFacade(), getDatabaseExecutor());
+        }
+        return asyncBllFacade;
+    }
+
+    /**
+     * Returns the executor of database operations. It runs at most
+     * as many operations at once as there are connections in the pool.
+     *
+     * @return The executor of database operations.
+     */
+    public synchronized ExecutorService getDatabaseExecutor()
+    {
+        if(databaseExecutor == null)
+        {
+            int maxThreads = DbConnectionProvider.createInstance().getPool().getMaxSize();
+            databaseExecutor = DatabaseExecutor.create(maxThreads, "database");
+        }
+        return databaseExecutor;
+    }
+
+    /**
+     * Returns the facade for Data Access Layer shared by all BLL objects.
+     *
+     * @return The DAL facade.
+     */
+    public synchronized IDalFacade getDalFacade()
+    {
+        if(dalFacade == null)
+        {
+            long start = System.nanoTime();
+            dalFacade = new DalController();
+            startupReport.record("DalController", System.nanoTime() - start);
+        }
+        return dalFacade;
+    }
+
+    /**
+     * Returns the report with initialisation times of components.
+     *
+     * @return The startup report.
+     */
+    public StartupReport getStartupReport()
+    {
+        return startupReport;
+    }
+}
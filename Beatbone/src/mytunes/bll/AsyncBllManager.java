@@ -0,0 +1,265 @@
+package mytunes.bll;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import mytunes.be.LibraryChanges;
+import mytunes.be.LibraryMutation;
+import mytunes.be.LibrarySnapshot;
+import mytunes.be.Playlist;
+import mytunes.be.Song;
+import mytunes.be.SongPage;
+import mytunes.be.SongSearchPage;
+import mytunes.be.User;
+
+/**
+ * The {@code AsyncBllManager} class is responsible for running operations
+ * of {@code IBllFacade} on the executor of database operations. It implements
+ * {@code IAsyncBllFacade}, so every method returns a future immediately.
+ * 
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class AsyncBllManager implements IAsyncBllFacade {
+
+    private final IBllFacade bllFacade;
+    private final Executor executor;
+
+    /**
+     * Creates facade running operations of given facade on given executor.
+     * 
+     * @param bllFacade The synchronous facade.
+     * @param executor The executor of database operations.
+     */
+    public AsyncBllManager(IBllFacade bllFacade, Executor executor)
+    {
+        this.bllFacade = bllFacade;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Song> createSong(final User user, final String title, final String artist, final String genre, final String path, final int time)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<Song>()
+            {
+                @Override
+                public Song get()
+                {
+                    return bllFacade.createSong(user, title, artist, genre, path, time);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<List<Song>> getAllSongs(final User user)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<List<Song>>()
+            {
+                @Override
+                public List<Song> get()
+                {
+                    return bllFacade.getAllSongs(user);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<SongPage> getSongsPage(final User user, final int limit, final int cursor)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<SongPage>()
+            {
+                @Override
+                public SongPage get()
+                {
+                    return bllFacade.getSongsPage(user, limit, cursor);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<Integer> getSongCount(final User user)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<Integer>()
+            {
+                @Override
+                public Integer get()
+                {
+                    return bllFacade.getSongCount(user);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<SongSearchPage> searchSongs(final User user, final String prefix, final int limit, final SongSearchPage.Cursor cursor)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<SongSearchPage>()
+            {
+                @Override
+                public SongSearchPage get()
+                {
+                    return bllFacade.searchSongs(user, prefix, limit, cursor);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<LibrarySnapshot> getLibrarySnapshot(final User user)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<LibrarySnapshot>()
+            {
+                @Override
+                public LibrarySnapshot get()
+                {
+                    return bllFacade.getLibrarySnapshot(user);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<Void> saveLibrarySnapshot(final User user, final String changeToken, final long version, final List<Song> songs, final List<Playlist> playlists)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<Void>()
+            {
+                @Override
+                public Void get()
+                {
+                    bllFacade.saveLibrarySnapshot(user, changeToken, version, songs, playlists);
+                    return null;
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<String> getLibraryChangeToken(final User user)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<String>()
+            {
+                @Override
+                public String get()
+                {
+                    return bllFacade.getLibraryChangeToken(user);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<LibraryChanges> getLibraryChanges(final User user, final long since)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<LibraryChanges>()
+            {
+                @Override
+                public LibraryChanges get()
+                {
+                    return bllFacade.getLibraryChanges(user, since);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<Long> getLibraryVersion()
+    {
+        return CompletableFuture.supplyAsync(new Supplier<Long>()
+            {
+                @Override
+                public Long get()
+                {
+                    return bllFacade.getLibraryVersion();
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> saveLibraryMutations(final List<LibraryMutation> mutations)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<Boolean>()
+            {
+                @Override
+                public Boolean get()
+                {
+                    return bllFacade.saveLibraryMutations(mutations);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<Playlist> createPlaylist(final User user, final String name)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<Playlist>()
+            {
+                @Override
+                public Playlist get()
+                {
+                    return bllFacade.createPlaylist(user, name);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<List<Playlist>> getAllPlaylists(final User user)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<List<Playlist>>()
+            {
+                @Override
+                public List<Playlist> get()
+                {
+                    return bllFacade.getAllPlaylists(user);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAllGenres()
+    {
+        return CompletableFuture.supplyAsync(new Supplier<List<String>>()
+            {
+                @Override
+                public List<String> get()
+                {
+                    return bllFacade.getAllGenres();
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<User> createUser(final String email, final String password)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<User>()
+            {
+                @Override
+                public User get()
+                {
+                    return bllFacade.createUser(email, password);
+                }
+            }, executor
+        );
+    }
+
+    @Override
+    public CompletableFuture<User> getUser(final String email, final String password)
+    {
+        return CompletableFuture.supplyAsync(new Supplier<User>()
+            {
+                @Override
+                public User get()
+                {
+                    return bllFacade.getUser(email, password);
+                }
+            }, executor
+        );
+    }
+}
@@ -6,11 +6,14 @@
 package mytunes.bll;
 
 import java.util.List;
+import mytunes.be.LibraryChanges;
+import mytunes.be.LibraryMutation;
+import mytunes.be.LibrarySnapshot;
 import mytunes.be.Playlist;
 import mytunes.be.Song;
+import mytunes.be.SongPage;
+import mytunes.be.SongSearchPage;
 import mytunes.be.User;
-import mytunes.dal.DalController;
-import mytunes.bll.IBllFacade;
 import mytunes.dal.IDalFacade;
 
 /**
@@ -27,10 +30,12 @@ public class BllManager implements IBllFacade{
     
     /**
      * Creates connection with DAL.
+     * 
+     * @param dalController The facade for Data Access Layer.
      */
-    public BllManager()
+    public BllManager(IDalFacade dalController)
     {
-        dalController = new DalController();
+        this.dalController = dalController;
     }
 
     @Override
@@ -39,56 +44,74 @@ public class BllManager implements IBllFacade{
     }
 
     @Override
-    public Song updateSong(Song song, String newTitle, String newArtist, String newGenre) {
-        return dalController.updateSong(song, newTitle, newArtist, newGenre);
+    public List<Song> getAllSongs(User user) {
+        return dalController.getAllSongs(user);
     }
 
     @Override
-    public void deleteSong(Song song) {
-        dalController.deleteSong(song);
+    public Playlist createPlaylist(User user, String name) {
+        return dalController.createPlaylist(user, name);
     }
 
     @Override
-    public List<Song> getAllSongs(User user) {
-        return dalController.getAllSongs(user);
+    public SongPage getSongsPage(User user, int limit, int cursor)
+    {
+        return dalController.getSongsPage(user, limit, cursor);
     }
 
     @Override
-    public Playlist createPlaylist(User user, String name) {
-        return dalController.createPlaylist(user, name);
+    public int getSongCount(User user)
+    {
+        return dalController.getSongCount(user);
     }
 
     @Override
-    public Playlist updatePlaylist(Playlist playlist, String newName) {
-        return dalController.updatePlaylist(playlist, newName);
+    public LibrarySnapshot getLibrarySnapshot(User user)
+    {
+        return dalController.getLibrarySnapshot(user);
     }
 
     @Override
-    public void deletePlaylist(Playlist playlist) {
-        dalController.deletePlaylist(playlist);
+    public void saveLibrarySnapshot(User user, String changeToken, long version, List<Song> songs, List<Playlist> playlists)
+    {
+        dalController.saveLibrarySnapshot(user, changeToken, version, songs, playlists);
     }
 
     @Override
-    public List<Playlist> getAllPlaylists(User user) {
-        return dalController.getAllPlaylists(user);
+    public String getLibraryChangeToken(User user)
+    {
+        return dalController.getLibraryChangeToken(user);
     }
 
     @Override
-    public Playlist switchSongsPlacesOnPlaylist(Playlist playlist, Song firstSong, Song secondSong)
+    public LibraryChanges getLibraryChanges(User user, long since)
     {
-        return dalController.switchSongsPlacesOnPlaylist(playlist, firstSong, secondSong);
+        return dalController.getLibraryChanges(user, since);
     }
 
     @Override
-    public void deleteSongFromPlaylist(Playlist playlist, Song song) {
-        dalController.deleteSongFromPlaylist(playlist, song);
+    public long getLibraryVersion()
+    {
+        return dalController.getLibraryVersion();
     }
 
     @Override
-    public Playlist addSongToPlaylist(Playlist playlist, Song song) {
-        return dalController.addSongToPlaylist(playlist, song);
+    public boolean saveLibraryMutations(List<LibraryMutation> mutations)
+    {
+        return dalController.saveLibraryMutations(mutations);
     }
-    
+
+    @Override
+    public SongSearchPage searchSongs(User user, String prefix, int limit, SongSearchPage.Cursor cursor)
+    {
+        return dalController.searchSongs(user, prefix, limit, cursor);
+    }
+
+    @Override
+    public List<Playlist> getAllPlaylists(User user) {
+        return dalController.getAllPlaylists(user);
+    }
+
     @Override
     public List<String> getAllGenres() {
         return dalController.getAllGenres();
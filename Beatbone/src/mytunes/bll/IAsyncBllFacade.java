@@ -0,0 +1,183 @@
+package mytunes.bll;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import mytunes.be.LibraryChanges;
+import mytunes.be.LibraryMutation;
+import mytunes.be.LibrarySnapshot;
+import mytunes.be.Playlist;
+import mytunes.be.Song;
+import mytunes.be.SongPage;
+import mytunes.be.SongSearchPage;
+import mytunes.be.User;
+
+/**
+ * The {@code IAsyncBllFacade} interface is an asynchronous variant of
+ * {@code IBllFacade}. Every method returns immediately and the operation runs
+ * on the executor of database operations, so the calling thread never waits
+ * for database. Futures are completed on that executor, so results which
+ * change the view have to be passed to JavaFX Application Thread.
+ * 
+ * @author schemabuoi
+ * @author kiddo
+ */
+public interface IAsyncBllFacade {
+    
+    /**
+     * Creates a song in database.
+     * 
+     * @param user The songs user.
+     * @param title The songs title.
+     * @param artist The songs artist.
+     * @param genre The name of genre of song.
+     * @param path The path to file with song.
+     * @param time The time of the song.
+     * @return The future of created song.
+     */
+    CompletableFuture<Song> createSong(User user, String title, String artist, String genre, String path, int time);
+    
+    /**
+     * Gets all songs from database for given user.
+     * 
+     * @param user The songs user.
+     * @return The future of list with songs.
+     */
+    CompletableFuture<List<Song>> getAllSongs(User user);
+    
+    /**
+     * Gets one page of all songs of given user from database. Pages are
+     * read by keyset pagination - the cursor of next page is returned with
+     * every page, so the first songs are available before the rest is read.
+     * 
+     * @param user The songs user.
+     * @param limit The maximal number of songs on page.
+     * @param cursor The cursor of page, 0 for the first page.
+     * @return The future of the page of songs.
+     */
+    CompletableFuture<SongPage> getSongsPage(User user, int limit, int cursor);
+    
+    /**
+     * Gets the number of songs of given user in database. It is read by
+     * index, so the size of library is known before its songs are read.
+     * 
+     * @param user The songs user.
+     * @return The future of the number of songs, 0 if it cannot be read.
+     */
+    CompletableFuture<Integer> getSongCount(User user);
+    
+    /**
+     * Gets one page of songs of given user which title or artist starts
+     * with given prefix, searched in database. Pages are read by keyset
+     * pagination - the cursor of next page is returned with every page.
+     * 
+     * @param user The songs user.
+     * @param prefix The prefix of title or artist.
+     * @param limit The maximal number of songs on page.
+     * @param cursor The cursor of page, {@code SongSearchPage.Cursor.FIRST} for the first page.
+     * @return The future of the page of songs.
+     */
+    CompletableFuture<SongSearchPage> searchSongs(User user, String prefix, int limit, SongSearchPage.Cursor cursor);
+    
+    /**
+     * Gets the snapshot of library of given user stored on local disk.
+     * Songs from the snapshot are the same objects as songs read from
+     * database later.
+     * 
+     * @param user The user.
+     * @return The future of the snapshot or null if there is no valid snapshot of user.
+     */
+    CompletableFuture<LibrarySnapshot> getLibrarySnapshot(User user);
+    
+    /**
+     * Stores the snapshot of library of given user on local disk.
+     * 
+     * @param user The user.
+     * @param changeToken The change token read before songs and playlists.
+     * @param version The version of library read before songs and playlists, or 0 if it is unknown.
+     * @param songs The songs of user.
+     * @param playlists The playlists of user.
+     * @return The future completed when it is done.
+     */
+    CompletableFuture<Void> saveLibrarySnapshot(User user, String changeToken, long version, List<Song> songs, List<Playlist> playlists);
+    
+    /**
+     * Gets the change token of library of given user from the database.
+     * The token is changed by every change of songs, playlists or songs on playlists.
+     * 
+     * @param user The user.
+     * @return The future of the change token or null if it cannot be read.
+     */
+    CompletableFuture<String> getLibraryChangeToken(User user);
+    
+    /**
+     * Gets changes in library of given user made in the database since given
+     * version - added and changed songs and playlists and ids of deleted ones.
+     * Reading changes takes time proportional to the number of changes.
+     * 
+     * @param user The user.
+     * @param since The version returned with previous changes or by {@code getLibraryVersion}.
+     * @return The future of the changes or null if they cannot be read.
+     */
+    CompletableFuture<LibraryChanges> getLibraryChanges(User user, long since);
+    
+    /**
+     * Gets the current version of library in the database. Changes made
+     * after reading the version are returned by {@code getLibraryChanges}.
+     * 
+     * @return The future of the version or 0 if it cannot be read.
+     */
+    CompletableFuture<Long> getLibraryVersion();
+    
+    /**
+     * Writes given changes of library to the database in one transaction,
+     * so either all of them are saved or none.
+     * 
+     * @param mutations The changes, at most one for every changed row.
+     * @return The future of the result, true if changes were saved.
+     */
+    CompletableFuture<Boolean> saveLibraryMutations(List<LibraryMutation> mutations);
+    
+    /**
+     * Creates a Playlist in the database for a given user.
+     * 
+     * @param user The playlist user.
+     * @param name The name of the playlist.
+     * @return The future of created playlist.
+     */
+    CompletableFuture<Playlist> createPlaylist(User user, String name);
+    
+    /**
+     * Gets a list with all playlists from the database for given user. All playlists
+     * consist of all songs that appears on them. Songs on playlists are the same
+     * objects as songs returned by {@code getAllSongs} and {@code getSongsPage}.
+     * 
+     * @param user The playlists user.
+     * @return The future of list with playlists.
+     */
+    CompletableFuture<List<Playlist>> getAllPlaylists(User user);
+    
+    /**
+     * Gets a list with names of all genres from the database.
+     * 
+     * @return The future of list with genres.
+     */
+    CompletableFuture<List<String>> getAllGenres();
+    
+    /**
+     * Creates user in database.
+     * 
+     * @param email The users e-mail address.
+     * @param password The users password.
+     * @return The future of created user.
+     */
+    CompletableFuture<User> createUser(String email, String password);
+    
+    /**
+     * Gets the user with given e-mail address and password from database.
+     * 
+     * @param email The users e-mail address.
+     * @param password The users password.
+     * @return The future of the user.
+     */
+    CompletableFuture<User> getUser(String email, String password);
+}
@@ -0,0 +1,96 @@
+package mytunes.bll.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code DatabaseExecutor} class is creating the executor which runs
+ * database operations outside of JavaFX Application Thread. The number of
+ * operations running at the same time is bounded, usually by the size of
+ * connection pool, so threads do not wait for connections inside the pool
+ * and other operations wait in the queue of executor instead.
+ * On Java 21 and newer the operations run on virtual threads, which are
+ * found by reflection, so the application still runs on older versions
+ * with daemon platform threads.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class DatabaseExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Creates executor running at most given number of operations at once.
+     *
+     * @param maxThreads The maximal number of running operations.
+     * @param name The prefix of names of threads.
+     * @return The executor.
+     */
+    public static ExecutorService create(int maxThreads, String name)
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), createThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns true if operations run on virtual threads.
+     *
+     * @return true if virtual threads are available.
+     */
+    public static boolean isVirtual()
+    {
+        return createVirtualThreadFactory("probe") != null;
+    }
+
+    /**
+     * Returns the factory of virtual threads if they are available,
+     * otherwise the factory of daemon platform threads.
+     */
+    private static ThreadFactory createThreadFactory(final String name)
+    {
+        ThreadFactory virtualFactory = createVirtualThreadFactory(name);
+        if(virtualFactory != null)
+        {
+            return virtualFactory;
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Creates the factory of virtual threads with
+     * {@code Thread.ofVirtual().name(name + "-", 1).factory()}.
+     *
+     * @return The factory or null if virtual threads are not available.
+     */
+    private static ThreadFactory createVirtualThreadFactory(String name)
+    {
+        try
+        {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        }
+        catch(ReflectiveOperationException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+}
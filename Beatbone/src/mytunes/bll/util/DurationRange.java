@@ -0,0 +1,103 @@
+package mytunes.bll.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code DurationRange} class is representing the range
+ * of song times used for filtering songs. Minimum is inclusive
+ * and maximum is exclusive, both in seconds.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class DurationRange {
+
+    /**
+     * The range containing all songs.
+     */
+    public static final DurationRange ANY = new DurationRange("Any length", 0, Integer.MAX_VALUE);
+
+    private static final List<DurationRange> RANGES = Collections.unmodifiableList(Arrays.asList(
+            ANY,
+            new DurationRange("Under 2 min", 0, 120),
+            new DurationRange("2 - 4 min", 120, 240),
+            new DurationRange("4 - 6 min", 240, 360),
+            new DurationRange("6 min and more", 360, Integer.MAX_VALUE)));
+
+    private final String name;
+    private final int minSeconds;
+    private final int maxSeconds;
+
+    /**
+     * Constructs a new range.
+     *
+     * @param name The name of range.
+     * @param minSeconds The shortest time in range.
+     * @param maxSeconds The time right after the longest time in range.
+     */
+    public DurationRange(String name, int minSeconds, int maxSeconds)
+    {
+        this.name = name;
+        this.minSeconds = minSeconds;
+        this.maxSeconds = maxSeconds;
+    }
+
+    /**
+     * Returns the ranges which can be picked for filtering,
+     * starting with the range containing all songs.
+     *
+     * @return The list of ranges.
+     */
+    public static List<DurationRange> getRanges()
+    {
+        return RANGES;
+    }
+
+    /**
+     * Returns name of the range.
+     *
+     * @return The name of range.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the shortest time in range.
+     *
+     * @return The time in seconds.
+     */
+    public int getMinSeconds()
+    {
+        return minSeconds;
+    }
+
+    /**
+     * Returns the time right after the longest time in range.
+     *
+     * @return The time in seconds.
+     */
+    public int getMaxSeconds()
+    {
+        return maxSeconds;
+    }
+
+    /**
+     * Returns true if range contains all songs.
+     *
+     * @return true if range is not limiting songs.
+     */
+    public boolean isAny()
+    {
+        return minSeconds <= 0 && maxSeconds == Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
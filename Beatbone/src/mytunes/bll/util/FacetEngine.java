@@ -0,0 +1,487 @@
+package mytunes.bll.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import mytunes.be.Song;
+
+/**
+ * The {@code FacetEngine} class is responsible for filtering songs
+ * by genre and by range of time. Every song has a number, songs of every
+ * genre are stored as a set of bits and times are kept sorted, so filters
+ * are combined with bit operations instead of going through all songs.
+ * Results and counts of songs are cached until songs are changed.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class FacetEngine {
+
+    private static final String ALL_GENRES = "All genres";
+
+    private final List<Song> songsById;
+    private final Map<Song, Integer> idsBySong;
+    private final Map<String, BitSet> songsByGenre;
+    private final BitSet liveSongs;
+    private int[] times;
+    private int[] sortedIds;
+    private int[] sortedTimes;
+    private boolean sortedValid;
+    private final Map<String, BitSet> cachedBits;
+    private final Map<String, List<Song>> cachedResults;
+    private final Map<String, List<FacetOption<String>>> cachedGenreFacets;
+    private final Map<String, List<FacetOption<DurationRange>>> cachedDurationFacets;
+    private long version;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates an empty engine.
+     */
+    public FacetEngine()
+    {
+        songsById = new ArrayList<Song>();
+        idsBySong = new HashMap<Song, Integer>();
+        songsByGenre = new TreeMap<String, BitSet>(String.CASE_INSENSITIVE_ORDER);
+        liveSongs = new BitSet();
+        times = new int[16];
+        cachedBits = new HashMap<String, BitSet>();
+        cachedResults = new HashMap<String, List<Song>>();
+        cachedGenreFacets = new HashMap<String, List<FacetOption<String>>>();
+        cachedDurationFacets = new HashMap<String, List<FacetOption<DurationRange>>>();
+    }
+
+    /**
+     * Replaces all songs in the engine with given songs.
+     *
+     * @param songs The list of songs.
+     */
+    public synchronized void build(List<Song> songs)
+    {
+        songsById.clear();
+        idsBySong.clear();
+        songsByGenre.clear();
+        liveSongs.clear();
+        times = new int[Math.max(16, songs.size())];
+        for(Song song : songs)
+        {
+            put(song);
+        }
+        changed();
+    }
+
+    /**
+     * Adds song to the engine. If song was already added,
+     * its genre and time are updated.
+     *
+     * @param song The song to add.
+     */
+    public synchronized void addSong(Song song)
+    {
+        addSongs(Collections.singletonList(song));
+    }
+
+    /**
+     * Adds songs from given list to the engine. Cached results
+     * are dropped once for all songs.
+     *
+     * @param songs The list of songs.
+     */
+    public synchronized void addSongs(List<Song> songs)
+    {
+        for(Song song : songs)
+        {
+            if(idsBySong.containsKey(song))
+            {
+                removeBits(song, idsBySong.get(song));
+                addBits(song, idsBySong.get(song));
+            }
+            else
+            {
+                put(song);
+            }
+        }
+        changed();
+    }
+
+    /**
+     * Updates genre and time of given song.
+     *
+     * @param song The changed song.
+     */
+    public synchronized void updateSong(Song song)
+    {
+        addSong(song);
+    }
+
+    /**
+     * Removes song from the engine.
+     *
+     * @param song The song to remove.
+     */
+    public synchronized void removeSong(Song song)
+    {
+        Integer id = idsBySong.remove(song);
+        if(id != null)
+        {
+            removeBits(song, id);
+            songsById.set(id, null);
+            changed();
+        }
+    }
+
+    /**
+     * Returns the number which is changed every time songs are changed.
+     *
+     * @return The version of engine.
+     */
+    public synchronized long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns songs of given genre in given range of time. If songs
+     * found by text are given, only those are returned, in their order,
+     * otherwise all matching songs are returned and the result is cached.
+     *
+     * @param genre The genre or null for all genres.
+     * @param range The range of time.
+     * @param matches The songs found by text or null.
+     * @return The list of songs.
+     */
+    public synchronized List<Song> filter(String genre, DurationRange range, List<Song> matches)
+    {
+        BitSet bits = getBits(genre, range);
+        if(matches != null)
+        {
+            List<Song> result = new ArrayList<Song>();
+            for(Song song : matches)
+            {
+                Integer id = idsBySong.get(song);
+                if(id != null && bits.get(id))
+                {
+                    result.add(song);
+                }
+            }
+            return result;
+        }
+        String key = genre + "|" + range.getMinSeconds() + "|" + range.getMaxSeconds();
+        List<Song> result = cachedResults.get(key);
+        countLookup(result != null);
+        if(result == null)
+        {
+            result = new ArrayList<Song>(bits.cardinality());
+            for(int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1))
+            {
+                result.add(songsById.get(id));
+            }
+            cachedResults.put(key, result);
+        }
+        return new ArrayList<Song>(result);
+    }
+
+    /**
+     * Returns options for filtering by genre with numbers of songs
+     * in given range of time, starting with the option for all genres.
+     * Numbers are limited to songs found by text if they are given.
+     *
+     * @param range The range of time.
+     * @param matches The songs found by text or null.
+     * @return The list of options.
+     */
+    public synchronized List<FacetOption<String>> getGenreFacets(DurationRange range, List<Song> matches)
+    {
+        String key = "genres|" + range.getMinSeconds() + "|" + range.getMaxSeconds();
+        if(matches == null)
+        {
+            countLookup(cachedGenreFacets.containsKey(key));
+        }
+        if(matches == null && cachedGenreFacets.containsKey(key))
+        {
+            return new ArrayList<FacetOption<String>>(cachedGenreFacets.get(key));
+        }
+        BitSet base = getBits(null, range);
+        if(matches != null)
+        {
+            base.and(toBits(matches));
+        }
+        List<FacetOption<String>> facets = new ArrayList<FacetOption<String>>();
+        facets.add(new FacetOption<String>(null, ALL_GENRES, base.cardinality()));
+        for(Map.Entry<String, BitSet> entry : songsByGenre.entrySet())
+        {
+            BitSet bits = (BitSet) entry.getValue().clone();
+            bits.and(base);
+            facets.add(new FacetOption<String>(entry.getKey(), entry.getKey(), bits.cardinality()));
+        }
+        if(matches == null)
+        {
+            cachedGenreFacets.put(key, facets);
+        }
+        return facets;
+    }
+
+    /**
+     * Returns options for filtering by range of time with numbers of songs
+     * of given genre. Numbers are limited to songs found by text if they are given.
+     *
+     * @param genre The genre or null for all genres.
+     * @param matches The songs found by text or null.
+     * @return The list of options.
+     */
+    public synchronized List<FacetOption<DurationRange>> getDurationFacets(String genre, List<Song> matches)
+    {
+        String key = "durations|" + genre;
+        if(matches == null)
+        {
+            countLookup(cachedDurationFacets.containsKey(key));
+        }
+        if(matches == null && cachedDurationFacets.containsKey(key))
+        {
+            return new ArrayList<FacetOption<DurationRange>>(cachedDurationFacets.get(key));
+        }
+        BitSet base = getBits(genre, DurationRange.ANY);
+        if(matches != null)
+        {
+            base.and(toBits(matches));
+        }
+        List<FacetOption<DurationRange>> facets = new ArrayList<FacetOption<DurationRange>>();
+        for(DurationRange range : DurationRange.getRanges())
+        {
+            BitSet bits = getRangeBits(range);
+            bits.and(base);
+            facets.add(new FacetOption<DurationRange>(range, range.getName(), bits.cardinality()));
+        }
+        if(matches == null)
+        {
+            cachedDurationFacets.put(key, facets);
+        }
+        return facets;
+    }
+
+    /**
+     * Returns the bits of songs of given genre in given range of time.
+     * Returned set is a copy which can be changed.
+     */
+    private BitSet getBits(String genre, DurationRange range)
+    {
+        String key = genre + "|" + range.getMinSeconds() + "|" + range.getMaxSeconds();
+        BitSet bits = cachedBits.get(key);
+        countLookup(bits != null);
+        if(bits == null)
+        {
+            if(genre == null)
+            {
+                bits = (BitSet) liveSongs.clone();
+            }
+            else
+            {
+                BitSet genreBits = songsByGenre.get(genre);
+                bits = genreBits == null ? new BitSet() : (BitSet) genreBits.clone();
+            }
+            if(!range.isAny())
+            {
+                bits.and(getRangeBits(range));
+            }
+            cachedBits.put(key, bits);
+        }
+        return (BitSet) bits.clone();
+    }
+
+    /**
+     * Returns the bits of songs in given range of time,
+     * found by binary search in sorted times.
+     */
+    private BitSet getRangeBits(DurationRange range)
+    {
+        if(range.isAny())
+        {
+            return (BitSet) liveSongs.clone();
+        }
+        sortTimes();
+        BitSet bits = new BitSet(songsById.size());
+        int from = lowerBound(range.getMinSeconds());
+        int to = lowerBound(range.getMaxSeconds());
+        for(int i = from; i < to; i++)
+        {
+            bits.set(sortedIds[i]);
+        }
+        return bits;
+    }
+
+    /**
+     * Returns the position of the first sorted time
+     * which is not smaller than given time.
+     */
+    private int lowerBound(int time)
+    {
+        int low = 0;
+        int high = sortedTimes.length;
+        while(low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if(sortedTimes[middle] < time)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sorts times of live songs if songs were changed since last sorting.
+     */
+    private void sortTimes()
+    {
+        if(sortedValid)
+        {
+            return;
+        }
+        int count = liveSongs.cardinality();
+        long[] pairs = new long[count];
+        int i = 0;
+        for(int id = liveSongs.nextSetBit(0); id >= 0; id = liveSongs.nextSetBit(id + 1))
+        {
+            pairs[i++] = ((long) times[id] << 32) | id;
+        }
+        Arrays.sort(pairs);
+        sortedTimes = new int[count];
+        sortedIds = new int[count];
+        for(i = 0; i < count; i++)
+        {
+            sortedTimes[i] = (int) (pairs[i] >>> 32);
+            sortedIds[i] = (int) pairs[i];
+        }
+        sortedValid = true;
+    }
+
+    /**
+     * Returns the bits of given songs.
+     */
+    private BitSet toBits(List<Song> songs)
+    {
+        BitSet bits = new BitSet(songsById.size());
+        for(Song song : songs)
+        {
+            Integer id = idsBySong.get(song);
+            if(id != null)
+            {
+                bits.set(id);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Gives the next number to the song and adds it to bit sets.
+     */
+    private void put(Song song)
+    {
+        int id = songsById.size();
+        songsById.add(song);
+        idsBySong.put(song, id);
+        addBits(song, id);
+    }
+
+    /**
+     * Adds song with given number to the bit sets.
+     */
+    private void addBits(Song song, int id)
+    {
+        String genre = getGenre(song);
+        BitSet bits = songsByGenre.get(genre);
+        if(bits == null)
+        {
+            bits = new BitSet();
+            songsByGenre.put(genre, bits);
+        }
+        bits.set(id);
+        liveSongs.set(id);
+        if(id >= times.length)
+        {
+            times = Arrays.copyOf(times, Math.max(id + 1, times.length * 2));
+        }
+        times[id] = Math.max(0, song.getTime());
+    }
+
+    /**
+     * Removes song with given number from the bit sets.
+     */
+    private void removeBits(Song song, int id)
+    {
+        for(Map.Entry<String, BitSet> entry : new ArrayList<Map.Entry<String, BitSet>>(songsByGenre.entrySet()))
+        {
+            entry.getValue().clear(id);
+            if(entry.getValue().isEmpty())
+            {
+                songsByGenre.remove(entry.getKey());
+            }
+        }
+        liveSongs.clear(id);
+    }
+
+    /**
+     * Returns the genre of song used as a key.
+     */
+    private static String getGenre(Song song)
+    {
+        return song.getGenre() == null ? "" : song.getGenre();
+    }
+
+    /**
+     * Returns the number of results and counts of songs found in cache.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of results and counts of songs which had to be computed.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Counts the lookup of cached results.
+     */
+    private void countLookup(boolean hit)
+    {
+        if(hit)
+        {
+            hitCount++;
+        }
+        else
+        {
+            missCount++;
+        }
+    }
+
+    /**
+     * Drops cached results after songs were changed.
+     */
+    private void changed()
+    {
+        version++;
+        sortedValid = false;
+        cachedBits.clear();
+        cachedResults.clear();
+        cachedGenreFacets.clear();
+        cachedDurationFacets.clear();
+    }
+}
@@ -0,0 +1,57 @@
+package mytunes.bll.util;
+
+/**
+ * The {@code FacetOption} class is representing one value
+ * which can be picked for filtering songs, together with the number
+ * of songs which would be shown after picking it.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ * @param <V> The type of value.
+ */
+public class FacetOption<V> {
+
+    private final V value;
+    private final String name;
+    private final int count;
+
+    /**
+     * Constructs a new option.
+     *
+     * @param value The value, or null if option is not limiting songs.
+     * @param name The name of option.
+     * @param count The number of songs.
+     */
+    public FacetOption(V value, String name, int count)
+    {
+        this.value = value;
+        this.name = name;
+        this.count = count;
+    }
+
+    /**
+     * Returns the value of option.
+     *
+     * @return The value or null if option is not limiting songs.
+     */
+    public V getValue()
+    {
+        return value;
+    }
+
+    /**
+     * Returns the number of songs for this option.
+     *
+     * @return The number of songs.
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + " (" + count + ")";
+    }
+}
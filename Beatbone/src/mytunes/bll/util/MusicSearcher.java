@@ -1,66 +1,279 @@
 package mytunes.bll.util;
 
-import java.util.ArrayList;
 import java.util.List;
 import mytunes.be.Playlist;
 import mytunes.be.Song;
 
 /**
  * The {@code MusicSearcher} class is responsible for
- * filtering lists of songs and playlists.  
- * 
+ * filtering lists of songs and playlists. It keeps prefix indexes
+ * of titles, artists and genres of songs and of names of playlists, and
+ * a trigram index of the same song fields for searching with typos.
+ * Indexes have to be updated every time songs or playlists are changed.
+ * Results are ranked, so the best matches are returned first.
+ *
  * @author schemabuoi
  * @author kiddo
  */
 public class MusicSearcher {
-    
+
     /**
-     * Takes the list with songs and filter and
-     * returns filtered list.
-     * 
-     * @param songList The List with songs to filter.
-     * @param filter The filter for list.
-     * @return Filtered list of songs.
+     * The number of best matches which are sorted by rank.
+     */
+    public static final int PAGE_SIZE = 100;
+    private static final int TITLE_WEIGHT = 3;
+    private static final int ARTIST_WEIGHT = 2;
+    private static final int GENRE_WEIGHT = 1;
+
+    private PrefixIndex<Song> songIndex;
+    private PrefixIndex<Playlist> playlistIndex;
+    private TrigramIndex<Song> fuzzySongIndex;
+    private volatile boolean songIndexEnabled;
+
+    /**
+     * Creates searcher with empty indexes.
+     */
+    public MusicSearcher()
+    {
+        songIndex = new PrefixIndex<Song>(TITLE_WEIGHT, ARTIST_WEIGHT, GENRE_WEIGHT);
+        playlistIndex = new PrefixIndex<Playlist>();
+        fuzzySongIndex = new TrigramIndex<Song>();
+        songIndexEnabled = true;
+    }
+
+    /**
+     * Enables or disables indexes of songs. When indexes are disabled
+     * they are cleared and changes of songs are ignored, so libraries
+     * searched in database do not take memory for indexes.
+     *
+     * @param enabled true if songs should be indexed.
      */
-    public static List<Song> searchSongs(List<Song> songList, String filter)
+    public void setSongIndexEnabled(boolean enabled)
     {
-        filter = filter.toLowerCase();
-        List<Song> filteredSongs = new ArrayList();
-        for(Song s : songList)
+        songIndexEnabled = enabled;
+        if(!enabled)
         {
-            if(filter.length() <= s.getTitle().length() && filter.equals(s.getTitle().toLowerCase().substring(0, filter.length())))
-            {
-                filteredSongs.add(s);
-            }
-            else if(filter.length() <= s.getArtist().length() && filter.equals(s.getArtist().toLowerCase().substring(0, filter.length())))
+            songIndex.clear();
+            fuzzySongIndex.clear();
+        }
+    }
+
+    /**
+     * Returns true if songs are indexed.
+     *
+     * @return true if indexes of songs are enabled.
+     */
+    public boolean isSongIndexEnabled()
+    {
+        return songIndexEnabled;
+    }
+
+    /**
+     * Replaces all indexed songs with songs from given list.
+     *
+     * @param songs The list of songs.
+     */
+    public void indexSongs(List<Song> songs)
+    {
+        songIndex.clear();
+        if(!songIndexEnabled)
+        {
+            fuzzySongIndex.clear();
+            return;
+        }
+        for(Song s : songs)
+        {
+            songIndex.add(s, s.getFoldedTitle(), s.getFoldedArtist(), s.getFoldedGenre());
+        }
+        fuzzySongIndex.build(songs, new TrigramIndex.TextSource<Song>()
             {
-                filteredSongs.add(s);
+                @Override
+                public String[] getTexts(Song song)
+                {
+                    return new String[] {song.getFoldedTitle(), song.getFoldedArtist(), song.getFoldedGenre()};
+                }
             }
+        );
+    }
+
+    /**
+     * Adds song to the index. If song was already indexed,
+     * its entries are updated.
+     *
+     * @param song The song to add.
+     */
+    public void addSong(Song song)
+    {
+        if(!songIndexEnabled)
+        {
+            return;
         }
-        return filteredSongs;
+        songIndex.add(song, song.getFoldedTitle(), song.getFoldedArtist(), song.getFoldedGenre());
+        fuzzySongIndex.add(song, song.getFoldedTitle(), song.getFoldedArtist(), song.getFoldedGenre());
     }
-    
+
     /**
-     * Takes the list with playlists and filter and
-     * returns filtered list.
-     * 
-     * @param playlists The List with playlists to filter.
-     * @param filter The filter for list.
-     * @return Filtered list of playlists.
+     * Adds songs from given list to the index.
+     *
+     * @param songs The list of songs.
      */
-    public static List<Playlist> searchPlaylists(List<Playlist> playlists, String filter)
+    public void addSongs(List<Song> songs)
     {
-        filter = filter.toLowerCase();
-        List<Playlist> filteredPlaylists = new ArrayList();
+        for(Song song : songs)
+        {
+            addSong(song);
+        }
+    }
+
+    /**
+     * Updates entries of changed song in the index.
+     *
+     * @param song The changed song.
+     */
+    public void updateSong(Song song)
+    {
+        addSong(song);
+    }
+
+    /**
+     * Removes song from the index.
+     *
+     * @param song The song to remove.
+     */
+    public void removeSong(Song song)
+    {
+        songIndex.remove(song);
+        fuzzySongIndex.remove(song);
+    }
+
+    /**
+     * Replaces all indexed playlists with playlists from given list.
+     *
+     * @param playlists The list of playlists.
+     */
+    public void indexPlaylists(List<Playlist> playlists)
+    {
+        playlistIndex.clear();
         for(Playlist p : playlists)
         {
-            if(filter.length() <= p.getName().length() && filter.equals(p.getName().toLowerCase().substring(0, filter.length())))
-            {
-                filteredPlaylists.add(p);
-            }
+            addPlaylist(p);
         }
-        return filteredPlaylists;
-        
     }
-    
+
+    /**
+     * Adds playlist to the index. If playlist was already indexed,
+     * its entries are updated.
+     *
+     * @param playlist The playlist to add.
+     */
+    public void addPlaylist(Playlist playlist)
+    {
+        playlistIndex.add(playlist, playlist.getName());
+    }
+
+    /**
+     * Updates entries of changed playlist in the index.
+     *
+     * @param playlist The changed playlist.
+     */
+    public void updatePlaylist(Playlist playlist)
+    {
+        addPlaylist(playlist);
+    }
+
+    /**
+     * Removes playlist from the index.
+     *
+     * @param playlist The playlist to remove.
+     */
+    public void removePlaylist(Playlist playlist)
+    {
+        playlistIndex.remove(playlist);
+    }
+
+    /**
+     * Creates search session for one search box with songs.
+     * The session narrows previous results when the query is extended.
+     *
+     * @return The new search session.
+     */
+    public SearchSession<Song> createSongSession()
+    {
+        return new SearchSession<Song>(songIndex);
+    }
+
+    /**
+     * Creates search session for one search box with playlists.
+     * The session narrows previous results when the query is extended.
+     *
+     * @return The new search session.
+     */
+    public SearchSession<Playlist> createPlaylistSession()
+    {
+        return new SearchSession<Playlist>(playlistIndex);
+    }
+
+    /**
+     * Returns indexed songs in which every word of filter starts some word
+     * of title, artist or genre. The best matches are returned first.
+     *
+     * @param filter The filter for songs.
+     * @return Filtered list of songs.
+     */
+    public List<Song> searchSongs(String filter)
+    {
+        return rankSongs(songIndex.search(filter), filter);
+    }
+
+    /**
+     * Moves the best matches of filter among given songs to the beginning.
+     * Only the first {@code PAGE_SIZE} songs are sorted by rank.
+     *
+     * @param songs The songs matching the filter.
+     * @param filter The filter for songs.
+     * @return The list of songs with the best matches first.
+     */
+    public List<Song> rankSongs(List<Song> songs, String filter)
+    {
+        return songIndex.rank(songs, filter, PAGE_SIZE);
+    }
+
+    /**
+     * Returns indexed songs which title, artist or genre contain
+     * words similar to all words of given filter, allowing few typos.
+     * The most similar songs are returned first.
+     *
+     * @param filter The filter for songs.
+     * @return Filtered list of songs.
+     */
+    public List<Song> searchSongsFuzzy(String filter)
+    {
+        return fuzzySongIndex.search(filter);
+    }
+
+    /**
+     * Returns indexed playlists in which every word of filter
+     * starts some word of name. The best matches are returned first.
+     *
+     * @param filter The filter for playlists.
+     * @return Filtered list of playlists.
+     */
+    public List<Playlist> searchPlaylists(String filter)
+    {
+        return rankPlaylists(playlistIndex.search(filter), filter);
+    }
+
+    /**
+     * Moves the best matches of filter among given playlists to the beginning.
+     * Only the first {@code PAGE_SIZE} playlists are sorted by rank.
+     *
+     * @param playlists The playlists matching the filter.
+     * @param filter The filter for playlists.
+     * @return The list of playlists with the best matches first.
+     */
+    public List<Playlist> rankPlaylists(List<Playlist> playlists, String filter)
+    {
+        return playlistIndex.rank(playlists, filter, PAGE_SIZE);
+    }
+
 }
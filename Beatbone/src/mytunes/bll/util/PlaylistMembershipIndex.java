@@ -0,0 +1,142 @@
+package mytunes.bll.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import mytunes.be.Playlist;
+import mytunes.be.Song;
+
+/**
+ * The {@code PlaylistMembershipIndex} class is storing for every song
+ * the playlists on which this song appears. It has to be updated every time
+ * a song is added to or deleted from playlist, so operations on single song
+ * do not have to go through all playlists.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class PlaylistMembershipIndex {
+
+    private final Map<Integer, Set<Playlist>> playlistsBySongId;
+
+    /**
+     * Creates an empty index.
+     */
+    public PlaylistMembershipIndex()
+    {
+        playlistsBySongId = new HashMap<Integer, Set<Playlist>>();
+    }
+
+    /**
+     * Clears the index and adds all songs from given playlists to it.
+     *
+     * @param playlists The list of playlists.
+     */
+    public void build(List<Playlist> playlists)
+    {
+        playlistsBySongId.clear();
+        for(Playlist playlist : playlists)
+        {
+            addPlaylist(playlist);
+        }
+    }
+
+    /**
+     * Adds all songs from given playlist to the index.
+     *
+     * @param playlist The playlist to add.
+     */
+    public void addPlaylist(Playlist playlist)
+    {
+        for(Song song : playlist.getTracklist())
+        {
+            addSong(playlist, song);
+        }
+    }
+
+    /**
+     * Removes all songs of given playlist from the index.
+     *
+     * @param playlist The playlist to remove.
+     */
+    public void removePlaylist(Playlist playlist)
+    {
+        for(Song song : playlist.getTracklist())
+        {
+            removeSong(playlist, song);
+        }
+    }
+
+    /**
+     * Stores information that given song is on given playlist.
+     *
+     * @param playlist The playlist with song.
+     * @param song The song on playlist.
+     */
+    public void addSong(Playlist playlist, Song song)
+    {
+        Set<Playlist> playlists = playlistsBySongId.get(song.getId());
+        if(playlists == null)
+        {
+            playlists = new LinkedHashSet<Playlist>();
+            playlistsBySongId.put(song.getId(), playlists);
+        }
+        playlists.add(playlist);
+    }
+
+    /**
+     * Removes information that given song is on given playlist.
+     *
+     * @param playlist The playlist with song.
+     * @param song The song on playlist.
+     */
+    public void removeSong(Playlist playlist, Song song)
+    {
+        Set<Playlist> playlists = playlistsBySongId.get(song.getId());
+        if(playlists != null)
+        {
+            playlists.remove(playlist);
+            if(playlists.isEmpty())
+            {
+                playlistsBySongId.remove(song.getId());
+            }
+        }
+    }
+
+    /**
+     * Removes given song from the index and returns
+     * the playlists which contained it.
+     *
+     * @param song The song to remove.
+     * @return The list of playlists with song.
+     */
+    public List<Playlist> removeSongFromAll(Song song)
+    {
+        Set<Playlist> playlists = playlistsBySongId.remove(song.getId());
+        if(playlists == null)
+        {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Playlist>(playlists);
+    }
+
+    /**
+     * Returns the playlists which contain given song.
+     *
+     * @param song The song to check.
+     * @return The list of playlists with song.
+     */
+    public List<Playlist> getPlaylists(Song song)
+    {
+        Set<Playlist> playlists = playlistsBySongId.get(song.getId());
+        if(playlists == null)
+        {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Playlist>(playlists);
+    }
+}
@@ -0,0 +1,416 @@
+package mytunes.bll.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code PrefixIndex} class is a sorted index of words
+ * used for finding items by prefixes of words. Query is split into tokens
+ * and an item is found when every token is the beginning of some word
+ * in any of its fields. Fields and query are folded by {@code TextFolder},
+ * so case and accents are ignored. Finding items takes time proportional to the
+ * number of matching words, not to the number of items.
+ *
+ * Found items can be ranked - words matched whole score more than
+ * prefixes, fields have their own weights and a field starting
+ * with the whole query gets a bonus.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ * @param <T> The type of indexed items.
+ */
+public class PrefixIndex<T> implements SearchSession.Source<T> {
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("\\s+");
+    private static final int WORD_SCORE = 4;
+    private static final int PREFIX_SCORE = 2;
+    private static final int FIELD_START_SCORE = 8;
+
+    private final NavigableMap<String, Set<T>> itemsByKey;
+    private final Map<T, Fields> fieldsByItem;
+    private final int[] fieldWeights;
+    private long version;
+
+    /**
+     * Creates an empty index. Texts of items are treated as fields
+     * with given weights, in the same order.
+     *
+     * @param fieldWeights The weights of fields used for ranking.
+     */
+    public PrefixIndex(int... fieldWeights)
+    {
+        itemsByKey = new TreeMap<String, Set<T>>();
+        fieldsByItem = new HashMap<T, Fields>();
+        this.fieldWeights = fieldWeights;
+    }
+
+    /**
+     * Adds item to the index under words of given fields.
+     * If item was already indexed, its old words are removed.
+     *
+     * @param item The item to add.
+     * @param fields The texts by which item can be found.
+     */
+    public synchronized void add(T item, String... fields)
+    {
+        remove(item);
+        Fields folded = new Fields(fields);
+        for(String key : createKeys(folded))
+        {
+            Set<T> items = itemsByKey.get(key);
+            if(items == null)
+            {
+                items = new LinkedHashSet<T>();
+                itemsByKey.put(key, items);
+            }
+            items.add(item);
+        }
+        fieldsByItem.put(item, folded);
+        version++;
+    }
+
+    /**
+     * Removes item from the index.
+     *
+     * @param item The item to remove.
+     */
+    public synchronized void remove(T item)
+    {
+        Fields fields = fieldsByItem.remove(item);
+        if(fields == null)
+        {
+            return;
+        }
+        version++;
+        for(String key : createKeys(fields))
+        {
+            Set<T> items = itemsByKey.get(key);
+            if(items != null)
+            {
+                items.remove(item);
+                if(items.isEmpty())
+                {
+                    itemsByKey.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all items from the index.
+     */
+    public synchronized void clear()
+    {
+        itemsByKey.clear();
+        fieldsByItem.clear();
+        version++;
+    }
+
+    /**
+     * Returns all items in which every token of query is the beginning
+     * of some word. Tokens are compared without case and the items found
+     * for the rarest token are checked against other tokens.
+     *
+     * @param query The query to search for.
+     * @return The list of matching items.
+     */
+    @Override
+    public synchronized List<T> search(String query)
+    {
+        String[] tokens = tokenize(query);
+        if(tokens.length == 0)
+        {
+            return new ArrayList<T>(fieldsByItem.keySet());
+        }
+        List<Set<T>> matches = new ArrayList<Set<T>>();
+        for(String token : new LinkedHashSet<String>(Arrays.asList(tokens)))
+        {
+            Set<T> result = new LinkedHashSet<T>();
+            for(Set<T> items : itemsByKey.subMap(token, true, token + Character.MAX_VALUE, false).values())
+            {
+                result.addAll(items);
+            }
+            if(result.isEmpty())
+            {
+                return new ArrayList<T>();
+            }
+            matches.add(result);
+        }
+        Set<T> rarest = matches.get(0);
+        for(Set<T> result : matches)
+        {
+            if(result.size() < rarest.size())
+            {
+                rarest = result;
+            }
+        }
+        List<T> result = new ArrayList<T>();
+        for(T item : rarest)
+        {
+            boolean all = true;
+            for(int i = 0; i < matches.size() && all; i++)
+            {
+                all = matches.get(i).contains(item);
+            }
+            if(all)
+            {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if every token of query is the beginning
+     * of some word of given item.
+     *
+     * @param item The item to check.
+     * @param query The query to search for.
+     * @return true if item matches the query.
+     */
+    @Override
+    public synchronized boolean matches(T item, String query)
+    {
+        Fields fields = fieldsByItem.get(item);
+        if(fields == null)
+        {
+            return false;
+        }
+        for(String token : tokenize(query))
+        {
+            if(getTokenScore(fields, token) == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns given items with the best ranked ones moved to the beginning.
+     * Only the best items are kept in a bounded heap and sorted, the rest
+     * of items follows in their original order.
+     *
+     * @param items The found items.
+     * @param query The query by which items were found.
+     * @param limit The number of best items to sort.
+     * @return The list of items with the best ones first.
+     */
+    public synchronized List<T> rank(List<T> items, String query, int limit)
+    {
+        String[] tokens = tokenize(query);
+        if(tokens.length == 0 || limit <= 0 || items.isEmpty())
+        {
+            return new ArrayList<T>(items);
+        }
+        String whole = TextFolder.fold(query).trim();
+        PriorityQueue<Scored<T>> best = new PriorityQueue<Scored<T>>();
+        for(int i = 0; i < items.size(); i++)
+        {
+            Scored<T> scored = new Scored<T>(items.get(i), getScore(items.get(i), tokens, whole), i);
+            if(best.size() < limit)
+            {
+                best.add(scored);
+            }
+            else if(scored.compareTo(best.peek()) > 0)
+            {
+                best.poll();
+                best.add(scored);
+            }
+        }
+        List<Scored<T>> top = new ArrayList<Scored<T>>(best);
+        Collections.sort(top, Collections.reverseOrder());
+        List<T> result = new ArrayList<T>(items.size());
+        Set<Integer> topPositions = new HashSet<Integer>();
+        for(Scored<T> scored : top)
+        {
+            result.add(scored.item);
+            topPositions.add(scored.position);
+        }
+        for(int i = 0; i < items.size(); i++)
+        {
+            if(!topPositions.contains(i))
+            {
+                result.add(items.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number which is changed every time the index is modified.
+     *
+     * @return The version of index.
+     */
+    @Override
+    public synchronized long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns the number of indexed items.
+     *
+     * @return The number of items.
+     */
+    public synchronized int size()
+    {
+        return fieldsByItem.size();
+    }
+
+    /**
+     * Returns all indexed items.
+     *
+     * @return The collection of items.
+     */
+    public synchronized Collection<T> getItems()
+    {
+        return new ArrayList<T>(fieldsByItem.keySet());
+    }
+
+    /**
+     * Splits the query into folded tokens.
+     *
+     * @param query The query.
+     * @return The tokens of query.
+     */
+    public static String[] tokenize(String query)
+    {
+        String folded = TextFolder.fold(query).trim();
+        if(folded.isEmpty())
+        {
+            return new String[0];
+        }
+        return WORD_SEPARATOR.split(folded);
+    }
+
+    /**
+     * Returns the score of item for given tokens. It is the sum of
+     * the best scores of tokens and the bonus for every field
+     * starting with the whole query.
+     */
+    private int getScore(T item, String[] tokens, String whole)
+    {
+        Fields fields = fieldsByItem.get(item);
+        if(fields == null)
+        {
+            return 0;
+        }
+        int score = 0;
+        for(String token : tokens)
+        {
+            score += getTokenScore(fields, token);
+        }
+        for(int f = 0; f < fields.texts.length; f++)
+        {
+            if(fields.texts[f].startsWith(whole))
+            {
+                score += FIELD_START_SCORE * getFieldWeight(f);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Returns the best score of token in any field
+     * or 0 if token does not start any word.
+     */
+    private int getTokenScore(Fields fields, String token)
+    {
+        int best = 0;
+        for(int f = 0; f < fields.words.length; f++)
+        {
+            for(String word : fields.words[f])
+            {
+                if(word.startsWith(token))
+                {
+                    int score = (word.length() == token.length() ? WORD_SCORE : PREFIX_SCORE) * getFieldWeight(f);
+                    best = Math.max(best, score);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the weight of field with given number.
+     */
+    private int getFieldWeight(int field)
+    {
+        return field < fieldWeights.length ? fieldWeights[field] : 1;
+    }
+
+    /**
+     * Creates keys from given folded fields - every word
+     * of every field, without duplicates.
+     */
+    private static Set<String> createKeys(Fields fields)
+    {
+        Set<String> keys = new LinkedHashSet<String>();
+        for(String[] words : fields.words)
+        {
+            keys.addAll(Arrays.asList(words));
+        }
+        return keys;
+    }
+
+    /**
+     * The folded fields of item and their words.
+     */
+    private static class Fields {
+
+        private final String[] texts;
+        private final String[][] words;
+
+        private Fields(String[] fields)
+        {
+            texts = new String[fields.length];
+            words = new String[fields.length][];
+            for(int i = 0; i < fields.length; i++)
+            {
+                texts[i] = fields[i] == null ? "" : TextFolder.fold(fields[i]).trim();
+                words[i] = texts[i].isEmpty() ? new String[0] : WORD_SEPARATOR.split(texts[i]);
+            }
+        }
+    }
+
+    /**
+     * The item with its score, ordered by score and then
+     * by position, so earlier items win ties.
+     */
+    private static class Scored<T> implements Comparable<Scored<T>> {
+
+        private final T item;
+        private final int score;
+        private final int position;
+
+        private Scored(T item, int score, int position)
+        {
+            this.item = item;
+            this.score = score;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(Scored<T> other)
+        {
+            if(score != other.score)
+            {
+                return Integer.compare(score, other.score);
+            }
+            return Integer.compare(other.position, position);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package mytunes.bll.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code SearchSession} class is remembering the last query typed
+ * into one search box and its results. When the new query only extends
+ * the previous one, the previous results are narrowed instead of asking
+ * the index again. The index is used when characters were deleted,
+ * the query was edited in another way or the index has changed since.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ * @param <T> The type of searched items.
+ */
+public class SearchSession<T> {
+
+    /**
+     * The source of items searched in the session.
+     *
+     * @param <T> The type of searched items.
+     */
+    public interface Source<T> {
+
+        /**
+         * Returns all items matching given query.
+         *
+         * @param query The query.
+         * @return The list of matching items.
+         */
+        List<T> search(String query);
+
+        /**
+         * Returns true if given item matches given query.
+         *
+         * @param item The item to check.
+         * @param query The query.
+         * @return true if item matches the query.
+         */
+        boolean matches(T item, String query);
+
+        /**
+         * Returns the number which is changed every time the source is modified.
+         *
+         * @return The version of source.
+         */
+        long getVersion();
+    }
+
+    private final Source<T> source;
+    private String lastQuery;
+    private List<T> lastResults;
+    private long lastVersion;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates session searching in given source.
+     *
+     * @param source The source of items.
+     */
+    public SearchSession(Source<T> source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * Returns items matching given query. If query extends the previous
+     * query, previous results are narrowed, otherwise the source is searched.
+     *
+     * @param query The query.
+     * @return The list of matching items.
+     */
+    public synchronized List<T> search(String query)
+    {
+        String folded = TextFolder.fold(query);
+        List<T> results;
+        if(lastQuery != null && folded.startsWith(lastQuery) && lastVersion == source.getVersion())
+        {
+            hitCount++;
+            results = new ArrayList<T>();
+            for(T item : lastResults)
+            {
+                if(source.matches(item, folded))
+                {
+                    results.add(item);
+                }
+            }
+        }
+        else
+        {
+            missCount++;
+            lastVersion = source.getVersion();
+            results = source.search(folded);
+        }
+        lastQuery = folded;
+        lastResults = results;
+        return new ArrayList<T>(results);
+    }
+
+    /**
+     * Forgets the previous query, so the next search uses the source.
+     */
+    public synchronized void reset()
+    {
+        lastQuery = null;
+        lastResults = null;
+    }
+
+    /**
+     * Returns the number of searches answered by narrowing previous results.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of searches answered by the source.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "hits=" + hitCount + ", misses=" + missCount;
+    }
+}
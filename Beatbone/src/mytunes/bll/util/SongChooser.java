@@ -3,6 +3,7 @@ package mytunes.bll.util;
 import java.util.List;
 import java.util.Random;
 import java.util.Stack;
+import mytunes.be.Playlist;
 import mytunes.be.Song;
 
 /**
@@ -76,6 +77,34 @@ public class SongChooser {
         }
     }
     
+    /**
+     * Returns next song on playlist in reference to the given one. If given song
+     * is the last song on playlist the first song from playlist is returned.
+     * If playlist is empty returns null. The position of current song is
+     * taken from playlist, so the tracklist is not searched.
+     * 
+     * @param playlist The playlist with songs.
+     * @param currentSong The song that relates to which song will be next.
+     * @return Next song from playlist.
+     */
+    public Song getNextSong(Playlist playlist, Song currentSong)
+    {
+        List<Song> songList = playlist.getTracklist();
+        if(songList.isEmpty())
+        {
+            return null;
+        }
+        int index = playlist.getPositionOfSong(currentSong);
+        if(index == songList.size()-1)
+        {
+            return getFirstSong(songList);
+        }
+        else
+        {
+            return songList.get(index+1);
+        }
+    }
+    
     /**
      * Returns previous song in reference to the given one. If given song
      * is the first song on the list, the method is returning this given song.
@@ -102,6 +131,34 @@ public class SongChooser {
         }
     }
     
+    /**
+     * Returns previous song on playlist in reference to the given one. If given song
+     * is the first song on playlist, the method is returning this given song.
+     * If playlist is empty returns null. The position of current song is
+     * taken from playlist, so the tracklist is not searched.
+     * 
+     * @param playlist The playlist with songs.
+     * @param currentSong The song that relates to which song will be previous.
+     * @return Previous song from playlist.
+     */
+    public Song getPreviousSong(Playlist playlist, Song currentSong)
+    {
+        List<Song> songList = playlist.getTracklist();
+        if(songList.isEmpty())
+        {
+            return null;
+        }
+        int index = playlist.getPositionOfSong(currentSong);
+        if(index <= 0)
+        {
+            return index == 0 ? currentSong : songList.get(0);
+        }
+        else
+        {
+            return songList.get(index-1);
+        }
+    }
+    
     /**
      * Returns next random songs which has to be different than
      * given current song. If list of songs is empty returns null.
@@ -122,14 +179,13 @@ public class SongChooser {
             return currentSong;
         }
         Random rand = new Random();
-        int currentSongId = songList.indexOf(currentSong);
-        int nextSongId = currentSongId;
-        while(currentSongId == nextSongId)
+        Song nextSong = currentSong;
+        while(nextSong == currentSong)
         {
-            nextSongId = rand.nextInt(songList.size());
+            nextSong = songList.get(rand.nextInt(songList.size()));
         }
         previouslyPlayedRandomSongs.add(currentSong);
-        return songList.get(nextSongId);
+        return nextSong;
     }
     
     /**
@@ -0,0 +1,74 @@
+package mytunes.bll.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code TextFolder} class is responsible for converting
+ * texts to the form in which they are compared while searching.
+ * Texts are decomposed (Unicode NFKD), accents are removed and letters
+ * are converted to lower case, so "Björk" and "bjork" are the same.
+ * Texts which are already folded are returned without copying and ASCII
+ * texts are only converted to lower case.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class TextFolder {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Returns folded form of given text.
+     *
+     * @param text The text to fold.
+     * @return The folded text.
+     */
+    public static String fold(String text)
+    {
+        if(isFolded(text))
+        {
+            return text;
+        }
+        if(isAscii(text))
+        {
+            return text.toLowerCase(Locale.ROOT);
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns true if text contains only ASCII characters,
+     * which have no accents to remove.
+     */
+    private static boolean isAscii(String text)
+    {
+        for(int i = 0; i < text.length(); i++)
+        {
+            if(text.charAt(i) >= 0x80)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if text contains only ASCII characters
+     * which are not upper case letters.
+     */
+    private static boolean isFolded(String text)
+    {
+        for(int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if(c >= 0x80 || (c >= 'A' && c <= 'Z'))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,576 @@
+package mytunes.bll.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code TrigramIndex} class is an inverted index of three letter
+ * fragments of words, used for finding items by words containing typos.
+ * Items sharing enough fragments with the query are verified with
+ * edit distance, which is limited depending on the length of query word.
+ * Swapping two neighbouring letters counts as one typo.
+ * Every word of query has to be similar to some word of found item.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ * @param <T> The type of indexed items.
+ */
+public class TrigramIndex<T> {
+
+    /**
+     * The source of texts by which items are indexed.
+     *
+     * @param <T> The type of indexed items.
+     */
+    public interface TextSource<T> {
+
+        /**
+         * Returns the texts by which given item can be found.
+         *
+         * @param item The item.
+         * @return The texts of item.
+         */
+        String[] getTexts(T item);
+    }
+
+    private static final int MIN_CHUNK_SIZE = 10000;
+    private static final int MIN_DEAD_TO_COMPACT = 1000;
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("\\s+");
+
+    private final PostingsMap postingsByTrigram;
+    private final List<T> items;
+    private final List<String[]> wordsById;
+    private final Map<T, Integer> idsByItem;
+    private int deadCount;
+    private int[] counts;
+
+    /**
+     * Creates an empty index.
+     */
+    public TrigramIndex()
+    {
+        postingsByTrigram = new PostingsMap();
+        items = new ArrayList<T>();
+        wordsById = new ArrayList<String[]>();
+        idsByItem = new HashMap<T, Integer>();
+        counts = new int[0];
+    }
+
+    /**
+     * Replaces all indexed items with given items. Items are
+     * split into chunks which are indexed in parallel and then merged.
+     *
+     * @param newItems The items to index.
+     * @param source The source of texts of items.
+     */
+    public synchronized void build(final List<T> newItems, final TextSource<T> source)
+    {
+        clear();
+        final int size = newItems.size();
+        final String[][] words = new String[size][];
+        int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), size / MIN_CHUNK_SIZE));
+        int chunkSize = (size + chunks - 1) / Math.max(1, chunks);
+        List<Future<PostingsMap>> futures = new ArrayList<Future<PostingsMap>>();
+        for(int c = 0; c < chunks; c++)
+        {
+            final int from = c * chunkSize;
+            final int to = Math.min(size, from + chunkSize);
+            futures.add(ForkJoinPool.commonPool().submit(new Callable<PostingsMap>()
+                {
+                    @Override
+                    public PostingsMap call()
+                    {
+                        PostingsMap local = new PostingsMap();
+                        for(int id = from; id < to; id++)
+                        {
+                            words[id] = createWords(source.getTexts(newItems.get(id)));
+                            addPostings(local, id, words[id]);
+                        }
+                        return local;
+                    }
+                }
+            ));
+        }
+        for(Future<PostingsMap> future : futures)
+        {
+            PostingsMap local;
+            try
+            {
+                local = future.get();
+            }
+            catch(InterruptedException | ExecutionException e)
+            {
+                throw new IllegalStateException("Building of trigram index failed", e);
+            }
+            for(int i = 0; i < local.keys.length; i++)
+            {
+                if(local.values[i] != null)
+                {
+                    postingsByTrigram.getOrCreate(local.keys[i]).addAll(local.values[i]);
+                }
+            }
+        }
+        for(int id = 0; id < size; id++)
+        {
+            T item = newItems.get(id);
+            items.add(item);
+            wordsById.add(words[id]);
+            idsByItem.put(item, id);
+        }
+    }
+
+    /**
+     * Adds item to the index. If item was already indexed,
+     * its old entries are removed.
+     *
+     * @param item The item to add.
+     * @param texts The texts by which item can be found.
+     */
+    public synchronized void add(T item, String... texts)
+    {
+        remove(item);
+        int id = items.size();
+        String[] words = createWords(texts);
+        items.add(item);
+        wordsById.add(words);
+        idsByItem.put(item, id);
+        addPostings(postingsByTrigram, id, words);
+    }
+
+    /**
+     * Removes item from the index. Its postings are
+     * dropped when too many removed items are collected.
+     *
+     * @param item The item to remove.
+     */
+    public synchronized void remove(T item)
+    {
+        Integer id = idsByItem.remove(item);
+        if(id == null)
+        {
+            return;
+        }
+        items.set(id, null);
+        wordsById.set(id, null);
+        deadCount++;
+        if(deadCount >= MIN_DEAD_TO_COMPACT && deadCount > idsByItem.size())
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Removes all items from the index.
+     */
+    public synchronized void clear()
+    {
+        postingsByTrigram.clear();
+        items.clear();
+        wordsById.clear();
+        idsByItem.clear();
+        deadCount = 0;
+    }
+
+    /**
+     * Returns the number of indexed items.
+     *
+     * @return The number of items.
+     */
+    public synchronized int size()
+    {
+        return idsByItem.size();
+    }
+
+    /**
+     * Returns items which words are similar to all words of given query.
+     * Items with smaller total edit distance are returned first.
+     *
+     * @param query The query.
+     * @return The list of matching items.
+     */
+    public synchronized List<T> search(String query)
+    {
+        String[] queryWords = createWords(query);
+        if(queryWords.length == 0)
+        {
+            return Collections.emptyList();
+        }
+        if(counts.length < items.size())
+        {
+            counts = new int[items.size()];
+        }
+        int threshold = 0;
+        int[] maxDistances = new int[queryWords.length];
+        int touchedCount = 0;
+        int[] touched = new int[16];
+        for(int w = 0; w < queryWords.length; w++)
+        {
+            maxDistances[w] = getMaxDistance(queryWords[w]);
+            long[] trigrams = getTrigrams(queryWords[w]);
+            //one typo changes at most four trigrams of word
+            threshold += trigrams.length - 4 * maxDistances[w];
+            for(long trigram : trigrams)
+            {
+                Postings postings = postingsByTrigram.get(trigram);
+                if(postings == null)
+                {
+                    continue;
+                }
+                for(int i = 0; i < postings.size; i++)
+                {
+                    int id = postings.ids[i];
+                    if(counts[id]++ == 0)
+                    {
+                        if(touchedCount == touched.length)
+                        {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = id;
+                    }
+                }
+            }
+        }
+        threshold = Math.max(1, threshold);
+        final Map<T, Integer> distances = new HashMap<T, Integer>();
+        List<T> result = new ArrayList<T>();
+        for(int i = 0; i < touchedCount; i++)
+        {
+            int id = touched[i];
+            int count = counts[id];
+            counts[id] = 0;
+            if(count < threshold || items.get(id) == null)
+            {
+                continue;
+            }
+            int distance = verify(queryWords, maxDistances, wordsById.get(id));
+            if(distance >= 0)
+            {
+                result.add(items.get(id));
+                distances.put(items.get(id), distance);
+            }
+        }
+        Collections.sort(result, new Comparator<T>()
+            {
+                @Override
+                public int compare(T first, T second)
+                {
+                    return Integer.compare(distances.get(first), distances.get(second));
+                }
+            }
+        );
+        return result;
+    }
+
+    /**
+     * Returns the edit distance between two strings, counting swap of
+     * two neighbouring characters as one edit, or maxDistance + 1
+     * if the distance is larger than maxDistance.
+     *
+     * @param first The first string.
+     * @param second The second string.
+     * @param maxDistance The largest distance which is computed.
+     * @return The edit distance.
+     */
+    public static int getDistance(String first, String second, int maxDistance)
+    {
+        int n = first.length();
+        int m = second.length();
+        if(Math.abs(n - m) > maxDistance)
+        {
+            return maxDistance + 1;
+        }
+        int[] beforePrevious = new int[m + 1];
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for(int j = 0; j <= m; j++)
+        {
+            previous[j] = j;
+        }
+        for(int i = 1; i <= n; i++)
+        {
+            current[0] = i;
+            int rowMin = current[0];
+            char c = first.charAt(i - 1);
+            for(int j = 1; j <= m; j++)
+            {
+                int cost = c == second.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if(i > 1 && j > 1 && c == second.charAt(j - 2) && first.charAt(i - 2) == second.charAt(j - 1))
+                {
+                    current[j] = Math.min(current[j], beforePrevious[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if(rowMin > maxDistance)
+            {
+                return maxDistance + 1;
+            }
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[m], maxDistance + 1);
+    }
+
+    /**
+     * Returns the total edit distance of query words to the most
+     * similar words of item or -1 if some query word has no similar word.
+     */
+    private static int verify(String[] queryWords, int[] maxDistances, String[] words)
+    {
+        int total = 0;
+        for(int w = 0; w < queryWords.length; w++)
+        {
+            int best = maxDistances[w] + 1;
+            for(int i = 0; i < words.length && best > 0; i++)
+            {
+                best = Math.min(best, getDistance(queryWords[w], words[i], maxDistances[w]));
+            }
+            if(best > maxDistances[w])
+            {
+                return -1;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of typos allowed in the word of given length.
+     */
+    private static int getMaxDistance(String word)
+    {
+        if(word.length() <= 4)
+        {
+            return 0;
+        }
+        if(word.length() <= 8)
+        {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * Adds the trigrams of given words to the postings.
+     */
+    private static void addPostings(PostingsMap postingsByTrigram, int id, String[] words)
+    {
+        long[] trigrams = new long[0];
+        for(String word : words)
+        {
+            long[] wordTrigrams = getTrigrams(word);
+            int length = trigrams.length;
+            trigrams = Arrays.copyOf(trigrams, length + wordTrigrams.length);
+            System.arraycopy(wordTrigrams, 0, trigrams, length, wordTrigrams.length);
+        }
+        for(long trigram : distinct(trigrams))
+        {
+            postingsByTrigram.getOrCreate(trigram).add(id);
+        }
+    }
+
+    /**
+     * Returns the distinct trigrams of word surrounded by spaces,
+     * each encoded as three characters in one number.
+     */
+    private static long[] getTrigrams(String word)
+    {
+        String padded = " " + word + " ";
+        long[] trigrams = new long[padded.length() - 2];
+        for(int i = 0; i < trigrams.length; i++)
+        {
+            trigrams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        return distinct(trigrams);
+    }
+
+    /**
+     * Returns sorted array without repeated numbers.
+     */
+    private static long[] distinct(long[] values)
+    {
+        Arrays.sort(values);
+        int size = 0;
+        for(int i = 0; i < values.length; i++)
+        {
+            if(size == 0 || values[size - 1] != values[i])
+            {
+                values[size++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Splits given texts into distinct words in folded form.
+     */
+    private static String[] createWords(String... texts)
+    {
+        Set<String> words = new LinkedHashSet<String>();
+        for(String text : texts)
+        {
+            if(text == null)
+            {
+                continue;
+            }
+            for(String word : WORD_SEPARATOR.split(TextFolder.fold(text)))
+            {
+                if(!word.isEmpty())
+                {
+                    words.add(word);
+                }
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /**
+     * Rebuilds the index without removed items.
+     */
+    private void compact()
+    {
+        List<T> liveItems = new ArrayList<T>();
+        final Map<T, String[]> liveWords = new HashMap<T, String[]>();
+        for(int id = 0; id < items.size(); id++)
+        {
+            if(items.get(id) != null)
+            {
+                liveItems.add(items.get(id));
+                liveWords.put(items.get(id), wordsById.get(id));
+            }
+        }
+        build(liveItems, new TextSource<T>()
+            {
+                @Override
+                public String[] getTexts(T item)
+                {
+                    return liveWords.get(item);
+                }
+            }
+        );
+    }
+
+    /**
+     * The growing list of item ids in ascending order.
+     */
+    private static class Postings {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int id)
+        {
+            if(size == ids.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private void addAll(Postings other)
+        {
+            if(size + other.size > ids.length)
+            {
+                ids = Arrays.copyOf(ids, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+        }
+    }
+
+    /**
+     * The hash map from encoded trigrams to their postings,
+     * storing keys as primitive numbers with open addressing.
+     */
+    private static class PostingsMap {
+
+        private long[] keys = new long[64];
+        private Postings[] values = new Postings[64];
+        private int size;
+
+        private Postings get(long key)
+        {
+            int mask = keys.length - 1;
+            for(int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask)
+            {
+                if(keys[i] == key)
+                {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        private Postings getOrCreate(long key)
+        {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            for(; values[i] != null; i = (i + 1) & mask)
+            {
+                if(keys[i] == key)
+                {
+                    return values[i];
+                }
+            }
+            Postings postings = new Postings();
+            keys[i] = key;
+            values[i] = postings;
+            if(++size * 2 > keys.length)
+            {
+                resize();
+            }
+            return postings;
+        }
+
+        private void clear()
+        {
+            keys = new long[64];
+            values = new Postings[64];
+            size = 0;
+        }
+
+        private void resize()
+        {
+            long[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Postings[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for(int j = 0; j < oldKeys.length; j++)
+            {
+                if(oldValues[j] != null)
+                {
+                    int i = hash(oldKeys[j]) & mask;
+                    while(values[i] != null)
+                    {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int hash(long key)
+        {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            return (int) key;
+        }
+    }
+}
@@ -0,0 +1,801 @@
+package mytunes.dal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import mytunes.diagnostics.SlowStatementLog;
+
+/**
+ * The {@code ConnectionPool} class is a bounded pool of physical
+ * connections with a database. Connections borrowed from the pool are
+ * returned to it when they are closed, so the DAOs can keep using
+ * try-with-resources blocks. It validates connections on borrow if they were
+ * idle for some time, evicts connections which were idle for too long, can report
+ * connections which were not returned in time and collects basic statistics
+ * about its usage.
+ * Statements created by borrowed connections are timed and the slow ones
+ * are recorded in {@link SlowStatementLog}.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class ConnectionPool {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long validationIdleMillis;
+    private final long leakThresholdMillis;
+    private final long borrowTimeoutMillis;
+
+    private final Deque<PooledConnection> idleConnections;
+    private final List<PooledConnection> borrowedConnections;
+    private final ScheduledExecutorService housekeeper;
+    private int totalConnections;
+    private boolean closed;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong invalidCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * Creates a pool which takes its physical connections from the given
+     * data source and starts the thread responsible for idle eviction
+     * and leak detection.
+     *
+     * @param dataSource The source of physical connections.
+     * @param minSize The number of idle connections kept open.
+     * @param maxSize The maximum number of open connections.
+     * @param idleTimeoutMillis The time after which idle connection above minimum size is closed.
+     * @param validationIdleMillis The time after which idle connection is validated before it is borrowed.
+     * @param leakThresholdMillis The time after which borrowed connection is reported as leaked,
+     * 0 turns leak detection off.
+     * @param borrowTimeoutMillis The maximum time to wait for a free connection.
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long idleTimeoutMillis,
+            long validationIdleMillis, long leakThresholdMillis, long borrowTimeoutMillis)
+    {
+        if(maxSize < 1 || minSize < 0 || minSize > maxSize)
+        {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIdleMillis = validationIdleMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        idleConnections = new ArrayDeque<PooledConnection>();
+        borrowedConnections = new ArrayList<PooledConnection>();
+        housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "db-pool-housekeeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+        );
+        long period = leakThresholdMillis > 0 ? Math.min(idleTimeoutMillis, leakThresholdMillis) : idleTimeoutMillis;
+        period = Math.max(1000, period / 2);
+        housekeeper.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    evictIdleConnections();
+                    detectLeaks();
+                    fillToMinimum();
+                }
+            }, 0, period, TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Borrows a connection from the pool. If there is no idle connection and
+     * the pool is full, waits until some connection is returned. Connections idle
+     * for longer than {@code validationIdleMillis} are validated before they are
+     * handed out, connections returned a moment ago are handed out without the round trip.
+     *
+     * @return The connection which returns to the pool when closed.
+     * @throws SQLException if connection cannot be established or waiting time ran out.
+     */
+    public Connection getConnection() throws SQLException
+    {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        while(true)
+        {
+            PooledConnection candidate = null;
+            boolean mayCreate = false;
+            synchronized(this)
+            {
+                while(!closed && idleConnections.isEmpty() && totalConnections >= maxSize)
+                {
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0)
+                    {
+                        timeoutCount.incrementAndGet();
+                        throw new SQLTransientConnectionException("Timed out after " + borrowTimeoutMillis
+                                + " ms waiting for a database connection (" + totalConnections + " in use)");
+                    }
+                    try
+                    {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                    catch(InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new SQLTransientConnectionException("Interrupted while waiting for a database connection", e);
+                    }
+                }
+                if(closed)
+                {
+                    throw new SQLException("Connection pool is closed");
+                }
+                if(!idleConnections.isEmpty())
+                {
+                    candidate = idleConnections.pollFirst();
+                }
+                else
+                {
+                    totalConnections++;
+                    mayCreate = true;
+                }
+            }
+            if(mayCreate)
+            {
+                candidate = createConnection();
+            }
+            else if(System.currentTimeMillis() - candidate.lastUsedAt > validationIdleMillis && !isValid(candidate))
+            {
+                invalidCount.incrementAndGet();
+                discard(candidate);
+                continue;
+            }
+            recordWait(System.nanoTime() - start);
+            return lend(candidate);
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the housekeeping thread. Borrowed
+     * connections are closed as soon as they are returned.
+     */
+    public void close()
+    {
+        List<PooledConnection> toClose;
+        synchronized(this)
+        {
+            closed = true;
+            toClose = new ArrayList<PooledConnection>(idleConnections);
+            idleConnections.clear();
+            notifyAll();
+        }
+        housekeeper.shutdownNow();
+        for(PooledConnection pc : toClose)
+        {
+            discard(pc);
+        }
+    }
+
+    /**
+     * Returns the number of connections which are currently borrowed.
+     *
+     * @return The number of active connections.
+     */
+    public synchronized int getActiveCount()
+    {
+        return borrowedConnections.size();
+    }
+
+    /**
+     * Returns the number of open connections waiting in the pool.
+     *
+     * @return The number of idle connections.
+     */
+    public synchronized int getIdleCount()
+    {
+        return idleConnections.size();
+    }
+
+    /**
+     * Returns the number of all open connections, both idle and borrowed.
+     *
+     * @return The number of connections.
+     */
+    public synchronized int getTotalCount()
+    {
+        return totalConnections;
+    }
+
+    /**
+     * Returns the maximum number of connections the pool can open.
+     *
+     * @return The maximum size of the pool.
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Returns how many times connection was borrowed from the pool.
+     *
+     * @return The number of borrows.
+     */
+    public long getBorrowCount()
+    {
+        return borrowCount.get();
+    }
+
+    /**
+     * Returns the average time of waiting for a connection in milliseconds.
+     *
+     * @return The average wait time.
+     */
+    public double getAverageWaitMillis()
+    {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : totalWaitNanos.get() / 1e6 / borrows;
+    }
+
+    /**
+     * Returns the longest time of waiting for a connection in milliseconds.
+     *
+     * @return The maximum wait time.
+     */
+    public double getMaxWaitMillis()
+    {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns the number of physical connections opened by the pool.
+     *
+     * @return The number of created connections.
+     */
+    public long getCreatedCount()
+    {
+        return createdCount.get();
+    }
+
+    /**
+     * Returns the number of connections closed because they were idle for too long.
+     *
+     * @return The number of evicted connections.
+     */
+    public long getEvictedCount()
+    {
+        return evictedCount.get();
+    }
+
+    /**
+     * Returns the number of connections which failed validation on borrow.
+     *
+     * @return The number of invalid connections.
+     */
+    public long getInvalidCount()
+    {
+        return invalidCount.get();
+    }
+
+    /**
+     * Returns the number of connections reported as leaked.
+     *
+     * @return The number of leaks.
+     */
+    public long getLeakCount()
+    {
+        return leakCount.get();
+    }
+
+    /**
+     * Returns the number of borrows which ran out of time.
+     *
+     * @return The number of timeouts.
+     */
+    public long getTimeoutCount()
+    {
+        return timeoutCount.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("ConnectionPool[active=%d, idle=%d, max=%d, borrows=%d, avgWait=%.2fms, maxWait=%.2fms, "
+                + "created=%d, evicted=%d, invalid=%d, leaks=%d, timeouts=%d]",
+                getActiveCount(), getIdleCount(), maxSize, getBorrowCount(), getAverageWaitMillis(), getMaxWaitMillis(),
+                getCreatedCount(), getEvictedCount(), getInvalidCount(), getLeakCount(), getTimeoutCount());
+    }
+
+    /**
+     * Opens a new physical connection. The slot for it has to be
+     * reserved in {@code totalConnections} before calling this method.
+     */
+    private PooledConnection createConnection() throws SQLException
+    {
+        try
+        {
+            Connection physical = dataSource.getConnection();
+            createdCount.incrementAndGet();
+            return new PooledConnection(physical);
+        }
+        catch(SQLException | RuntimeException e)
+        {
+            synchronized(this)
+            {
+                totalConnections--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Marks the connection as borrowed and wraps it in a proxy which
+     * returns it to the pool on close. The place of borrow is captured
+     * only when leak detection is on.
+     */
+    private Connection lend(PooledConnection pc)
+    {
+        pc.borrowedAt = System.currentTimeMillis();
+        pc.borrowSite = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+        pc.leakReported = false;
+        synchronized(this)
+        {
+            borrowedConnections.add(pc);
+        }
+        borrowCount.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConnectionHandler(pc));
+    }
+
+    /**
+     * Takes back the borrowed connection. Connections left in the
+     * middle of transaction are rolled back before they are reused.
+     */
+    private void giveBack(PooledConnection pc)
+    {
+        boolean reusable = true;
+        try
+        {
+            if(pc.physical.isClosed())
+            {
+                reusable = false;
+            }
+            else if(!pc.physical.getAutoCommit())
+            {
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+        }
+        catch(SQLException e)
+        {
+            reusable = false;
+        }
+        synchronized(this)
+        {
+            borrowedConnections.remove(pc);
+            if(reusable && !closed)
+            {
+                pc.lastUsedAt = System.currentTimeMillis();
+                idleConnections.addFirst(pc);
+                notifyAll();
+                return;
+            }
+        }
+        discard(pc);
+    }
+
+    /**
+     * Closes the physical connection and frees its slot in the pool.
+     */
+    private void discard(PooledConnection pc)
+    {
+        try
+        {
+            pc.physical.close();
+        }
+        catch(SQLException e)
+        {
+            LOGGER.log(Level.FINE, "Could not close pooled connection", e);
+        }
+        synchronized(this)
+        {
+            totalConnections--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Checks if connection is still usable.
+     */
+    private boolean isValid(PooledConnection pc)
+    {
+        try
+        {
+            return pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        }
+        catch(SQLException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Closes connections which were idle for longer than {@code idleTimeoutMillis},
+     * keeping at least {@code minSize} connections open.
+     */
+    private void evictIdleConnections()
+    {
+        List<PooledConnection> toEvict = new ArrayList<PooledConnection>();
+        long now = System.currentTimeMillis();
+        synchronized(this)
+        {
+            Iterator<PooledConnection> it = idleConnections.descendingIterator();
+            while(it.hasNext() && totalConnections - toEvict.size() > minSize)
+            {
+                PooledConnection pc = it.next();
+                if(now - pc.lastUsedAt > idleTimeoutMillis)
+                {
+                    it.remove();
+                    toEvict.add(pc);
+                }
+            }
+        }
+        for(PooledConnection pc : toEvict)
+        {
+            evictedCount.incrementAndGet();
+            discard(pc);
+        }
+    }
+
+    /**
+     * Reports connections which are borrowed for longer than {@code leakThresholdMillis}.
+     * Each connection is reported only once per borrow.
+     */
+    private void detectLeaks()
+    {
+        if(leakThresholdMillis <= 0)
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<PooledConnection> leaked = new ArrayList<PooledConnection>();
+        synchronized(this)
+        {
+            for(PooledConnection pc : borrowedConnections)
+            {
+                if(!pc.leakReported && now - pc.borrowedAt > leakThresholdMillis)
+                {
+                    pc.leakReported = true;
+                    leaked.add(pc);
+                }
+            }
+        }
+        for(PooledConnection pc : leaked)
+        {
+            leakCount.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Possible connection leak: connection borrowed for more than "
+                    + leakThresholdMillis + " ms", pc.borrowSite);
+        }
+    }
+
+    /**
+     * Opens new idle connections until the pool has at least {@code minSize} connections.
+     */
+    private void fillToMinimum()
+    {
+        while(true)
+        {
+            synchronized(this)
+            {
+                if(closed || totalConnections >= minSize)
+                {
+                    return;
+                }
+                totalConnections++;
+            }
+            PooledConnection pc;
+            try
+            {
+                pc = createConnection();
+            }
+            catch(SQLException | RuntimeException e)
+            {
+                LOGGER.log(Level.FINE, "Could not open idle connection", e);
+                return;
+            }
+            synchronized(this)
+            {
+                pc.lastUsedAt = System.currentTimeMillis();
+                idleConnections.addLast(pc);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Records the time of waiting for a connection.
+     */
+    private void recordWait(long nanos)
+    {
+        totalWaitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while(nanos > max && !maxWaitNanos.compareAndSet(max, nanos))
+        {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    /**
+     * Physical connection together with its bookkeeping data.
+     */
+    private static class PooledConnection {
+
+        private final Connection physical;
+        private long lastUsedAt;
+        private long borrowedAt;
+        private Throwable borrowSite;
+        private boolean leakReported;
+
+        private PooledConnection(Connection physical)
+        {
+            this.physical = physical;
+            lastUsedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Answers {@code unwrap} and {@code isWrapperFor} of a proxy. The proxy
+     * unwraps only to itself, so the physical connection and statements
+     * cannot be taken from it and used after the proxy was closed.
+     */
+    private static Object unwrap(Object proxy, Method method, Object[] args) throws SQLException
+    {
+        Class<?> iface = (Class<?>) args[0];
+        if(method.getName().equals("isWrapperFor"))
+        {
+            return iface.isInstance(proxy);
+        }
+        if(iface.isInstance(proxy))
+        {
+            return proxy;
+        }
+        throw new SQLException("Pooled object does not implement " + iface.getName());
+    }
+
+    /**
+     * Handler of the connection proxy given to the DAOs. Closing the proxy
+     * returns physical connection to the pool instead of closing it. Using the
+     * proxy after it was closed is not allowed.
+     */
+    private class ConnectionHandler implements InvocationHandler {
+
+        private PooledConnection pc;
+
+        private ConnectionHandler(PooledConnection pc)
+        {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            if(name.equals("close"))
+            {
+                PooledConnection returned;
+                synchronized(this)
+                {
+                    returned = pc;
+                    pc = null;
+                }
+                if(returned != null)
+                {
+                    giveBack(returned);
+                }
+                return null;
+            }
+            if(name.equals("isClosed"))
+            {
+                PooledConnection current = pc;
+                return current == null || current.physical.isClosed();
+            }
+            if(name.equals("equals"))
+            {
+                return proxy == args[0];
+            }
+            if(name.equals("hashCode"))
+            {
+                return System.identityHashCode(proxy);
+            }
+            if(name.equals("toString"))
+            {
+                return "PooledConnection[" + pc + "]";
+            }
+            if(name.equals("unwrap") || name.equals("isWrapperFor"))
+            {
+                return unwrap(proxy, method, args);
+            }
+            PooledConnection current = pc;
+            if(current == null)
+            {
+                throw new SQLException("Connection is closed");
+            }
+            Object result;
+            try
+            {
+                result = method.invoke(current.physical, args);
+            }
+            catch(InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+            if(result instanceof Statement && method.getReturnType().isInterface())
+            {
+                String sql = name.startsWith("prepare") ? (String) args[0] : null;
+                return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                        new Class<?>[] { method.getReturnType() }, new StatementHandler((Statement) result, (Connection) proxy, sql));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Handler of the statement proxy given to the DAOs. It counts parameters
+     * bound to the statement and measures every execution, so slow statements
+     * can be recorded with their SQL text and number of bound parameters.
+     * Reading of returned result sets is not included in the measured time.
+     * The statement gives the connection proxy as its connection.
+     */
+    private static class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+        private final Connection connection;
+        private final String sql;
+        private final Set<Object> parameters;
+        private final StringBuilder batchSql;
+        private int batchBindCount;
+
+        private StatementHandler(Statement statement, Connection connection, String sql)
+        {
+            this.statement = statement;
+            this.connection = connection;
+            this.sql = sql;
+            parameters = new HashSet<Object>();
+            batchSql = new StringBuilder();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            int argCount = args == null ? 0 : args.length;
+            if(name.equals("equals"))
+            {
+                return proxy == args[0];
+            }
+            if(name.equals("hashCode"))
+            {
+                return System.identityHashCode(proxy);
+            }
+            if(name.equals("getConnection"))
+            {
+                return connection;
+            }
+            if(name.equals("unwrap") || name.equals("isWrapperFor"))
+            {
+                return unwrap(proxy, method, args);
+            }
+            if(name.startsWith("set") && argCount >= 2)
+            {
+                parameters.add(args[0]);
+            }
+            else if(name.equals("clearParameters"))
+            {
+                parameters.clear();
+            }
+            else if(name.equals("addBatch"))
+            {
+                if(argCount == 0)
+                {
+                    batchBindCount += parameters.size();
+                }
+                else
+                {
+                    batchSql.append(batchSql.length() == 0 ? "" : "; ").append(args[0]);
+                }
+            }
+            else if(name.equals("clearBatch"))
+            {
+                batchBindCount = 0;
+                batchSql.setLength(0);
+            }
+            else if(name.startsWith("execute"))
+            {
+                return execute(method, args);
+            }
+            try
+            {
+                return method.invoke(statement, args);
+            }
+            catch(InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Runs the execute method of the statement and records its time.
+         */
+        private Object execute(Method method, Object[] args) throws Throwable
+        {
+            String executed;
+            int bindCount;
+            if(method.getName().endsWith("Batch"))
+            {
+                executed = sql != null ? sql : batchSql.toString();
+                bindCount = batchBindCount;
+                batchBindCount = 0;
+                batchSql.setLength(0);
+            }
+            else if(args != null && args.length > 0 && args[0] instanceof String)
+            {
+                executed = (String) args[0];
+                bindCount = 0;
+            }
+            else
+            {
+                executed = sql;
+                bindCount = parameters.size();
+            }
+            long start = System.nanoTime();
+            try
+            {
+                return method.invoke(statement, args);
+            }
+            catch(InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+            finally
+            {
+                SlowStatementLog.createInstance().record(executed, bindCount, System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -2,19 +2,31 @@ package mytunes.dal;
 
 import java.sql.SQLException;
 import java.util.List;
+import mytunes.be.LibraryChanges;
+import mytunes.be.LibraryMutation;
+import mytunes.be.LibrarySnapshot;
 import mytunes.be.Playlist;
 import mytunes.be.Song;
+import mytunes.be.SongPage;
+import mytunes.be.SongSearchPage;
 import mytunes.be.User;
 import mytunes.dal.daos.GenreDAO;
+import mytunes.dal.daos.LibraryDAO;
 import mytunes.dal.daos.PlaylistDAO;
 import mytunes.dal.daos.PlaylistSongsDAO;
 import mytunes.dal.daos.SongDAO;
 import mytunes.dal.daos.UserDAO;
+import mytunes.diagnostics.DaoStatistics;
+import mytunes.diagnostics.StartupReport;
 
 /**
  * The {@code DalController} class is responsible for
  * all operations on database. It is implementing IDalFacade
- * interface.
+ * interface. Data Access Objects are created lazily when they
+ * are used for the first time, so for example logging in creates
+ * only {@code UserDAO}. Every call of DAO method is measured in
+ * {@code DaoStatistics} and failed calls are logged there, also the calls
+ * which failed with unchecked exception - these exceptions are rethrown.
  * 
  * @author schemabuoi
  * @author kiddo
@@ -26,180 +38,402 @@ public class DalController implements IDalFacade{
     private PlaylistSongsDAO playlistSongsDao;
     private GenreDAO genreDao;
     private UserDAO userDao;
+    private LibraryDAO libraryDao;
+    private LibrarySnapshotStore snapshotStore;
+    private SongIdentityMap songIdentityMap;
+    private StartupReport startupReport;
+    private DaoStatistics statistics;
     
     /**
-     * Creates all Data Access Objects.
+     * Creates controller without any Data Access Objects
+     * and with empty map of songs.
      */
     public DalController()
     {
-        songDao = new SongDAO();
-        playlistDao = new PlaylistDAO();
-        playlistSongsDao = new PlaylistSongsDAO();
-        genreDao = new GenreDAO();
-        userDao = new UserDAO();
+        songIdentityMap = new SongIdentityMap();
+        startupReport = StartupReport.createInstance();
+        statistics = DaoStatistics.createInstance();
+    }
+    
+    /**
+     * Returns DAO for Songs table, creating it on first use.
+     */
+    private synchronized SongDAO getSongDao()
+    {
+        if(songDao == null)
+        {
+            long start = System.nanoTime();
+            songDao = new SongDAO(songIdentityMap);
+            startupReport.record("SongDAO", System.nanoTime() - start);
+        }
+        return songDao;
+    }
+    
+    /**
+     * Returns DAO for Playlists table, creating it on first use.
+     */
+    private synchronized PlaylistDAO getPlaylistDao()
+    {
+        if(playlistDao == null)
+        {
+            PlaylistSongsDAO psDao = getPlaylistSongsDao();
+            long start = System.nanoTime();
+            playlistDao = new PlaylistDAO(psDao);
+            startupReport.record("PlaylistDAO", System.nanoTime() - start);
+        }
+        return playlistDao;
+    }
+    
+    /**
+     * Returns DAO for PlaylistSongs table, creating it on first use.
+     * The same instance is shared with {@code SongDAO} and {@code PlaylistDAO}.
+     */
+    private synchronized PlaylistSongsDAO getPlaylistSongsDao()
+    {
+        if(playlistSongsDao == null)
+        {
+            long start = System.nanoTime();
+            playlistSongsDao = new PlaylistSongsDAO(songIdentityMap);
+            startupReport.record("PlaylistSongsDAO", System.nanoTime() - start);
+        }
+        return playlistSongsDao;
+    }
+    
+    /**
+     * Returns DAO for Genres table, creating it on first use.
+     */
+    private synchronized GenreDAO getGenreDao()
+    {
+        if(genreDao == null)
+        {
+            long start = System.nanoTime();
+            genreDao = new GenreDAO();
+            startupReport.record("GenreDAO", System.nanoTime() - start);
+        }
+        return genreDao;
+    }
+    
+    /**
+     * Returns DAO for Users table, creating it on first use.
+     */
+    private synchronized UserDAO getUserDao()
+    {
+        if(userDao == null)
+        {
+            long start = System.nanoTime();
+            userDao = new UserDAO();
+            startupReport.record("UserDAO", System.nanoTime() - start);
+        }
+        return userDao;
+    }
+    
+    /**
+     * Returns DAO for the whole library, creating it on first use.
+     */
+    private synchronized LibraryDAO getLibraryDao()
+    {
+        if(libraryDao == null)
+        {
+            long start = System.nanoTime();
+            libraryDao = new LibraryDAO(songIdentityMap);
+            startupReport.record("LibraryDAO", System.nanoTime() - start);
+        }
+        return libraryDao;
+    }
+    
+    /**
+     * Returns the store of library snapshots, creating it on first use.
+     */
+    private synchronized LibrarySnapshotStore getSnapshotStore()
+    {
+        if(snapshotStore == null)
+        {
+            snapshotStore = new LibrarySnapshotStore(songIdentityMap);
+        }
+        return snapshotStore;
     }
     
     @Override
     public Song createSong(User user, String title, String artist, String genre, String path, int time)
     {
         Song createdSong = null;
+        SongDAO dao = getSongDao();
+        DaoStatistics.Timer timer = statistics.start("SongDAO.createSong");
         try
         {
-            createdSong = songDao.createSong(user, title,artist,genre,path,time);
+            createdSong = dao.createSong(user, title,artist,genre,path,time);
+            timer.stop(createdSong == null ? 0 : 1);
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
         return createdSong;
     }
 
     @Override
-    public Song updateSong(Song song, String newTitle, String newArtist, String newGenre) {
-        Song updatedSong = null;
+    public List<Song> getAllSongs(User user) {
+        List<Song> allSongs = null;
+        SongDAO dao = getSongDao();
+        DaoStatistics.Timer timer = statistics.start("SongDAO.getAllSongs");
         try
         {
-            updatedSong = songDao.updateSong(song, newTitle, newArtist, newGenre);
+            allSongs = dao.getAllSongs(user);
+            timer.stop(countRows(allSongs));
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
-        return updatedSong;
+        return allSongs;
     }
 
     @Override
-    public void deleteSong(Song song) {
+    public SongPage getSongsPage(User user, int limit, int cursor)
+    {
+        SongPage page = null;
+        SongDAO dao = getSongDao();
+        DaoStatistics.Timer timer = statistics.start("SongDAO.getSongsPage");
         try
         {
-            songDao.deleteSong(song);
+            page = dao.getSongsPage(user, limit, cursor);
+            timer.stop(page == null ? 0 : countRows(page.getSongs()));
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
+        return page;
     }
 
     @Override
-    public List<Song> getAllSongs(User user) {
-        List<Song> allSongs = null;
+    public int getSongCount(User user)
+    {
+        int count = 0;
+        SongDAO dao = getSongDao();
+        DaoStatistics.Timer timer = statistics.start("SongDAO.getSongCount");
         try
         {
-            allSongs = songDao.getAllSongs(user);
+            count = dao.getSongCount(user);
+            timer.stop(1);
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
         }
-        return allSongs;
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
+        }
+        return count;
     }
 
     @Override
-    public Playlist createPlaylist(User user, String name) {
-        Playlist createdPlaylist = null;
+    public LibrarySnapshot getLibrarySnapshot(User user)
+    {
+        return getSnapshotStore().read(user);
+    }
+
+    @Override
+    public void saveLibrarySnapshot(User user, String changeToken, long version, List<Song> songs, List<Playlist> playlists)
+    {
+        getSnapshotStore().write(user, changeToken, version, songs, playlists);
+    }
+
+    @Override
+    public String getLibraryChangeToken(User user)
+    {
+        String changeToken = null;
+        LibraryDAO dao = getLibraryDao();
+        DaoStatistics.Timer timer = statistics.start("LibraryDAO.getChangeToken");
         try
         {
-            createdPlaylist = playlistDao.createPlaylist(user, name);
+            changeToken = dao.getChangeToken(user);
+            timer.stop(changeToken == null ? 0 : 1);
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
         }
-        return createdPlaylist;
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
+        }
+        return changeToken;
     }
 
     @Override
-    public Playlist updatePlaylist(Playlist playlist, String newName) {
-        Playlist updatedPlaylist = null;
+    public LibraryChanges getLibraryChanges(User user, long since)
+    {
+        LibraryChanges changes = null;
+        LibraryDAO dao = getLibraryDao();
+        DaoStatistics.Timer timer = statistics.start("LibraryDAO.getChanges");
         try
         {
-            updatedPlaylist = playlistDao.updatePlaylist(playlist, newName);
+            changes = dao.getChanges(user, since);
+            timer.stop(countRows(changes));
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
-        return updatedPlaylist;
+        return changes;
     }
 
     @Override
-    public void deletePlaylist(Playlist playlist) {
+    public long getLibraryVersion()
+    {
+        long version = 0;
+        LibraryDAO dao = getLibraryDao();
+        DaoStatistics.Timer timer = statistics.start("LibraryDAO.getVersion");
         try
         {
-            playlistDao.deletePlaylist(playlist);
+            version = dao.getVersion();
+            timer.stop(1);
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
+        return version;
     }
 
     @Override
-    public List<Playlist> getAllPlaylists(User user) {
-        List<Playlist> allPlaylists = null;
+    public boolean saveLibraryMutations(List<LibraryMutation> mutations)
+    {
+        LibraryDAO dao = getLibraryDao();
+        DaoStatistics.Timer timer = statistics.start("LibraryDAO.saveMutations");
         try
         {
-            allPlaylists = playlistDao.getAllPlaylists(user);
+            dao.saveMutations(mutations);
+            timer.stop(mutations.size());
+            return true;
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
         }
-        return allPlaylists;
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
+        }
+        return false;
     }
 
     @Override
-    public Playlist switchSongsPlacesOnPlaylist(Playlist playlist, Song firstSong, Song secondSong)
+    public SongSearchPage searchSongs(User user, String prefix, int limit, SongSearchPage.Cursor cursor)
     {
-        Playlist updatedPlaylist = null;
+        SongSearchPage page = null;
+        SongDAO dao = getSongDao();
+        DaoStatistics.Timer timer = statistics.start("SongDAO.searchSongs");
         try
         {
-            updatedPlaylist = playlistSongsDao.switchSongPlacesOnPlaylist(playlist, firstSong, secondSong);
+            page = dao.searchSongs(user, prefix, limit, cursor);
+            timer.stop(page == null ? 0 : countRows(page.getSongs()));
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
-        return updatedPlaylist;
+        return page;
     }
 
     @Override
-    public void deleteSongFromPlaylist(Playlist playlist, Song song) {
+    public Playlist createPlaylist(User user, String name) {
+        Playlist createdPlaylist = null;
+        PlaylistDAO dao = getPlaylistDao();
+        DaoStatistics.Timer timer = statistics.start("PlaylistDAO.createPlaylist");
         try
         {
-            playlistSongsDao.deleteSongFromPlaylist(playlist, song);
+            createdPlaylist = dao.createPlaylist(user, name);
+            timer.stop(createdPlaylist == null ? 0 : 1);
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
+        return createdPlaylist;
     }
 
     @Override
-    public Playlist addSongToPlaylist(Playlist playlist, Song song) {
-        Playlist updatedPlaylist = null;
+    public List<Playlist> getAllPlaylists(User user) {
+        List<Playlist> allPlaylists = null;
+        PlaylistDAO dao = getPlaylistDao();
+        DaoStatistics.Timer timer = statistics.start("PlaylistDAO.getAllPlaylists");
         try
         {
-            updatedPlaylist = playlistSongsDao.addSongToPlaylist(playlist, song);
+            allPlaylists = dao.getAllPlaylists(user);
+            timer.stop(countRows(allPlaylists));
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
         }
-        return updatedPlaylist;
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
+        }
+        return allPlaylists;
     }
-    
+
     @Override
     public List<String> getAllGenres()
     {
         List<String> allGenres = null;
+        GenreDAO dao = getGenreDao();
+        DaoStatistics.Timer timer = statistics.start("GenreDAO.getAllGenres");
         try
         {
-            allGenres = genreDao.getAllGenres();
+            allGenres = dao.getAllGenres();
+            timer.stop(countRows(allGenres));
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
         return allGenres;
     }
@@ -208,13 +442,21 @@ public class DalController implements IDalFacade{
     public User createUser(String email, String password)
     {
         User user = null;
+        UserDAO dao = getUserDao();
+        DaoStatistics.Timer timer = statistics.start("UserDAO.createUser");
         try
         {
-            user = userDao.createUser(email, password);
+            user = dao.createUser(email, password);
+            timer.stop(user == null ? 0 : 1);
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
         return user;
     }
@@ -223,15 +465,44 @@ public class DalController implements IDalFacade{
     public User getUser(String email, String password)
     {
         User user = null;
+        UserDAO dao = getUserDao();
+        DaoStatistics.Timer timer = statistics.start("UserDAO.getUser");
         try
         {
-            user = userDao.getUser(email, password);
+            user = dao.getUser(email, password);
+            timer.stop(user == null ? 0 : 1);
         }
         catch(SQLException e)
         {
-            //TO DO
+            timer.fail(e);
+        }
+        catch(RuntimeException e)
+        {
+            timer.fail(e);
+            throw e;
         }
         return user;
     }
 
+    /**
+     * Returns the number of rows in given list.
+     */
+    private static int countRows(List<?> rows)
+    {
+        return rows == null ? 0 : rows.size();
+    }
+
+    /**
+     * Returns the number of changed and deleted rows in given changes.
+     */
+    private static int countRows(LibraryChanges changes)
+    {
+        if(changes == null)
+        {
+            return 0;
+        }
+        return changes.getSongs().size() + changes.getDeletedSongIds().size()
+                + changes.getPlaylists().size() + changes.getDeletedPlaylistIds().size();
+    }
+
 }
@@ -1,54 +1,240 @@
 package mytunes.dal;
 
 import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
-import com.microsoft.sqlserver.jdbc.SQLServerException;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Properties;
+import javax.sql.DataSource;
+import mytunes.diagnostics.MetricsRegistry;
+import mytunes.diagnostics.SlowStatementLog;
+import mytunes.diagnostics.StartupReport;
 
 /**
- * The {@code DbConnectionProvider} class is responsible for 
- * establishing connection with a database.
- * 
+ * The {@code DbConnectionProvider} class is responsible for
+ * establishing connection with a database. It is using singleton
+ * design pattern, so connection settings are read only once and all
+ * DAOs share the same {@code ConnectionPool}.
+ *
+ * Besides the connection data, settings file can contain optional
+ * pool settings: PoolMinSize, PoolMaxSize, PoolIdleTimeout,
+ * PoolValidationIdleTime, PoolLeakThreshold and PoolBorrowTimeout, and
+ * the threshold of slow statement log: SlowStatementThreshold (times in
+ * milliseconds). Leak detection is off unless PoolLeakThreshold is set.
+ * Usage of the pool is published in {@code MetricsRegistry} and the pool
+ * is closed when the application exits.
+ * Tools run without the database, like benchmarks, can create the instance
+ * with their own data source.
+ *
  * @author schemabuoi
  * @author kiddo
  */
 public class DbConnectionProvider {
-    
+
     private static final String PROP_FILE = "data/connectionInfo.settings";
-    private SQLServerDataSource ds;
-    
+    private static DbConnectionProvider instance;
+    private ConnectionPool pool;
+
     /**
-     * Creates a connection with the database.
+     * Creates the pool of connections with given data source.
+     *
+     * @param ds The source of physical connections.
+     * @param databaseProperties The connection settings.
      */
-    public DbConnectionProvider()
+    private DbConnectionProvider(DataSource ds, Properties databaseProperties)
     {
-        try
+        pool = new ConnectionPool(ds,
+                getIntProperty(databaseProperties, "PoolMinSize", 1),
+                getIntProperty(databaseProperties, "PoolMaxSize", 8),
+                getIntProperty(databaseProperties, "PoolIdleTimeout", 300000),
+                getIntProperty(databaseProperties, "PoolValidationIdleTime", 5000),
+                getIntProperty(databaseProperties, "PoolLeakThreshold", 0),
+                getIntProperty(databaseProperties, "PoolBorrowTimeout", 10000));
+        SlowStatementLog.createInstance().setThresholdMillis(
+                getIntProperty(databaseProperties, "SlowStatementThreshold", 500));
+        registerPoolMetrics();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    pool.close();
+                }
+            }, "db-pool-shutdown"
+        ));
+    }
+
+    /**
+     * Returns single instance of DbConnectionProvider class.
+     *
+     * @return The instance of DbConnectionProvider class.
+     */
+    public static synchronized DbConnectionProvider createInstance()
+    {
+        if(instance == null)
         {
-            Properties databaseProperties = new Properties();
-            databaseProperties.load(new FileInputStream(PROP_FILE));
-            ds = new SQLServerDataSource();
+            long start = System.nanoTime();
+            Properties databaseProperties = readProperties();
+            SQLServerDataSource ds = new SQLServerDataSource();
             ds.setServerName(databaseProperties.getProperty("Server"));
             ds.setDatabaseName(databaseProperties.getProperty("Database"));
             ds.setUser(databaseProperties.getProperty("User"));
             ds.setPassword(databaseProperties.getProperty("Password"));
+            instance = new DbConnectionProvider(ds, databaseProperties);
+            StartupReport.createInstance().record("DbConnectionProvider", System.nanoTime() - start);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns single instance of DbConnectionProvider class which takes
+     * connections from given data source instead of the database from
+     * settings file. It has to be called before any DAO is created.
+     *
+     * @param dataSource The source of physical connections.
+     * @return The instance of DbConnectionProvider class.
+     * @throws IllegalStateException if the instance was already created.
+     */
+    public static synchronized DbConnectionProvider createInstance(DataSource dataSource)
+    {
+        if(instance != null)
+        {
+            throw new IllegalStateException("Connection provider was already created");
+        }
+        instance = new DbConnectionProvider(dataSource, new Properties());
+        return instance;
+    }
+
+    /**
+     * Reads the connection settings. Missing settings file gives empty settings.
+     */
+    private static Properties readProperties()
+    {
+        Properties databaseProperties = new Properties();
+        try(FileInputStream input = new FileInputStream(PROP_FILE))
+        {
+            databaseProperties.load(input);
         }
         catch(IOException e)
         {
             //To DO
         }
+        return databaseProperties;
     }
-    
+
     /**
      * Returns Connection object which is able to
-     * provide informations about database.
-     * 
+     * provide informations about database. The connection
+     * is borrowed from the pool and goes back to it when closed.
+     *
      * @return The connection with database.
-     * @throws SQLServerException if connection with database cannot be established.
+     * @throws SQLException if connection with database cannot be established.
      */
-    public Connection getConnection() throws SQLServerException
+    public Connection getConnection() throws SQLException
     {
-        return ds.getConnection();
+        return pool.getConnection();
+    }
+
+    /**
+     * Returns the pool of connections shared by all DAOs.
+     *
+     * @return The connection pool.
+     */
+    public ConnectionPool getPool()
+    {
+        return pool;
+    }
+
+    /**
+     * Publishes usage of the pool in {@code MetricsRegistry}.
+     */
+    private void registerPoolMetrics()
+    {
+        MetricsRegistry registry = MetricsRegistry.createInstance();
+        registry.gauge("db.pool.active", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return pool.getActiveCount();
+                }
+            }
+        );
+        registry.gauge("db.pool.idle", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return pool.getIdleCount();
+                }
+            }
+        );
+        registry.gauge("db.pool.max", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return pool.getMaxSize();
+                }
+            }
+        );
+        registry.gauge("db.pool.borrows", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return pool.getBorrowCount();
+                }
+            }
+        );
+        registry.gauge("db.pool.avgWaitMs", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return pool.getAverageWaitMillis();
+                }
+            }
+        );
+        registry.gauge("db.pool.timeouts", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return pool.getTimeoutCount();
+                }
+            }
+        );
+        registry.gauge("db.pool.leaks", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return pool.getLeakCount();
+                }
+            }
+        );
+    }
+
+    /**
+     * Returns the value of integer property or default value
+     * if property is missing or is not a number.
+     */
+    private static int getIntProperty(Properties properties, String key, int defaultValue)
+    {
+        String value = properties.getProperty(key);
+        if(value == null)
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch(NumberFormatException e)
+        {
+            return defaultValue;
+        }
     }
 }
@@ -1,8 +1,13 @@
 package mytunes.dal;
 
 import java.util.List;
+import mytunes.be.LibraryChanges;
+import mytunes.be.LibraryMutation;
+import mytunes.be.LibrarySnapshot;
 import mytunes.be.Playlist;
 import mytunes.be.Song;
+import mytunes.be.SongPage;
+import mytunes.be.SongSearchPage;
 import mytunes.be.User;
 
 /**
@@ -28,91 +33,123 @@ public interface IDalFacade {
     Song createSong(User user, String title, String artist, String genre, String path, int time);
     
     /**
-     * Updates the song in database.
+     * Gets all songs from database for given user.
      * 
-     * @param song The song to update.
-     * @param newTitle The new title for song.
-     * @param newArtist The new artist for song.
-     * @param newGenre The new genre for song.
-     * @return Updated song.
+     * @param user The songs user.
+     * @return List with songs.
      */
-    Song updateSong(Song song, String newTitle, String newArtist, String newGenre);
+    List<Song> getAllSongs(User user);
     
     /**
-     * Deletes song from database.
+     * Gets one page of all songs of given user from database. Pages are
+     * read by keyset pagination - the cursor of next page is returned with
+     * every page, so the first songs are available before the rest is read.
      * 
-     * @param song The song to delete.
+     * @param user The songs user.
+     * @param limit The maximal number of songs on page.
+     * @param cursor The cursor of page, 0 for the first page.
+     * @return The page of songs.
      */
-    void deleteSong(Song song);
+    SongPage getSongsPage(User user, int limit, int cursor);
     
     /**
-     * Gets all songs from database for given user.
+     * Gets the number of songs of given user in database. It is read by
+     * index, so the size of library is known before its songs are read.
      * 
      * @param user The songs user.
-     * @return List with songs.
+     * @return The number of songs or 0 if it cannot be read.
      */
-    List<Song> getAllSongs(User user);
+    int getSongCount(User user);
     
     /**
-     * Creates a Playlist in the database for a given user.
+     * Gets one page of songs of given user which title or artist starts
+     * with given prefix, searched in database. Pages are read by keyset
+     * pagination - the cursor of next page is returned with every page.
      * 
-     * @param user The playlist user.
-     * @param name The name of the playlist.
-     * @return Created playlist.
+     * @param user The songs user.
+     * @param prefix The prefix of title or artist.
+     * @param limit The maximal number of songs on page.
+     * @param cursor The cursor of page, {@code SongSearchPage.Cursor.FIRST} for the first page.
+     * @return The page of songs.
      */
-    Playlist createPlaylist(User user, String name);
+    SongSearchPage searchSongs(User user, String prefix, int limit, SongSearchPage.Cursor cursor);
     
     /**
-     * Updates the name of the playlist in the database.
+     * Gets the snapshot of library of given user stored on local disk.
+     * Songs from the snapshot are the same objects as songs read from
+     * database later.
      * 
-     * @param playlist The playlist to update.
-     * @param newName The new name for the playlist.
-     * @return Updated playlist.
+     * @param user The user.
+     * @return The snapshot or null if there is no valid snapshot of user.
      */
-    Playlist updatePlaylist(Playlist playlist, String newName);
+    LibrarySnapshot getLibrarySnapshot(User user);
     
     /**
-     * Deletes playlist from the database.
+     * Stores the snapshot of library of given user on local disk.
      * 
-     * @param playlist The playlist to delete.
+     * @param user The user.
+     * @param changeToken The change token read before songs and playlists.
+     * @param version The version of library read before songs and playlists, or 0 if it is unknown.
+     * @param songs The songs of user.
+     * @param playlists The playlists of user.
      */
-    void deletePlaylist(Playlist playlist);
+    void saveLibrarySnapshot(User user, String changeToken, long version, List<Song> songs, List<Playlist> playlists);
     
     /**
-     * Gets a list with all playlists from the database for given user. All playlists
-     * consist of all songs that appears on them.
+     * Gets the change token of library of given user from the database.
+     * The token is changed by every change of songs, playlists or songs on playlists.
      * 
-     * @param user The playlists user.
-     * @return List with playlists.
+     * @param user The user.
+     * @return The change token or null if it cannot be read.
      */
-    List<Playlist> getAllPlaylists(User user);
+    String getLibraryChangeToken(User user);
     
     /**
-     * Switches the places of songs in database.
+     * Gets changes in library of given user made in the database since given
+     * version - added and changed songs and playlists and ids of deleted ones.
+     * Reading changes takes time proportional to the number of changes.
      * 
-     * @param playlist The playlist with songs to switch.
-     * @param firstSong The first song to switch.
-     * @param secondSong The second song to switch.
-     * @return Updated playlist with switched positions of songs.
+     * @param user The user.
+     * @param since The version returned with previous changes or by {@code getLibraryVersion}.
+     * @return The changes or null if they cannot be read.
      */
-    Playlist switchSongsPlacesOnPlaylist(Playlist playlist, Song firstSong, Song secondSong);
+    LibraryChanges getLibraryChanges(User user, long since);
     
     /**
-     * Deletes song from given playlist in database.
+     * Gets the current version of library in the database. Changes made
+     * after reading the version are returned by {@code getLibraryChanges}.
      * 
-     * @param playlist The playlist with song to delete.
-     * @param song The song to delete.
+     * @return The version or 0 if it cannot be read.
      */
-    void deleteSongFromPlaylist(Playlist playlist, Song song);
+    long getLibraryVersion();
     
     /**
-     * Adds a song to the playlist in database.
+     * Writes given changes of library to the database in one transaction,
+     * so either all of them are saved or none.
      * 
-     * @param playlist The playlist for song.
-     * @param song The song to add.
-     * @return Updated playlist with added song
+     * @param mutations The changes, at most one for every changed row.
+     * @return true if changes were saved.
      */
-    Playlist addSongToPlaylist(Playlist playlist, Song song);
+    boolean saveLibraryMutations(List<LibraryMutation> mutations);
+    
+    /**
+     * Creates a Playlist in the database for a given user.
+     * 
+     * @param user The playlist user.
+     * @param name The name of the playlist.
+     * @return Created playlist.
+     */
+    Playlist createPlaylist(User user, String name);
+    
+    /**
+     * Gets a list with all playlists from the database for given user. All playlists
+     * consist of all songs that appears on them. Songs on playlists are the same
+     * objects as songs returned by {@code getAllSongs} and {@code getSongsPage}.
+     * 
+     * @param user The playlists user.
+     * @return List with playlists.
+     */
+    List<Playlist> getAllPlaylists(User user);
     
     /**
      * Gets a list with names of all genres from the database.
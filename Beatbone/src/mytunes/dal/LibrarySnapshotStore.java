@@ -0,0 +1,252 @@
+package mytunes.dal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mytunes.be.LibrarySnapshot;
+import mytunes.be.Playlist;
+import mytunes.be.Song;
+import mytunes.be.User;
+
+/**
+ * The {@code LibrarySnapshotStore} class is responsible for storing
+ * the library of user in a binary file on local disk. There is one file
+ * for every user. The file is mapped to memory when it is read, so songs
+ * are decoded straight from the page cache without copying the file
+ * through streams. Songs are taken from {@code SongIdentityMap}, so songs
+ * from the snapshot are the same objects as songs read from database later,
+ * also when the snapshot is stale and the whole library is read again.
+ * A file is written to a temporary file first and then moved in place,
+ * so a broken write never replaces the previous snapshot.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class LibrarySnapshotStore {
+
+    private static final Logger LOGGER = Logger.getLogger(LibrarySnapshotStore.class.getName());
+    private static final int MAGIC = 0x42425331;
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path directory;
+    private final SongIdentityMap identityMap;
+
+    /**
+     * Creates store keeping files in the directory of application
+     * in home directory of the current system user.
+     *
+     * @param identityMap The map with songs loaded in current session.
+     */
+    public LibrarySnapshotStore(SongIdentityMap identityMap)
+    {
+        this(Paths.get(System.getProperty("user.home"), ".beatbone", "snapshots"), identityMap);
+    }
+
+    /**
+     * Creates store keeping files in given directory.
+     *
+     * @param directory The directory with files.
+     * @param identityMap The map with songs loaded in current session.
+     */
+    public LibrarySnapshotStore(Path directory, SongIdentityMap identityMap)
+    {
+        this.directory = directory;
+        this.identityMap = identityMap;
+    }
+
+    /**
+     * Reads the snapshot of library of given user.
+     *
+     * @param user The user.
+     * @return The snapshot or null if there is no valid snapshot of user.
+     */
+    public LibrarySnapshot read(User user)
+    {
+        Path file = getFile(user);
+        if(!Files.isRegularFile(file))
+        {
+            return null;
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != user.getId())
+            {
+                return null;
+            }
+            String changeToken = readString(buffer);
+            long version = buffer.getLong();
+            identityMap.startLoading(user.getId());
+            int songCount = readCount(buffer);
+            List<Song> songs = new ArrayList<Song>(songCount);
+            for(int i = 0; i < songCount; i++)
+            {
+                int id = buffer.getInt();
+                String title = readString(buffer);
+                String artist = readString(buffer);
+                String genre = readString(buffer);
+                String path = readString(buffer);
+                int time = buffer.getInt();
+                songs.add(identityMap.getOrCreate(id, title, artist, genre, path, time));
+            }
+            int playlistCount = readCount(buffer);
+            List<Playlist> playlists = new ArrayList<Playlist>(playlistCount);
+            for(int i = 0; i < playlistCount; i++)
+            {
+                Playlist playlist = new Playlist(buffer.getInt(), readString(buffer));
+                int trackCount = readCount(buffer);
+                for(int j = 0; j < trackCount; j++)
+                {
+                    Song song = identityMap.get(buffer.getInt());
+                    long orderKey = buffer.getLong();
+                    if(song != null)
+                    {
+                        playlist.addSong(song, orderKey);
+                    }
+                }
+                playlists.add(playlist);
+            }
+            identityMap.finishLoading(user.getId());
+            return new LibrarySnapshot(songs, playlists, changeToken, version);
+        }
+        catch(IOException | BufferUnderflowException | IllegalArgumentException e)
+        {
+            LOGGER.log(Level.WARNING, "Library snapshot " + file + " cannot be read", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot of library of given user, replacing the previous one.
+     *
+     * @param user The user.
+     * @param changeToken The change token of database read before songs and playlists.
+     * @param version The version of library read before songs and playlists.
+     * @param songs The songs of user.
+     * @param playlists The playlists of user.
+     */
+    public void write(User user, String changeToken, long version, List<Song> songs, List<Playlist> playlists)
+    {
+        Path file = getFile(user);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try
+        {
+            Files.createDirectories(directory);
+            try(OutputStream stream = Files.newOutputStream(temporary);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16)))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(user.getId());
+                writeString(out, changeToken);
+                out.writeLong(version);
+                out.writeInt(songs.size());
+                for(Song song : songs)
+                {
+                    out.writeInt(song.getId());
+                    writeString(out, song.getTitle());
+                    writeString(out, song.getArtist());
+                    writeString(out, song.getGenre());
+                    writeString(out, song.getPath());
+                    out.writeInt(song.getTime());
+                }
+                out.writeInt(playlists.size());
+                for(Playlist playlist : playlists)
+                {
+                    out.writeInt(playlist.getId());
+                    writeString(out, playlist.getName());
+                    List<Song> tracklist = playlist.getTracklist();
+                    out.writeInt(tracklist.size());
+                    for(Song song : tracklist)
+                    {
+                        out.writeInt(song.getId());
+                        out.writeLong(playlist.getOrderKey(song));
+                    }
+                }
+            }
+            try
+            {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.WARNING, "Library snapshot " + file + " cannot be written", e);
+        }
+    }
+
+    /**
+     * Returns the file with snapshot of given user.
+     */
+    private Path getFile(User user)
+    {
+        return directory.resolve("library-" + user.getId() + ".bin");
+    }
+
+    /**
+     * Writes string as its length and bytes in UTF-8, or -1 for null.
+     */
+    private static void writeString(DataOutputStream out, String text) throws IOException
+    {
+        if(text == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the number of following entries, which cannot be
+     * greater than the number of remaining bytes.
+     */
+    private static int readCount(MappedByteBuffer buffer)
+    {
+        int count = buffer.getInt();
+        if(count < 0 || count > buffer.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    /**
+     * Reads string written by {@code writeString}.
+     */
+    private static String readString(MappedByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+        if(length < 0)
+        {
+            return null;
+        }
+        if(length > buffer.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
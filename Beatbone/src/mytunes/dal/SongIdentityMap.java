@@ -0,0 +1,163 @@
+package mytunes.dal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import mytunes.be.Song;
+
+/**
+ * The {@code SongIdentityMap} class is storing the single instance
+ * of every song loaded from database in current session, so the list of
+ * all songs and all playlists share the same {@code Song} objects.
+ * The map is bound to one user - loading songs of another user clears it,
+ * while loading songs of the same user again keeps the songs already in the map.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class SongIdentityMap {
+
+    private final Map<Integer, Song> songsById;
+    private int userId;
+    private boolean loaded;
+
+    /**
+     * Creates an empty identity map.
+     */
+    public SongIdentityMap()
+    {
+        songsById = new HashMap<Integer, Song>();
+        userId = -1;
+    }
+
+    /**
+     * Returns the song with given id or null if
+     * song with this id was not loaded.
+     *
+     * @param id The id of song.
+     * @return The song with given id.
+     */
+    public synchronized Song get(int id)
+    {
+        return songsById.get(id);
+    }
+
+    /**
+     * Returns the single instance of song with given data. If song with
+     * given id is already in the map, it is returned as it is, otherwise
+     * a new song is created and stored in the map. Data of songs in the map
+     * are never changed here, because they can be changed by user and are
+     * indexed by the model on JavaFX Application Thread.
+     *
+     * @param id The ID of song.
+     * @param title The title of song.
+     * @param artist The artist of song.
+     * @param genre The genre of song.
+     * @param path The path of song.
+     * @param time The time of song.
+     * @return The song with given id.
+     */
+    public synchronized Song getOrCreate(int id, String title, String artist, String genre, String path, int time)
+    {
+        Song song = songsById.get(id);
+        if(song == null)
+        {
+            song = new Song(id, title, artist, genre, path, time);
+            songsById.put(id, song);
+        }
+        return song;
+    }
+
+    /**
+     * Returns the single instance of song with given data like {@code getOrCreate}.
+     * If song was already in the map and its data differ from given data, a new song
+     * with given data, which is not stored in the map, is put to given map under
+     * the returned song, so the data read from database can be applied to it later.
+     *
+     * @param id The ID of song.
+     * @param title The title of song.
+     * @param artist The artist of song.
+     * @param genre The genre of song.
+     * @param path The path of song.
+     * @param time The time of song.
+     * @param changedRows The map with songs and their data read from database.
+     * @return The song with given id.
+     */
+    public synchronized Song getOrCreate(int id, String title, String artist, String genre, String path, int time,
+            Map<Song, Song> changedRows)
+    {
+        Song song = songsById.get(id);
+        if(song == null)
+        {
+            song = new Song(id, title, artist, genre, path, time);
+            songsById.put(id, song);
+        }
+        else if(!Objects.equals(song.getTitle(), title) || !Objects.equals(song.getArtist(), artist)
+                || !Objects.equals(song.getGenre(), genre) || !Objects.equals(song.getPath(), path))
+        {
+            changedRows.put(song, new Song(id, title, artist, genre, path, time));
+        }
+        return song;
+    }
+
+    /**
+     * Removes song with given id from the map.
+     *
+     * @param id The id of song.
+     */
+    public synchronized void remove(int id)
+    {
+        songsById.remove(id);
+    }
+
+    /**
+     * Binds the map to the user whose songs are loaded. If map
+     * was storing songs of another user it is cleared. Songs of the same
+     * user are kept, so reloading the library returns the same objects.
+     *
+     * @param userId The id of user.
+     */
+    public synchronized void startLoading(int userId)
+    {
+        if(this.userId != userId)
+        {
+            songsById.clear();
+            this.userId = userId;
+        }
+        loaded = false;
+    }
+
+    /**
+     * Marks all songs of given user as loaded.
+     *
+     * @param userId The id of user.
+     */
+    public synchronized void finishLoading(int userId)
+    {
+        if(this.userId == userId)
+        {
+            loaded = true;
+        }
+    }
+
+    /**
+     * Returns true if all songs of given user are loaded.
+     *
+     * @param userId The id of user.
+     * @return true if songs are loaded.
+     */
+    public synchronized boolean isLoaded(int userId)
+    {
+        return loaded && this.userId == userId;
+    }
+
+    /**
+     * Returns the number of songs in the map.
+     *
+     * @return The number of songs.
+     */
+    public synchronized int size()
+    {
+        return songsById.size();
+    }
+}
@@ -24,7 +24,7 @@ public class GenreDAO {
      */
     public GenreDAO()
     {
-        connector = new DbConnectionProvider();
+        connector = DbConnectionProvider.createInstance();
     }
     
     /**
@@ -0,0 +1,389 @@
+package mytunes.dal.daos;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import mytunes.be.LibraryChanges;
+import mytunes.be.LibraryMutation;
+import mytunes.be.Playlist;
+import mytunes.be.Song;
+import mytunes.be.User;
+import mytunes.dal.DbConnectionProvider;
+import mytunes.dal.SongIdentityMap;
+
+/**
+ * The {@code LibraryDAO} class is responsible for
+ * operations on the whole library of user - Songs, Playlists
+ * and PlaylistSongs tables together. Every row of these tables has a row
+ * version which is changed by every insert and update, and deleted rows
+ * leave tombstones in Tombstones table, so changes made since some version
+ * can be read without reading the whole library. Changes of existing
+ * songs, playlists and songs on playlists are written only by
+ * {@code saveMutations}, other DAOs create new rows and read them.
+ * 
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class LibraryDAO {
+    
+    private static final int MAX_IDS_IN_QUERY = 500;
+    private DbConnectionProvider connector;
+    private SongIdentityMap identityMap;
+    
+    /**
+     * Creates connector with database.
+     * 
+     * @param identityMap The map with songs loaded in current session.
+     */
+    public LibraryDAO(SongIdentityMap identityMap)
+    {
+        connector = DbConnectionProvider.createInstance();
+        this.identityMap = identityMap;
+    }
+    
+    /**
+     * Gets the current version of database. All rows changed by transactions
+     * committed before have smaller versions, and rows changed by transactions
+     * which are still running will get versions which are not smaller.
+     * 
+     * @return The version of database.
+     * @throws SQLException if connection with database cannot be established.
+     */
+    public long getVersion() throws SQLException
+    {
+        try(Connection con = connector.getConnection())
+        {
+            return getVersion(con);
+        }
+    }
+    
+    /**
+     * Gets changes in library of given user made since given version, up to
+     * the current version. Songs are taken from {@code SongIdentityMap}, so changed
+     * songs already loaded are returned as the same objects, which are not changed -
+     * their data read from database are returned separately. Playlists are returned with all their songs
+     * when the playlist or any of its songs was changed.
+     * 
+     * @param user The user.
+     * @param since The version of the last read changes.
+     * @return The changes.
+     * @throws SQLException if connection with database cannot be established.
+     */
+    public LibraryChanges getChanges(User user, long since) throws SQLException
+    {
+        try(Connection con = connector.getConnection())
+        {
+            long version = getVersion(con);
+            Set<Integer> deletedSongIds = new HashSet<Integer>();
+            Set<Integer> deletedPlaylistIds = new HashSet<Integer>();
+            Set<Integer> changedPlaylistIds = new HashSet<Integer>();
+            String sqlStatement = "SELECT tableName, rowId, parentId FROM Tombstones WHERE userId=? AND " + inRange("version");
+            try(PreparedStatement statement = con.prepareStatement(sqlStatement))
+            {
+                statement.setInt(1, user.getId());
+                setRange(statement, 2, since, version);
+                ResultSet rs = statement.executeQuery();
+                while(rs.next())
+                {
+                    String tableName = rs.getString("tableName");
+                    if("Songs".equals(tableName))
+                    {
+                        deletedSongIds.add(rs.getInt("rowId"));
+                    }
+                    else if("Playlists".equals(tableName))
+                    {
+                        deletedPlaylistIds.add(rs.getInt("rowId"));
+                    }
+                    else if("PlaylistSongs".equals(tableName))
+                    {
+                        changedPlaylistIds.add(rs.getInt("parentId"));
+                    }
+                }
+            }
+            for(int id : deletedSongIds)
+            {
+                identityMap.remove(id);
+            }
+            List<Song> songs = new ArrayList<Song>();
+            Map<Song, Song> changedRows = new HashMap<Song, Song>();
+            sqlStatement = "SELECT * FROM Songs WHERE userId=? AND " + inRange("version");
+            try(PreparedStatement statement = con.prepareStatement(sqlStatement))
+            {
+                statement.setInt(1, user.getId());
+                setRange(statement, 2, since, version);
+                ResultSet rs = statement.executeQuery();
+                while(rs.next())
+                {
+                    songs.add(identityMap.getOrCreate(rs.getInt("id"), rs.getString("title"), rs.getString("artist"),
+                            rs.getString("genre"), rs.getString("path"), rs.getInt("time"), changedRows));
+                }
+            }
+            sqlStatement = "SELECT id FROM Playlists WHERE userId=? AND " + inRange("version") + " " +
+                    "UNION SELECT PlaylistSongs.playlistId FROM PlaylistSongs " +
+                    "INNER JOIN Playlists on PlaylistSongs.playlistId=Playlists.id " +
+                    "WHERE Playlists.userId=? AND " + inRange("PlaylistSongs.version");
+            try(PreparedStatement statement = con.prepareStatement(sqlStatement))
+            {
+                statement.setInt(1, user.getId());
+                setRange(statement, 2, since, version);
+                statement.setInt(4, user.getId());
+                setRange(statement, 5, since, version);
+                ResultSet rs = statement.executeQuery();
+                while(rs.next())
+                {
+                    changedPlaylistIds.add(rs.getInt(1));
+                }
+            }
+            changedPlaylistIds.removeAll(deletedPlaylistIds);
+            List<Playlist> playlists = getPlaylists(con, user, new ArrayList<Integer>(changedPlaylistIds));
+            return new LibraryChanges(version, songs, changedRows, deletedSongIds, playlists, deletedPlaylistIds);
+        }
+    }
+    
+    /**
+     * Writes given mutations to database in one transaction, so either
+     * all of them are saved or none. Mutations of the same kind are sent
+     * in one batch. Songs on playlists are removed first and added last,
+     * and rows of deleted songs and playlists are removed from PlaylistSongs
+     * before the songs and playlists themselves.
+     * 
+     * @param mutations The mutations, at most one for every key.
+     * @throws SQLException if connection with database cannot be established.
+     */
+    public void saveMutations(List<LibraryMutation> mutations) throws SQLException
+    {
+        try(Connection con = connector.getConnection())
+        {
+            con.setAutoCommit(false);
+            try
+            {
+                executeBatch(con, mutations, LibraryMutation.Type.REMOVE_TRACK,
+                        "DELETE FROM PlaylistSongs WHERE playlistId=? AND songId=?");
+                executeBatch(con, mutations, LibraryMutation.Type.DELETE_PLAYLIST,
+                        "DELETE FROM PlaylistSongs WHERE playlistId=?", "DELETE FROM Playlists WHERE id=?");
+                executeBatch(con, mutations, LibraryMutation.Type.DELETE_SONG,
+                        "DELETE FROM PlaylistSongs WHERE songId=?", "DELETE FROM Songs WHERE id=?");
+                executeBatch(con, mutations, LibraryMutation.Type.UPDATE_SONG,
+                        "UPDATE Songs SET title=?, artist=?, genre=? WHERE id=?");
+                executeBatch(con, mutations, LibraryMutation.Type.RENAME_PLAYLIST,
+                        "UPDATE Playlists SET name=? WHERE id=?");
+                executeBatch(con, mutations, LibraryMutation.Type.MOVE_TRACK,
+                        "UPDATE PlaylistSongs SET position=? WHERE playlistId=? AND songId=?");
+                executeBatch(con, mutations, LibraryMutation.Type.ADD_TRACK,
+                        "INSERT INTO PlaylistSongs(position, playlistId, songId) VALUES(?,?,?)");
+                con.commit();
+            }
+            catch(SQLException e)
+            {
+                con.rollback();
+                throw e;
+            }
+            finally
+            {
+                con.setAutoCommit(true);
+            }
+        }
+        for(LibraryMutation mutation : mutations)
+        {
+            if(mutation.getType() == LibraryMutation.Type.DELETE_SONG)
+            {
+                identityMap.remove(mutation.getSongId());
+            }
+        }
+    }
+    
+    /**
+     * Executes given statements in batches for all mutations of given type.
+     * Parameters are set in the order used by statements of every type.
+     */
+    private static void executeBatch(Connection con, List<LibraryMutation> mutations, LibraryMutation.Type type,
+            String... sqlStatements) throws SQLException
+    {
+        for(String sqlStatement : sqlStatements)
+        {
+            try(PreparedStatement statement = con.prepareStatement(sqlStatement))
+            {
+                int count = 0;
+                for(LibraryMutation mutation : mutations)
+                {
+                    if(mutation.getType() != type)
+                    {
+                        continue;
+                    }
+                    switch(type)
+                    {
+                        case UPDATE_SONG:
+                            statement.setString(1, mutation.getTitle());
+                            statement.setString(2, mutation.getArtist());
+                            statement.setString(3, mutation.getGenre());
+                            statement.setInt(4, mutation.getSongId());
+                            break;
+                        case DELETE_SONG:
+                            statement.setInt(1, mutation.getSongId());
+                            break;
+                        case RENAME_PLAYLIST:
+                            statement.setString(1, mutation.getName());
+                            statement.setInt(2, mutation.getPlaylistId());
+                            break;
+                        case DELETE_PLAYLIST:
+                            statement.setInt(1, mutation.getPlaylistId());
+                            break;
+                        case REMOVE_TRACK:
+                            statement.setInt(1, mutation.getPlaylistId());
+                            statement.setInt(2, mutation.getSongId());
+                            break;
+                        default:
+                            statement.setLong(1, mutation.getOrderKey());
+                            statement.setInt(2, mutation.getPlaylistId());
+                            statement.setInt(3, mutation.getSongId());
+                            break;
+                    }
+                    statement.addBatch();
+                    count++;
+                }
+                if(count > 0)
+                {
+                    statement.executeBatch();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets playlists of given user with given ids and all their songs.
+     * Ids are sent in parts, so the statement never gets too many parameters.
+     */
+    private List<Playlist> getPlaylists(Connection con, User user, List<Integer> ids) throws SQLException
+    {
+        Map<Integer, Playlist> playlistsById = new LinkedHashMap<Integer, Playlist>();
+        for(int from = 0; from < ids.size(); from += MAX_IDS_IN_QUERY)
+        {
+            List<Integer> part = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_IN_QUERY));
+            StringBuilder parameters = new StringBuilder();
+            for(int i = 0; i < part.size(); i++)
+            {
+                parameters.append(i == 0 ? "?" : ",?");
+            }
+            String sqlStatement = "SELECT Playlists.id, Playlists.name, PlaylistSongs.songId, PlaylistSongs.position, " +
+                    "Songs.title, Songs.artist, Songs.genre, Songs.path, Songs.time FROM Playlists " +
+                    "LEFT JOIN PlaylistSongs on PlaylistSongs.playlistId=Playlists.id " +
+                    "LEFT JOIN Songs on PlaylistSongs.songId=Songs.id " +
+                    "WHERE Playlists.userId=? AND Playlists.id IN (" + parameters + ") " +
+                    "ORDER BY Playlists.id, PlaylistSongs.position";
+            try(PreparedStatement statement = con.prepareStatement(sqlStatement))
+            {
+                statement.setInt(1, user.getId());
+                for(int i = 0; i < part.size(); i++)
+                {
+                    statement.setInt(i + 2, part.get(i));
+                }
+                ResultSet rs = statement.executeQuery();
+                while(rs.next())
+                {
+                    int id = rs.getInt("id");
+                    Playlist playlist = playlistsById.get(id);
+                    if(playlist == null)
+                    {
+                        playlist = new Playlist(id, rs.getString("name"));
+                        playlistsById.put(id, playlist);
+                    }
+                    int songId = rs.getInt("songId");
+                    if(!rs.wasNull())
+                    {
+                        Song song = identityMap.get(songId);
+                        if(song == null)
+                        {
+                            song = identityMap.getOrCreate(songId, rs.getString("title"), rs.getString("artist"),
+                                    rs.getString("genre"), rs.getString("path"), rs.getInt("time"));
+                        }
+                        playlist.addSong(song, rs.getLong("position"));
+                    }
+                }
+            }
+        }
+        return new ArrayList<Playlist>(playlistsById.values());
+    }
+    
+    /**
+     * Gets the current version of database using given connection.
+     */
+    private static long getVersion(Connection con) throws SQLException
+    {
+        try(PreparedStatement statement = con.prepareStatement("SELECT CAST(MIN_ACTIVE_ROWVERSION() AS BIGINT)"))
+        {
+            ResultSet rs = statement.executeQuery();
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+    
+    /**
+     * Returns the condition checking that given version column is not
+     * smaller than the first parameter and smaller than the second one.
+     */
+    private static String inRange(String column)
+    {
+        return column + ">=CAST(CAST(? AS BIGINT) AS BINARY(8)) AND " + column + "<CAST(CAST(? AS BIGINT) AS BINARY(8))";
+    }
+    
+    /**
+     * Sets parameters of condition returned by {@code inRange}.
+     */
+    private static void setRange(PreparedStatement statement, int index, long since, long version) throws SQLException
+    {
+        statement.setLong(index, since);
+        statement.setLong(index + 1, version);
+    }
+    
+    /**
+     * Gets the change token of library of given user. The token consist
+     * of numbers of rows and checksums of all songs, playlists and songs
+     * on playlists of user, so it is changed by every change in library.
+     * Checksums are counted by database, so only one row is sent back.
+     * 
+     * @param user The user.
+     * @return The change token.
+     * @throws SQLException if connection with database cannot be established.
+     */
+    public String getChangeToken(User user) throws SQLException
+    {
+        String sqlStatement = "SELECT " +
+                "(SELECT COUNT_BIG(*) FROM Songs WHERE userId=?), " +
+                "(SELECT CHECKSUM_AGG(BINARY_CHECKSUM(id, title, artist, genre, path, time)) FROM Songs WHERE userId=?), " +
+                "(SELECT COUNT_BIG(*) FROM Playlists WHERE userId=?), " +
+                "(SELECT CHECKSUM_AGG(BINARY_CHECKSUM(id, name)) FROM Playlists WHERE userId=?), " +
+                "(SELECT COUNT_BIG(*) FROM PlaylistSongs INNER JOIN Playlists on PlaylistSongs.playlistId=Playlists.id " +
+                    "WHERE Playlists.userId=?), " +
+                "(SELECT CHECKSUM_AGG(BINARY_CHECKSUM(PlaylistSongs.playlistId, PlaylistSongs.songId, PlaylistSongs.position)) " +
+                    "FROM PlaylistSongs INNER JOIN Playlists on PlaylistSongs.playlistId=Playlists.id WHERE Playlists.userId=?)";
+        try(Connection con = connector.getConnection();
+                PreparedStatement statement = con.prepareStatement(sqlStatement))
+        {
+            for(int i = 1; i <= 6; i++)
+            {
+                statement.setInt(i, user.getId());
+            }
+            ResultSet rs = statement.executeQuery();
+            rs.next();
+            StringBuilder token = new StringBuilder();
+            for(int i = 1; i <= 6; i++)
+            {
+                if(i > 1)
+                {
+                    token.append(':');
+                }
+                token.append(rs.getLong(i));
+            }
+            return token.toString();
+        }
+    }
+    
+}
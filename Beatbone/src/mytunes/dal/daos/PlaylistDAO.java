@@ -27,12 +27,14 @@ public class PlaylistDAO {
     private PlaylistSongsDAO psDao;
         
     /**
-     * Creates connector with database and DAO for PlaylistSongs.
+     * Creates connector with database.
+     * 
+     * @param psDao The DAO for PlaylistSongs table.
      */
-    public PlaylistDAO()
+    public PlaylistDAO(PlaylistSongsDAO psDao)
     {
-        connector = new DbConnectionProvider();
-        psDao = new PlaylistSongsDAO();
+        connector = DbConnectionProvider.createInstance();
+        this.psDao = psDao;
     }
     
     /**
@@ -59,28 +61,6 @@ public class PlaylistDAO {
         }
     }
     
-    /**
-     * Updates the name of the playlist in the database.
-     * 
-     * @param playlist The playlist to update.
-     * @param newName The new name for the playlist.
-     * @return Updated playlist.
-     * @throws SQLException if connection with database cannot be established.
-     */
-    public Playlist updatePlaylist(Playlist playlist, String newName) throws SQLException
-    {
-        String sqlStatement = "UPDATE Playlists SET name=? WHERE id=?";
-        try(Connection con = connector.getConnection();
-                PreparedStatement statement = con.prepareStatement(sqlStatement))
-        {
-            statement.setString(1, newName);
-            statement.setInt(2, playlist.getId());
-            statement.execute();
-            playlist.setName(newName);
-            return playlist;
-        }
-    }
-    
     /**
      * Gets a list with all playlists from the database for given user. After adding all playlists
      * to the list,it uses object of PlaylistSongsDAO class to add
@@ -92,7 +72,7 @@ public class PlaylistDAO {
      */
     public List<Playlist> getAllPlaylists(User user) throws SQLException
     {
-        String sqlStatement = "SELECT * FROM Playlists WHERE userId=?";
+        String sqlStatement = "SELECT * FROM Playlists WHERE userId=? ORDER BY id";
         List<Playlist> allPlaylists = new ArrayList();
         try(Connection con = connector.getConnection();
                 PreparedStatement statement = con.prepareStatement(sqlStatement))
@@ -110,23 +90,4 @@ public class PlaylistDAO {
         return allPlaylists;
     }
     
-    /**
-     * Uses object of PlaylistSongsDAO class to delete all songs 
-     * from the given playlist and deletes playlist from the database.
-     * 
-     * @param playlist The playlist to delete.
-     * @throws SQLException if connection with database cannot be established. 
-     */
-    public void deletePlaylist(Playlist playlist) throws SQLException
-    {
-        psDao.deleteAllSongsFromPlaylist(playlist);
-        String sqlStatement = "DELETE FROM Playlists WHERE id=?";
-        try(Connection con = connector.getConnection();
-                PreparedStatement statement = con.prepareStatement(sqlStatement))
-        {
-            statement.setInt(1, playlist.getId());
-            statement.execute();
-        }
-    }
-    
 }
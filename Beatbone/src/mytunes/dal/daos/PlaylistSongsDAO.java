@@ -4,169 +4,147 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import mytunes.be.Playlist;
 import mytunes.be.Song;
 import mytunes.be.User;
 import mytunes.dal.DbConnectionProvider;
+import mytunes.dal.SongIdentityMap;
 
 /**
  * The {@code PlaylistSongsDAO} class is responsible for
- * operations on PlaylistSongs table in our database.
+ * reading PlaylistSongs table in our database.
+ * Every row stores the position of song on playlist, which is the order key
+ * of song described in {@code Playlist} class. Positions are sparse, so
+ * moving songs updates only rows of the moved songs and deleting a song
+ * does not change positions of other songs. Rows are written only
+ * by {@code LibraryDAO.saveMutations}.
  * 
  * @author schemabuoi
  * @author kiddo
  */
 public class PlaylistSongsDAO {
     
+    private static final int FETCH_SIZE = 1000;
+    private static final int MAX_IDS_IN_QUERY = 500;
     private DbConnectionProvider connector;
+    private SongIdentityMap identityMap;
     
     /**
      * Creates connector with database.
-     */
-    public PlaylistSongsDAO()
-    {
-        connector = new DbConnectionProvider();
-    }
-    
-    /**
-     * Adds a song to the playlist in database.
      * 
-     * @param playlist The playlist for song.
-     * @param song The song to add.
-     * @return Updated playlist with added song
-     * @throws SQLException if connection with database cannot be established.
+     * @param identityMap The map with songs loaded in current session.
      */
-    public Playlist addSongToPlaylist(Playlist playlist, Song song) throws SQLException
+    public PlaylistSongsDAO(SongIdentityMap identityMap)
     {
-        String sqlStatement = "INSERT INTO PlaylistSongs(playlistId, songId) values(?,?)";
-        try(Connection con = connector.getConnection();
-                PreparedStatement statement = con.prepareStatement(sqlStatement))
-        {
-            statement.setInt(1, playlist.getId());
-            statement.setInt(2, song.getId());
-            statement.execute();
-            playlist.addSong(song);
-            return playlist;
-        }
+        connector = DbConnectionProvider.createInstance();
+        this.identityMap = identityMap;
     }
     
     /**
-     * Adds all songs from database to playlists from given list.
+     * Adds all songs from database to playlists from given list. Rows of
+     * PlaylistSongs are read with their playlist id, song id and position only,
+     * in one pass, and grouped by playlist through a map with playlists ids,
+     * so the order of playlists on the list does not matter. Songs already loaded
+     * are taken from {@code SongIdentityMap}, only songs missing there are read
+     * from Songs table afterwards, so playlists can be read before all songs
+     * of user are loaded without reading the columns of song for every row.
+     * Songs are added in the order of their positions.
      * 
+     * @param user The playlists user.
      * @param playlists The list of a playlists.
      * @throws SQLException if connection with database cannot be established.
      */
     public void addAllSongsToPlaylists(User user, List<Playlist> playlists) throws SQLException
     {
-        String sqlStatement = "SELECT Playlists.id as playlistId, Songs.* FROM PlaylistSongs " +
+        Map<Integer, Playlist> playlistsById = new HashMap<Integer, Playlist>(playlists.size() * 2);
+        for(Playlist p : playlists)
+        {
+            playlistsById.put(p.getId(), p);
+        }
+        String sqlStatement = "SELECT PlaylistSongs.playlistId, PlaylistSongs.songId, PlaylistSongs.position FROM PlaylistSongs " +
                                         "INNER JOIN Playlists on PlaylistSongs.playlistId=Playlists.id " +
-                                        "INNER JOIN Songs on PlaylistSongs.songId=Songs.id " +
-                                        "WHERE Songs.userId=?";
-        try(Connection con = connector.getConnection();
-                PreparedStatement statement = con.prepareStatement(sqlStatement))
+                                        "WHERE Playlists.userId=? " +
+                                        "ORDER BY PlaylistSongs.playlistId, PlaylistSongs.position";
+        int count = 0;
+        int[] playlistIds = new int[FETCH_SIZE];
+        int[] songIds = new int[FETCH_SIZE];
+        long[] positions = new long[FETCH_SIZE];
+        Set<Integer> missingSongIds = new HashSet<Integer>();
+        try(Connection con = connector.getConnection())
         {
-            statement.setInt(1, user.getId());
-            ResultSet rs = statement.executeQuery();
-            if(rs.next())
+            try(PreparedStatement statement = con.prepareStatement(sqlStatement))
             {
-                for(Playlist p : playlists)
+                statement.setInt(1, user.getId());
+                statement.setFetchSize(FETCH_SIZE);
+                ResultSet rs = statement.executeQuery();
+                while(rs.next())
                 {
-                    while(!rs.isAfterLast() && rs.getInt("playlistId") == p.getId())
+                    if(count == songIds.length)
+                    {
+                        playlistIds = Arrays.copyOf(playlistIds, count * 2);
+                        songIds = Arrays.copyOf(songIds, count * 2);
+                        positions = Arrays.copyOf(positions, count * 2);
+                    }
+                    playlistIds[count] = rs.getInt(1);
+                    songIds[count] = rs.getInt(2);
+                    positions[count] = rs.getLong(3);
+                    if(identityMap.get(songIds[count]) == null)
                     {
-                        int id = rs.getInt("id");
-                        String title = rs.getString("title");
-                        String artist = rs.getString("artist");
-                        String genre = rs.getString("genre");
-                        String path = rs.getString("path");
-                        int time = rs.getInt("time");
-                        p.addSong(new Song(id, title, artist, genre, path, time));
-                        rs.next();
+                        missingSongIds.add(songIds[count]);
                     }
+                    count++;
                 }
             }
+            getSongs(con, user, new ArrayList<Integer>(missingSongIds));
         }
-    }
-    
-    /**
-     * Switches the places of songs in database.
-     * 
-     * @param playlist The playlist with songs to switch.
-     * @param firstSong The first song to switch.
-     * @param secondSong The second song to switch.
-     * @return Updated playlist with switched positions of songs.
-     * @throws SQLException if connection with database cannot be established. 
-     */
-    public Playlist switchSongPlacesOnPlaylist(Playlist playlist, Song firstSong, Song secondSong) throws SQLException
-    {
-        String sqlStatement = "UPDATE PlaylistSongs SET playlistId=?, songId=? WHERE playlistId=? and songId=?;" +
-                    "UPDATE PlaylistSongs SET playlistId=?, songId=? WHERE playlistId=? and songId=?;";
-        try(Connection con = connector.getConnection();
-                PreparedStatement statement = con.prepareStatement(sqlStatement))
-        {
-            statement.setInt(1, playlist.getId());
-            statement.setInt(2, secondSong.getId());
-            statement.setInt(3, playlist.getId());
-            statement.setInt(4, firstSong.getId());
-            statement.setInt(5, playlist.getId());
-            statement.setInt(6, firstSong.getId());
-            statement.setInt(7, playlist.getId());
-            statement.setInt(8, secondSong.getId());
-            statement.execute();
-        }
-        return playlist;
-    }
-    
-    /**
-     * Deletes song from given playlist in database.
-     * 
-     * @param playlist The playlist with song to delete.
-     * @param song The song to delete.
-     * @throws SQLException if connection with database cannot be established.  
-     */
-    public void deleteSongFromPlaylist(Playlist playlist, Song song) throws SQLException
-    {
-        String sqlStatement = "DELETE FROM PlaylistSongs WHERE playlistId=? and songId=?";
-        try(Connection con = connector.getConnection();
-                PreparedStatement statement = con.prepareStatement(sqlStatement))
-        {
-            statement.setInt(1, playlist.getId());
-            statement.setInt(2, song.getId());
-            statement.execute();
-        }
-    }
-    
-    /**
-     * Deletes all songs from given playlist in database.
-     * 
-     * @param playlist The playlist to clear.
-     * @throws SQLException if connection with database cannot be established.
-     */
-    public void deleteAllSongsFromPlaylist(Playlist playlist) throws SQLException
-    {
-        String sqlStatement = "DELETE FROM PlaylistSongs WHERE playlistId=?";
-        try(Connection con = connector.getConnection();
-                PreparedStatement statement = con.prepareStatement(sqlStatement))
+        for(int i = 0; i < count; i++)
         {
-            statement.setInt(1, playlist.getId());
-            statement.execute();
+            Playlist p = playlistsById.get(playlistIds[i]);
+            Song song = identityMap.get(songIds[i]);
+            if(p != null && song != null)
+            {
+                p.addSong(song, positions[i]);
+            }
         }
     }
     
     /**
-     * Deletes given song from all playlists.
-     * 
-     * @param song The song to delete.
-     * @throws SQLException if connection with database cannot be established. 
+     * Reads songs of given user with given ids to {@code SongIdentityMap}.
+     * Ids are sent in parts, so the statement never gets too many parameters.
      */
-    public void deleteSongFromAllPlaylists(Song song) throws SQLException
+    private void getSongs(Connection con, User user, List<Integer> ids) throws SQLException
     {
-        String sqlStatement = "DELETE FROM PlaylistSongs WHERE songId=?";
-        try(Connection con = connector.getConnection();
-                PreparedStatement statement = con.prepareStatement(sqlStatement))
+        for(int from = 0; from < ids.size(); from += MAX_IDS_IN_QUERY)
         {
-            statement.setInt(1, song.getId());
-            statement.execute();
+            List<Integer> part = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_IN_QUERY));
+            StringBuilder parameters = new StringBuilder();
+            for(int i = 0; i < part.size(); i++)
+            {
+                parameters.append(i == 0 ? "?" : ",?");
+            }
+            String sqlStatement = "SELECT id, title, artist, genre, path, time FROM Songs " +
+                                        "WHERE userId=? AND id IN (" + parameters + ")";
+            try(PreparedStatement statement = con.prepareStatement(sqlStatement))
+            {
+                statement.setInt(1, user.getId());
+                for(int i = 0; i < part.size(); i++)
+                {
+                    statement.setInt(i + 2, part.get(i));
+                }
+                ResultSet rs = statement.executeQuery();
+                while(rs.next())
+                {
+                    identityMap.getOrCreate(rs.getInt("id"), rs.getString("title"), rs.getString("artist"),
+                            rs.getString("genre"), rs.getString("path"), rs.getInt("time"));
+                }
+            }
         }
     }
 }
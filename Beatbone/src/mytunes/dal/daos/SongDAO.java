@@ -1,37 +1,45 @@
 package mytunes.dal.daos;
 
-import com.microsoft.sqlserver.jdbc.SQLServerException;
-import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import mytunes.be.Song;
+import mytunes.be.SongPage;
+import mytunes.be.SongSearchPage;
 import mytunes.be.User;
 import mytunes.dal.DbConnectionProvider;
+import mytunes.dal.SongIdentityMap;
 
 /**
  * The {@code SongDAO} class is responsible for
  * operations on Songs table in our database.
+ * All songs are taken from {@code SongIdentityMap}, so there is only
+ * one object for every song in current session.
  * 
  * @author schemabuoi
  * @author kiddo
  */
 public class SongDAO {
     
+    private static final int FETCH_SIZE = 1000;
     private DbConnectionProvider connector;
-    private PlaylistSongsDAO playlistSongsDao;
+    private SongIdentityMap identityMap;
     
     /**
      * Creates connector with database.
+     * 
+     * @param identityMap The map with songs loaded in current session.
      */
-    public SongDAO()
+    public SongDAO(SongIdentityMap identityMap)
     {
-        connector = new DbConnectionProvider();
-        playlistSongsDao = new PlaylistSongsDAO();
+        connector = DbConnectionProvider.createInstance();
+        this.identityMap = identityMap;
     }
     
     /**
@@ -62,85 +70,228 @@ public class SongDAO {
             ResultSet rs = statement.getGeneratedKeys();
             rs.next();
             int id = rs.getInt(1);
-            return new Song(id, title,artist,genre,path,time);
+            return identityMap.getOrCreate(id, title,artist,genre,path,time);
         }
     }
     
     /**
-     * Updates the song in database.
+     * Gets all songs from database for given user.
      * 
-     * @param song The song to update.
-     * @param newTitle The new title for song.
-     * @param newArtist The new artist for song.
-     * @param newGenre The new genre for song.
-     * @return Updated song.
+     * @param user The songs user.
+     * @return List with songs.
      * @throws SQLException if connection with database cannot be established.
      */
-    public Song updateSong(Song song, String newTitle, String newArtist, String newGenre) throws SQLException
+    public List<Song> getAllSongs(User user) throws SQLException
     {
-        String sqlStatement = "UPDATE Songs SET title=?, artist=?, genre=? WHERE id=?";
+        String sqlStatement = "SELECT * FROM Songs WHERE userId=?";
+        List<Song> allSongs = new ArrayList();
         try(Connection con = connector.getConnection();
                 PreparedStatement statement = con.prepareStatement(sqlStatement))
         {
-            statement.setString(1, newTitle);
-            statement.setString(2, newArtist);
-            statement.setString(3, newGenre);
-            statement.setInt(4, song.getId());
-            statement.execute();
-            song.setTitle(newTitle);
-            song.setArtist(newArtist);
-            song.setGenre(newGenre);
-            return song;
+            statement.setInt(1, user.getId());
+            statement.setFetchSize(FETCH_SIZE);
+            identityMap.startLoading(user.getId());
+            ResultSet rs = statement.executeQuery();
+            while(rs.next())
+            {
+                int id = rs.getInt("id");
+                String title = rs.getString("title");
+                String artist = rs.getString("artist");
+                String genre = rs.getString("genre");
+                String path = rs.getString("path");
+                int time = rs.getInt("time");
+                allSongs.add(identityMap.getOrCreate(id,title,artist,genre,path,time));
+            }
+            identityMap.finishLoading(user.getId());
         }
+        return allSongs;
     }
     
     /**
-     * Gets all songs from database for given user.
+     * Gets one page of all songs of given user. Songs are ordered by id
+     * and the cursor is the id of the last song on previous page, so pages
+     * are read by index and reading the first page does not depend
+     * on the number of songs. When the last page is read, all songs
+     * of user are marked as loaded. Songs which were already loaded are
+     * not changed, their data read from database are returned with the page.
      * 
      * @param user The songs user.
-     * @return List with songs.
+     * @param limit The maximal number of songs on page.
+     * @param cursor The cursor of page, 0 for the first page.
+     * @return The page of songs.
      * @throws SQLException if connection with database cannot be established.
      */
-    public List<Song> getAllSongs(User user) throws SQLException
+    public SongPage getSongsPage(User user, int limit, int cursor) throws SQLException
     {
-        String sqlStatement = "SELECT * FROM Songs WHERE userId=?";
-        List<Song> allSongs = new ArrayList();
+        String sqlStatement = "SELECT TOP (?) * FROM Songs WHERE userId=? AND id>? ORDER BY id";
+        List<Song> songs = new ArrayList<Song>(limit);
+        Map<Song, Song> changedRows = new HashMap<Song, Song>();
+        boolean hasMore = false;
         try(Connection con = connector.getConnection();
                 PreparedStatement statement = con.prepareStatement(sqlStatement))
         {
-            statement.setInt(1, user.getId());
+            statement.setInt(1, limit + 1);
+            statement.setInt(2, user.getId());
+            statement.setInt(3, cursor);
+            statement.setFetchSize(Math.min(limit + 1, FETCH_SIZE));
+            if(cursor == 0)
+            {
+                identityMap.startLoading(user.getId());
+            }
             ResultSet rs = statement.executeQuery();
             while(rs.next())
             {
+                if(songs.size() == limit)
+                {
+                    hasMore = true;
+                    break;
+                }
                 int id = rs.getInt("id");
                 String title = rs.getString("title");
                 String artist = rs.getString("artist");
                 String genre = rs.getString("genre");
                 String path = rs.getString("path");
                 int time = rs.getInt("time");
-                allSongs.add(new Song(id,title,artist,genre,path,time));
+                songs.add(identityMap.getOrCreate(id,title,artist,genre,path,time,changedRows));
+            }
+            if(!hasMore)
+            {
+                identityMap.finishLoading(user.getId());
             }
         }
-        return allSongs;
+        int nextCursor = songs.isEmpty() ? cursor : songs.get(songs.size() - 1).getId();
+        return new SongPage(songs, changedRows, nextCursor, hasMore);
     }
     
     /**
-     * Uses object of PlaylistSongsDAO class to delete song from
-     * all playlists that contain this song and then completely deletes song from database.
+     * Gets the number of songs of given user.
      * 
-     * @param song The song to delete.
+     * @param user The songs user.
+     * @return The number of songs.
      * @throws SQLException if connection with database cannot be established.
      */
-    public void deleteSong(Song song) throws SQLException
+    public int getSongCount(User user) throws SQLException
     {
-        playlistSongsDao.deleteSongFromAllPlaylists(song);
-        String sqlStatement = "DELETE FROM Songs WHERE id=?";
+        String sqlStatement = "SELECT COUNT(*) FROM Songs WHERE userId=?";
         try(Connection con = connector.getConnection();
                 PreparedStatement statement = con.prepareStatement(sqlStatement))
         {
-            statement.setInt(1, song.getId());
-            statement.execute();
+            statement.setInt(1, user.getId());
+            ResultSet rs = statement.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+    
+    /**
+     * Gets one page of songs of given user which title or artist starts
+     * with given prefix. Songs which title starts with the prefix are read
+     * first, ordered by title and id, and then songs which only artist starts
+     * with the prefix, ordered by artist and id. The cursor keeps the title
+     * or artist and the id of the last song on previous page, so with indexes
+     * on (userId, title) and (userId, artist) every page is read by seeking
+     * the index to the place where previous page ended.
+     * 
+     * @param user The songs user.
+     * @param prefix The prefix of title or artist.
+     * @param limit The maximal number of songs on page.
+     * @param cursor The cursor of page, {@code SongSearchPage.Cursor.FIRST} for the first page.
+     * @return The page of songs.
+     * @throws SQLException if connection with database cannot be established.
+     */
+    public SongSearchPage searchSongs(User user, String prefix, int limit, SongSearchPage.Cursor cursor) throws SQLException
+    {
+        String pattern = escapeLike(prefix) + "%";
+        List<Song> songs = new ArrayList<Song>();
+        try(Connection con = connector.getConnection())
+        {
+            if(!cursor.isArtist())
+            {
+                SongSearchPage titlePage = seekSongs(con, user, pattern, limit, cursor);
+                if(titlePage.hasMore())
+                {
+                    return titlePage;
+                }
+                songs.addAll(titlePage.getSongs());
+                cursor = SongSearchPage.Cursor.FIRST_ARTIST;
+            }
+            SongSearchPage artistPage = seekSongs(con, user, pattern, limit - songs.size(), cursor);
+            songs.addAll(artistPage.getSongs());
+            return new SongSearchPage(songs, artistPage.getNextCursor(), artistPage.hasMore());
+        }
+    }
+    
+    /**
+     * Reads songs which title or artist, depending on cursor, matches given
+     * pattern, ordered by this column and id, starting after the song of cursor.
+     * Songs found by artist which title matches the pattern too are skipped,
+     * because they were already read by title.
+     */
+    private SongSearchPage seekSongs(Connection con, User user, String pattern, int limit, SongSearchPage.Cursor cursor) throws SQLException
+    {
+        String column = cursor.isArtist() ? "artist" : "title";
+        String sqlStatement = "SELECT TOP (?) * FROM Songs WHERE userId=? AND " + column + " LIKE ? ESCAPE '\\'"
+                + (cursor.isArtist() ? " AND title NOT LIKE ? ESCAPE '\\'" : "")
+                + (cursor.getLastKey() != null ? " AND " + column + ">=? AND (" + column + ">? OR id>?)" : "")
+                + " ORDER BY " + column + ", id";
+        List<Song> songs = new ArrayList<Song>();
+        boolean hasMore = false;
+        String lastKey = cursor.getLastKey();
+        int lastId = cursor.getLastId();
+        try(PreparedStatement statement = con.prepareStatement(sqlStatement))
+        {
+            int index = 1;
+            statement.setInt(index++, limit + 1);
+            statement.setInt(index++, user.getId());
+            statement.setString(index++, pattern);
+            if(cursor.isArtist())
+            {
+                statement.setString(index++, pattern);
+            }
+            if(cursor.getLastKey() != null)
+            {
+                statement.setString(index++, cursor.getLastKey());
+                statement.setString(index++, cursor.getLastKey());
+                statement.setInt(index++, cursor.getLastId());
+            }
+            statement.setFetchSize(Math.min(limit + 1, FETCH_SIZE));
+            ResultSet rs = statement.executeQuery();
+            while(rs.next())
+            {
+                if(songs.size() == limit)
+                {
+                    hasMore = true;
+                    break;
+                }
+                int id = rs.getInt("id");
+                String title = rs.getString("title");
+                String artist = rs.getString("artist");
+                String genre = rs.getString("genre");
+                String path = rs.getString("path");
+                int time = rs.getInt("time");
+                songs.add(identityMap.getOrCreate(id,title,artist,genre,path,time));
+                lastKey = cursor.isArtist() ? artist : title;
+                lastId = id;
+            }
+        }
+        return new SongSearchPage(songs, new SongSearchPage.Cursor(cursor.isArtist(), lastKey, lastId), hasMore);
+    }
+    
+    /**
+     * Escapes characters which have special meaning in LIKE pattern.
+     */
+    private static String escapeLike(String text)
+    {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for(char c : text.toCharArray())
+        {
+            if(c == '\\' || c == '%' || c == '_' || c == '[')
+            {
+                escaped.append('\\');
+            }
+            escaped.append(c);
         }
+        return escaped.toString();
     }
     
 }
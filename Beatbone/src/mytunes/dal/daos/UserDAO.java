@@ -24,7 +24,7 @@ public class UserDAO {
      */
     public UserDAO()
     {
-        connector = new DbConnectionProvider();
+        connector = DbConnectionProvider.createInstance();
     }
     
     /**
@@ -0,0 +1,52 @@
+package mytunes.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The {@code DaoCallEvent} class is the Flight Recorder event
+ * of one call of DAO method. It is emitted by {@code DaoStatistics}
+ * for every measured call, also for the failed ones.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+@Name("mytunes.DaoCall")
+@Label("DAO Call")
+@Category({"Beatbone", "Database"})
+@Description("Call of DAO method")
+@StackTrace(false)
+public class DaoCallEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    private String method;
+
+    @Label("Rows")
+    private long rows;
+
+    @Label("Failed")
+    private boolean failed;
+
+    /**
+     * Ends the event and commits it with given data,
+     * if the event is enabled and above its threshold.
+     *
+     * @param method The name of DAO method.
+     * @param rows The number of rows returned by the call.
+     * @param failed true if the call threw an exception.
+     */
+    public void commit(String method, long rows, boolean failed)
+    {
+        end();
+        if(shouldCommit())
+        {
+            this.method = method;
+            this.rows = rows;
+            this.failed = failed;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package mytunes.diagnostics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code DaoStatistics} class is collecting statistics of every
+ * DAO method - the histogram of latencies, the number of calls, rows
+ * returned and errors. Every call is measured with a {@code Timer}
+ * and failed calls are logged with their exceptions. Every call
+ * is also emitted as {@code DaoCallEvent} to Flight Recorder and
+ * statistics are published in {@code MetricsRegistry}.
+ * It is using singleton design pattern, so statistics can be read
+ * at runtime from any layer.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class DaoStatistics {
+
+    private static final Logger LOGGER = Logger.getLogger(DaoStatistics.class.getName());
+    private static DaoStatistics instance;
+    private final ConcurrentHashMap<String, MethodStatistics> methods;
+
+    /**
+     * The statistics of one DAO method.
+     */
+    public static class MethodStatistics {
+
+        private final LatencyHistogram latency;
+        private final AtomicLong rows;
+        private final AtomicLong errors;
+
+        /**
+         * Creates empty statistics.
+         */
+        private MethodStatistics()
+        {
+            latency = new LatencyHistogram();
+            rows = new AtomicLong();
+            errors = new AtomicLong();
+        }
+
+        /**
+         * Returns the histogram of latencies of all calls, also failed ones.
+         *
+         * @return The histogram.
+         */
+        public LatencyHistogram getLatency()
+        {
+            return latency;
+        }
+
+        /**
+         * Returns the number of calls.
+         *
+         * @return The number of calls.
+         */
+        public long getCallCount()
+        {
+            return latency.getCount();
+        }
+
+        /**
+         * Returns the number of rows returned by all calls.
+         *
+         * @return The number of rows.
+         */
+        public long getRowCount()
+        {
+            return rows.get();
+        }
+
+        /**
+         * Returns the number of failed calls.
+         *
+         * @return The number of errors.
+         */
+        public long getErrorCount()
+        {
+            return errors.get();
+        }
+    }
+
+    /**
+     * The measurement of one call of DAO method.
+     */
+    public class Timer {
+
+        private final String method;
+        private final long start;
+        private final DaoCallEvent event;
+
+        /**
+         * Starts measuring the call.
+         */
+        private Timer(String method)
+        {
+            this.method = method;
+            event = new DaoCallEvent();
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        /**
+         * Records successful call.
+         *
+         * @param rows The number of rows returned by the call.
+         */
+        public void stop(long rows)
+        {
+            MethodStatistics statistics = getStatistics(method);
+            statistics.latency.record(System.nanoTime() - start);
+            statistics.rows.addAndGet(rows);
+            event.commit(method, rows, false);
+        }
+
+        /**
+         * Records failed call and logs its exception.
+         *
+         * @param e The exception thrown by the call.
+         */
+        public void fail(Exception e)
+        {
+            MethodStatistics statistics = getStatistics(method);
+            statistics.latency.record(System.nanoTime() - start);
+            statistics.errors.incrementAndGet();
+            event.commit(method, 0, true);
+            LOGGER.log(Level.WARNING, method + " failed", e);
+        }
+    }
+
+    /**
+     * Creates empty statistics.
+     */
+    private DaoStatistics()
+    {
+        methods = new ConcurrentHashMap<String, MethodStatistics>();
+        registerMetrics();
+    }
+
+    /**
+     * Registers statistics of all methods in {@code MetricsRegistry},
+     * with names starting with {@code dao.} and the name of method.
+     */
+    private void registerMetrics()
+    {
+        MetricsRegistry.createInstance().register(new MetricsRegistry.Source()
+            {
+                @Override
+                public void collect(Map<String, Number> metrics)
+                {
+                    for(Map.Entry<String, MethodStatistics> entry : methods.entrySet())
+                    {
+                        String name = "dao." + entry.getKey();
+                        MethodStatistics statistics = entry.getValue();
+                        LatencyHistogram latency = statistics.getLatency();
+                        metrics.put(name + ".calls", statistics.getCallCount());
+                        metrics.put(name + ".rows", statistics.getRowCount());
+                        metrics.put(name + ".errors", statistics.getErrorCount());
+                        metrics.put(name + ".p50Ms", latency.getPercentileMillis(50));
+                        metrics.put(name + ".p99Ms", latency.getPercentileMillis(99));
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Returns single instance of DaoStatistics class.
+     *
+     * @return The instance of DaoStatistics class.
+     */
+    public static synchronized DaoStatistics createInstance()
+    {
+        if(instance == null)
+        {
+            instance = new DaoStatistics();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts measuring the call of given DAO method.
+     *
+     * @param method The name of method, for example {@code SongDAO.getAllSongs}.
+     * @return The timer which has to be stopped or failed.
+     */
+    public Timer start(String method)
+    {
+        return new Timer(method);
+    }
+
+    /**
+     * Returns statistics of all called methods, sorted by names.
+     *
+     * @return The map with names of methods and their statistics.
+     */
+    public Map<String, MethodStatistics> getMethods()
+    {
+        List<String> names = new ArrayList<String>(methods.keySet());
+        Collections.sort(names);
+        Map<String, MethodStatistics> sorted = new LinkedHashMap<String, MethodStatistics>();
+        for(String name : names)
+        {
+            sorted.put(name, methods.get(name));
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns statistics of given method.
+     *
+     * @param method The name of method.
+     * @return The statistics or null if method was not called.
+     */
+    public MethodStatistics getMethod(String method)
+    {
+        return methods.get(method);
+    }
+
+    /**
+     * Writes statistics of all methods to the application log.
+     */
+    public void log()
+    {
+        LOGGER.info(toString());
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("DAO statistics:");
+        for(Map.Entry<String, MethodStatistics> entry : getMethods().entrySet())
+        {
+            MethodStatistics statistics = entry.getValue();
+            LatencyHistogram latency = statistics.getLatency();
+            sb.append(String.format("%n  %-40s calls=%d rows=%d errors=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                    entry.getKey(), statistics.getCallCount(), statistics.getRowCount(), statistics.getErrorCount(),
+                    latency.getPercentileMillis(50), latency.getPercentileMillis(90),
+                    latency.getPercentileMillis(99), latency.getMaxMillis()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns statistics of given method, creating them on first call.
+     */
+    private MethodStatistics getStatistics(String method)
+    {
+        MethodStatistics statistics = methods.get(method);
+        if(statistics == null)
+        {
+            MethodStatistics created = new MethodStatistics();
+            statistics = methods.putIfAbsent(method, created);
+            if(statistics == null)
+            {
+                statistics = created;
+            }
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,44 @@
+package mytunes.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The {@code FxStallEvent} class is the Flight Recorder event of one
+ * stall of JavaFX Application Thread. It begins when the late heartbeat
+ * was posted and is committed by the heartbeat, so its duration is the
+ * duration of the stall.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+@Name("mytunes.FxStall")
+@Label("UI Stall")
+@Category({"Beatbone", "UI"})
+@Description("JavaFX Application Thread did not run posted heartbeat within the threshold")
+@StackTrace(false)
+public class FxStallEvent extends jdk.jfr.Event {
+
+    @Label("Call Site")
+    @Description("Controller and DAO methods on the stack of stalled thread")
+    private String site;
+
+    /**
+     * Ends the event and commits it with given call site,
+     * if the event is enabled and above its threshold.
+     *
+     * @param site The call site of the stall.
+     */
+    public void commit(String site)
+    {
+        end();
+        if(shouldCommit())
+        {
+            this.site = site;
+            commit();
+        }
+    }
+}
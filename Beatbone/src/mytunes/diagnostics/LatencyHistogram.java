@@ -0,0 +1,157 @@
+package mytunes.diagnostics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@code LatencyHistogram} class is counting recorded times in buckets
+ * in the same way as HDR histograms. Times smaller than 64 nanoseconds have
+ * their own buckets and every following power of two is divided into 32
+ * buckets, so every percentile is accurate to about 3 percent from nanoseconds
+ * to days. Recording is one atomic increment, without locks and allocations,
+ * and memory does not grow with the number of recorded times.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int BUCKET_COUNT = getIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong totalNanos;
+    private final AtomicLong maxNanos;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        buckets = new AtomicLongArray(BUCKET_COUNT);
+        count = new AtomicLong();
+        totalNanos = new AtomicLong();
+        maxNanos = new AtomicLong();
+    }
+
+    /**
+     * Records given time.
+     *
+     * @param nanos The time in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(getIndex(value));
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+        long max = maxNanos.get();
+        while(value > max && !maxNanos.compareAndSet(max, value))
+        {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded times.
+     *
+     * @return The number of times.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Returns the average of recorded times.
+     *
+     * @return The time in milliseconds or 0 if nothing was recorded.
+     */
+    public double getMeanMillis()
+    {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : totalNanos.get() / 1e6 / recorded;
+    }
+
+    /**
+     * Returns the longest recorded time.
+     *
+     * @return The time in milliseconds.
+     */
+    public double getMaxMillis()
+    {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns the time which is not exceeded by given percent of recorded
+     * times. The highest time of the bucket is returned, so the percentile
+     * is never smaller than the real one.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The time in milliseconds or 0 if nothing was recorded.
+     */
+    public double getPercentileMillis(double percentile)
+    {
+        long[] counts = new long[BUCKET_COUNT];
+        long recorded = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts[i] = buckets.get(i);
+            recorded += counts[i];
+        }
+        if(recorded == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * recorded));
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += counts[i];
+            if(seen >= rank)
+            {
+                return Math.min(getHighestValue(i), maxNanos.get()) / 1e6;
+            }
+        }
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count=%d, mean=%.2fms, p50=%.2fms, p90=%.2fms, p99=%.2fms, max=%.2fms",
+                getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(90),
+                getPercentileMillis(99), getMaxMillis());
+    }
+
+    /**
+     * Returns the index of bucket for given non-negative value.
+     */
+    private static int getIndex(long value)
+    {
+        if(value < LINEAR_LIMIT)
+        {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest value counted in bucket with given index.
+     */
+    private static long getHighestValue(int index)
+    {
+        if(index < LINEAR_LIMIT)
+        {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index - (long) shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
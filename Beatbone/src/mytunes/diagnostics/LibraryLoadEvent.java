@@ -0,0 +1,52 @@
+package mytunes.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The {@code LibraryLoadEvent} class is the Flight Recorder event of one
+ * phase of loading the library, for example reading the local snapshot,
+ * building the search index or synchronizing with database.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+@Name("mytunes.LibraryLoad")
+@Label("Library Load")
+@Category({"Beatbone", "Startup"})
+@Description("Phase of loading songs and playlists of logged user")
+@StackTrace(false)
+public class LibraryLoadEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Songs")
+    private int songs;
+
+    @Label("Playlists")
+    private int playlists;
+
+    /**
+     * Ends the event and commits it with given data,
+     * if the event is enabled and above its threshold.
+     *
+     * @param phase The name of loading phase.
+     * @param songs The number of songs loaded in this phase.
+     * @param playlists The number of playlists loaded in this phase.
+     */
+    public void commit(String phase, int songs, int playlists)
+    {
+        end();
+        if(shouldCommit())
+        {
+            this.phase = phase;
+            this.songs = songs;
+            this.playlists = playlists;
+            commit();
+        }
+    }
+}
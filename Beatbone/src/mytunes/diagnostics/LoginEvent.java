@@ -0,0 +1,41 @@
+package mytunes.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The {@code LoginEvent} class is the Flight Recorder event of
+ * logging in, from clicking the button to reading the user from database.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+@Name("mytunes.Login")
+@Label("Login")
+@Category({"Beatbone", "Startup"})
+@Description("Reading the user after clicking Log In button")
+@StackTrace(false)
+public class LoginEvent extends jdk.jfr.Event {
+
+    @Label("Succeeded")
+    private boolean succeeded;
+
+    /**
+     * Ends the event and commits it with given result,
+     * if the event is enabled and above its threshold.
+     *
+     * @param succeeded true if e-mail and password were correct.
+     */
+    public void commit(boolean succeeded)
+    {
+        end();
+        if(shouldCommit())
+        {
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
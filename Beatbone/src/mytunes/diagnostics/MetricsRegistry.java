@@ -0,0 +1,385 @@
+package mytunes.diagnostics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * The {@code MetricsRegistry} class is keeping counters, gauges and timers
+ * of the whole application under their names, for example
+ * {@code library.songs} or {@code search.songs.p99Ms}. Counters and timers
+ * are updated by the code which is measured, gauges and sources are read
+ * only when metrics are requested, so the registry costs nothing while
+ * nobody is looking at it. The registry is registered in platform MBean
+ * server as {@code mytunes:type=Metrics}, so all metrics can be read with
+ * JConsole or other JMX client.
+ * It is using singleton design pattern.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class MetricsRegistry implements DynamicMBean {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsRegistry.class.getName());
+    private static final String OBJECT_NAME = "mytunes:type=Metrics";
+    private static MetricsRegistry instance;
+
+    /**
+     * The metric which value is read when metrics are requested.
+     */
+    public interface Gauge {
+
+        /**
+         * Returns the current value of metric.
+         *
+         * @return The value.
+         */
+        Number getValue();
+    }
+
+    /**
+     * The source of several metrics which names are known only
+     * when metrics are requested, for example metrics of DAO methods.
+     */
+    public interface Source {
+
+        /**
+         * Puts current values of metrics to given map.
+         *
+         * @param metrics The map with names of metrics and their values.
+         */
+        void collect(Map<String, Number> metrics);
+    }
+
+    /**
+     * The metric counting events.
+     */
+    public static class Counter {
+
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * Adds one to the counter.
+         */
+        public void increment()
+        {
+            count.incrementAndGet();
+        }
+
+        /**
+         * Adds given number to the counter.
+         *
+         * @param delta The number to add.
+         */
+        public void add(long delta)
+        {
+            count.addAndGet(delta);
+        }
+
+        /**
+         * Returns the number of counted events.
+         *
+         * @return The count.
+         */
+        public long getCount()
+        {
+            return count.get();
+        }
+    }
+
+    /**
+     * The metric measuring times of operations and their rate
+     * over the last minute.
+     */
+    public static class Timer {
+
+        private static final int WINDOW_SECONDS = 60;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final long[] seconds = new long[WINDOW_SECONDS];
+        private final long[] counts = new long[WINDOW_SECONDS];
+
+        /**
+         * Records the time of one operation.
+         *
+         * @param nanos The time in nanoseconds.
+         */
+        public void record(long nanos)
+        {
+            latency.record(nanos);
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            int slot = (int) (second % WINDOW_SECONDS);
+            synchronized(this)
+            {
+                if(seconds[slot] != second)
+                {
+                    seconds[slot] = second;
+                    counts[slot] = 0;
+                }
+                counts[slot]++;
+            }
+        }
+
+        /**
+         * Returns the histogram of recorded times.
+         *
+         * @return The histogram.
+         */
+        public LatencyHistogram getLatency()
+        {
+            return latency;
+        }
+
+        /**
+         * Returns the average number of operations per second during the last minute.
+         *
+         * @return The rate per second.
+         */
+        public synchronized double getRatePerSecond()
+        {
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            long total = 0;
+            for(int i = 0; i < WINDOW_SECONDS; i++)
+            {
+                if(second - seconds[i] < WINDOW_SECONDS)
+                {
+                    total += counts[i];
+                }
+            }
+            return (double) total / WINDOW_SECONDS;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Counter> counters;
+    private final ConcurrentHashMap<String, Timer> timers;
+    private final Map<String, Gauge> gauges;
+    private final List<Source> sources;
+
+    /**
+     * Creates empty registry.
+     */
+    private MetricsRegistry()
+    {
+        counters = new ConcurrentHashMap<String, Counter>();
+        timers = new ConcurrentHashMap<String, Timer>();
+        gauges = new ConcurrentHashMap<String, Gauge>();
+        sources = new CopyOnWriteArrayList<Source>();
+    }
+
+    /**
+     * Returns single instance of MetricsRegistry class.
+     * The instance is registered in platform MBean server when it is created.
+     *
+     * @return The instance of MetricsRegistry class.
+     */
+    public static synchronized MetricsRegistry createInstance()
+    {
+        if(instance == null)
+        {
+            instance = new MetricsRegistry();
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+            }
+            catch(JMException | SecurityException e)
+            {
+                LOGGER.log(Level.WARNING, "Metrics could not be registered in MBean server", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the counter with given name, creating it on first use.
+     *
+     * @param name The name of counter.
+     * @return The counter.
+     */
+    public Counter counter(String name)
+    {
+        Counter counter = counters.get(name);
+        if(counter == null)
+        {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if(counter == null)
+            {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the timer with given name, creating it on first use. Timer
+     * is reported as metrics with its name followed by {@code .count},
+     * {@code .ratePerSecond}, {@code .p50Ms}, {@code .p99Ms} and {@code .maxMs}.
+     *
+     * @param name The name of timer.
+     * @return The timer.
+     */
+    public Timer timer(String name)
+    {
+        Timer timer = timers.get(name);
+        if(timer == null)
+        {
+            Timer created = new Timer();
+            timer = timers.putIfAbsent(name, created);
+            if(timer == null)
+            {
+                timer = created;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Registers the gauge under given name. Previous gauge
+     * with the same name is replaced.
+     *
+     * @param name The name of gauge.
+     * @param gauge The gauge.
+     */
+    public void gauge(String name, Gauge gauge)
+    {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Registers the source of metrics.
+     *
+     * @param source The source.
+     */
+    public void register(Source source)
+    {
+        sources.add(source);
+    }
+
+    /**
+     * Returns current values of all metrics, sorted by names.
+     * Gauges and sources which fail are left out.
+     *
+     * @return The map with names of metrics and their values.
+     */
+    public Map<String, Number> getMetrics()
+    {
+        Map<String, Number> metrics = new TreeMap<String, Number>();
+        for(Map.Entry<String, Counter> entry : counters.entrySet())
+        {
+            metrics.put(entry.getKey(), entry.getValue().getCount());
+        }
+        for(Map.Entry<String, Timer> entry : timers.entrySet())
+        {
+            String name = entry.getKey();
+            Timer timer = entry.getValue();
+            LatencyHistogram latency = timer.getLatency();
+            metrics.put(name + ".count", latency.getCount());
+            metrics.put(name + ".ratePerSecond", timer.getRatePerSecond());
+            metrics.put(name + ".p50Ms", latency.getPercentileMillis(50));
+            metrics.put(name + ".p99Ms", latency.getPercentileMillis(99));
+            metrics.put(name + ".maxMs", latency.getMaxMillis());
+        }
+        for(Map.Entry<String, Gauge> entry : gauges.entrySet())
+        {
+            try
+            {
+                Number value = entry.getValue().getValue();
+                if(value != null)
+                {
+                    metrics.put(entry.getKey(), value);
+                }
+            }
+            catch(RuntimeException e)
+            {
+                LOGGER.log(Level.FINE, "Gauge " + entry.getKey() + " failed", e);
+            }
+        }
+        for(Source source : sources)
+        {
+            try
+            {
+                source.collect(metrics);
+            }
+            catch(RuntimeException e)
+            {
+                LOGGER.log(Level.FINE, "Metrics source failed", e);
+            }
+        }
+        return metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException
+    {
+        Number value = getMetrics().get(attribute);
+        if(value == null)
+        {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes)
+    {
+        Map<String, Number> metrics = getMetrics();
+        AttributeList list = new AttributeList();
+        for(String attribute : attributes)
+        {
+            Number value = metrics.get(attribute);
+            if(value != null)
+            {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes)
+    {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException
+    {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo()
+    {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for(Map.Entry<String, Number> entry : getMetrics().entrySet())
+        {
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Metrics of Beatbone",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+    }
+}
@@ -0,0 +1,68 @@
+package mytunes.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The {@code PlaybackStartEvent} class is the Flight Recorder event of
+ * starting a song, from the request to play it to the first tick of
+ * its current time. The time until the media was ready is recorded
+ * separately.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+@Name("mytunes.PlaybackStart")
+@Label("Playback Start")
+@Category({"Beatbone", "Playback"})
+@Description("Time from the request to play a song to the first tick of its current time")
+@StackTrace(false)
+public class PlaybackStartEvent extends jdk.jfr.Event {
+
+    @Label("Song Id")
+    private int songId;
+
+    @Label("Media Ready")
+    @Description("Time from the request to the media being ready")
+    @Timespan(Timespan.NANOSECONDS)
+    private long mediaReady;
+
+    private transient long start;
+
+    /**
+     * Begins the event for given song.
+     *
+     * @param songId The id of requested song.
+     */
+    public void begin(int songId)
+    {
+        begin();
+        this.songId = songId;
+        start = System.nanoTime();
+    }
+
+    /**
+     * Records that the media of the song is ready.
+     */
+    public void mediaReady()
+    {
+        mediaReady = System.nanoTime() - start;
+    }
+
+    /**
+     * Ends the event and commits it,
+     * if the event is enabled and above its threshold.
+     */
+    public void firstTick()
+    {
+        end();
+        if(shouldCommit())
+        {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package mytunes.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The {@code SearchEvent} class is the Flight Recorder event of one
+ * search query run for a search box, whether songs were searched
+ * in the indexes of {@code MusicSearcher} or in database.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+@Name("mytunes.Search")
+@Label("Search")
+@Category({"Beatbone", "Search"})
+@Description("Search query for songs or playlists")
+@StackTrace(false)
+public class SearchEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    @Description("Index, fuzzy index or database")
+    private String source;
+
+    @Label("Query Length")
+    private int queryLength;
+
+    @Label("Results")
+    private int resultCount;
+
+    /**
+     * Ends the event and commits it with given data,
+     * if the event is enabled and above its threshold.
+     *
+     * @param source The name of searched source.
+     * @param query The query.
+     * @param resultCount The number of found items.
+     */
+    public void commit(String source, String query, int resultCount)
+    {
+        end();
+        if(shouldCommit())
+        {
+            this.source = source;
+            this.queryLength = query == null ? 0 : query.length();
+            this.resultCount = resultCount;
+            commit();
+        }
+    }
+}
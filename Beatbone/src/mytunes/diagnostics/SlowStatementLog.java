@@ -0,0 +1,211 @@
+package mytunes.diagnostics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The {@code SlowStatementLog} class is keeping the last SQL statements
+ * which were executed longer than the threshold, together with the number
+ * of bound parameters and their execution time. Every slow statement is
+ * also written to the application log and the number of slow statements
+ * is published in {@code MetricsRegistry}.
+ * It is using singleton design pattern.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class SlowStatementLog {
+
+    private static final Logger LOGGER = Logger.getLogger(SlowStatementLog.class.getName());
+    private static final long DEFAULT_THRESHOLD_MILLIS = 500;
+    private static final int CAPACITY = 100;
+    private static SlowStatementLog instance;
+
+    /**
+     * One slow execution of SQL statement.
+     */
+    public static class Entry {
+
+        private final long timestamp;
+        private final String sql;
+        private final int bindCount;
+        private final long elapsedNanos;
+
+        private Entry(long timestamp, String sql, int bindCount, long elapsedNanos)
+        {
+            this.timestamp = timestamp;
+            this.sql = sql;
+            this.bindCount = bindCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the time when the statement finished.
+         *
+         * @return The time in milliseconds since the epoch.
+         */
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        /**
+         * Returns the text of the statement.
+         *
+         * @return The SQL text.
+         */
+        public String getSql()
+        {
+            return sql;
+        }
+
+        /**
+         * Returns the number of parameters bound to the statement,
+         * summed over all rows of the batch.
+         *
+         * @return The number of bound parameters.
+         */
+        public int getBindCount()
+        {
+            return bindCount;
+        }
+
+        /**
+         * Returns the time of execution.
+         *
+         * @return The time in milliseconds.
+         */
+        public double getElapsedMillis()
+        {
+            return elapsedNanos / 1e6;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("elapsed=%.1fms binds=%d sql=\"%s\"", getElapsedMillis(), bindCount, sql);
+        }
+    }
+
+    private final Deque<Entry> entries;
+    private volatile long thresholdNanos;
+    private long count;
+
+    /**
+     * Creates empty log with default threshold.
+     */
+    private SlowStatementLog()
+    {
+        entries = new ArrayDeque<Entry>();
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_THRESHOLD_MILLIS);
+        MetricsRegistry.createInstance().gauge("db.slowStatements", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return getCount();
+                }
+            }
+        );
+    }
+
+    /**
+     * Returns single instance of SlowStatementLog class.
+     *
+     * @return The instance of SlowStatementLog class.
+     */
+    public static synchronized SlowStatementLog createInstance()
+    {
+        if(instance == null)
+        {
+            instance = new SlowStatementLog();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the time above which the statement is logged.
+     * Zero or negative threshold turns the log off.
+     *
+     * @param thresholdMillis The threshold in milliseconds.
+     */
+    public void setThresholdMillis(long thresholdMillis)
+    {
+        thresholdNanos = thresholdMillis <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Returns the time above which the statement is logged.
+     *
+     * @return The threshold in milliseconds or 0 if the log is off.
+     */
+    public long getThresholdMillis()
+    {
+        long threshold = thresholdNanos;
+        return threshold == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(threshold);
+    }
+
+    /**
+     * Records executed statement if it was slower than the threshold.
+     *
+     * @param sql The text of the statement.
+     * @param bindCount The number of bound parameters.
+     * @param elapsedNanos The time of execution in nanoseconds.
+     */
+    public void record(String sql, int bindCount, long elapsedNanos)
+    {
+        if(elapsedNanos <= thresholdNanos)
+        {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), sql, bindCount, elapsedNanos);
+        synchronized(this)
+        {
+            if(entries.size() == CAPACITY)
+            {
+                entries.pollFirst();
+            }
+            entries.addLast(entry);
+            count++;
+        }
+        LOGGER.warning("Slow statement: " + entry);
+    }
+
+    /**
+     * Returns the number of slow statements since the start of application.
+     *
+     * @return The number of slow statements.
+     */
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the last slow statements, starting with the newest one.
+     *
+     * @return The list of slow statements.
+     */
+    public synchronized List<Entry> getEntries()
+    {
+        List<Entry> list = new ArrayList<Entry>(entries);
+        Collections.reverse(list);
+        return list;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder("Slow statements: ").append(count);
+        for(Entry entry : getEntries())
+        {
+            sb.append("\n  ").append(entry);
+        }
+        return sb.toString();
+    }
+}
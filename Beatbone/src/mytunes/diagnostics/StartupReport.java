@@ -0,0 +1,89 @@
+package mytunes.diagnostics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * The {@code StartupReport} class is collecting information about
+ * how long it took to initialise each component of our application.
+ * It is using singleton design pattern, so all layers write to
+ * the same report. Components are listed in the order in which
+ * they were initialised.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class StartupReport {
+
+    private static final Logger LOGGER = Logger.getLogger(StartupReport.class.getName());
+    private static StartupReport instance;
+    private final Map<String, Long> timings;
+
+    /**
+     * Creates an empty report.
+     */
+    private StartupReport()
+    {
+        timings = new LinkedHashMap<String, Long>();
+    }
+
+    /**
+     * Returns single instance of StartupReport class.
+     *
+     * @return The instance of StartupReport class.
+     */
+    public static synchronized StartupReport createInstance()
+    {
+        if(instance == null)
+        {
+            instance = new StartupReport();
+        }
+        return instance;
+    }
+
+    /**
+     * Records the time of initialising given component. If component
+     * was already recorded the times are added.
+     *
+     * @param component The name of component.
+     * @param nanos The time of initialisation in nanoseconds.
+     */
+    public synchronized void record(String component, long nanos)
+    {
+        Long previous = timings.get(component);
+        timings.put(component, previous == null ? nanos : previous + nanos);
+    }
+
+    /**
+     * Returns copy of all recorded timings in nanoseconds.
+     *
+     * @return The map with names of components and their times.
+     */
+    public synchronized Map<String, Long> getTimings()
+    {
+        return new LinkedHashMap<String, Long>(timings);
+    }
+
+    /**
+     * Writes the report to the application log.
+     */
+    public void log()
+    {
+        LOGGER.info(toString());
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder("Startup report (")
+                .append(ManagementFactory.getRuntimeMXBean().getUptime())
+                .append(" ms since launch):");
+        for(Map.Entry<String, Long> entry : timings.entrySet())
+        {
+            sb.append(String.format("%n  %-40s %10.2f ms", entry.getKey(), entry.getValue() / 1e6));
+        }
+        return sb.toString();
+    }
+}
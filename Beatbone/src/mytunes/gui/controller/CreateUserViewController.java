@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.EventObject;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -58,7 +59,8 @@ public class CreateUserViewController implements Initializable {
      * Method which is invoked after clicking Create button on 
      * {@code CreateUserView}. Its responsibility is creating a new user - it is
      * displaying warnings if user data are incorrect and sending request 
-     * to model to create a new user.
+     * to model to create a new user. The user is created outside of JavaFX
+     * Application Thread and the button is disabled until it is done.
      */
     @FXML
     private void clickCreate(ActionEvent event) {
@@ -85,16 +87,26 @@ public class CreateUserViewController implements Initializable {
             }
             else
             {
-                User user = model.createUser(txtEmail.getText(), txtPassword.getText());
-                if(user == null)
-                {
-                    warningDisplayer.displayError(currentStage, "Cannot create user", "This e-mail address is already in use");
-                }
-                else
-                {
-                    Stage stage = (Stage)((Node)((EventObject) event).getSource()).getScene().getWindow();
-                    stage.close();
-                }
+                final Stage stage = currentStage;
+                final Node source = (Node) event.getSource();
+                source.setDisable(true);
+                model.createUser(txtEmail.getText(), txtPassword.getText()).thenAccept(new Consumer<User>()
+                    {
+                        @Override
+                        public void accept(User user)
+                        {
+                            source.setDisable(false);
+                            if(user == null)
+                            {
+                                warningDisplayer.displayError(stage, "Cannot create user", "This e-mail address is already in use");
+                            }
+                            else
+                            {
+                                stage.close();
+                            }
+                        }
+                    }
+                );
             }
         }
     }
@@ -0,0 +1,148 @@
+package mytunes.gui.controller;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.util.Callback;
+import javafx.util.Duration;
+import mytunes.diagnostics.MetricsRegistry;
+
+/**
+ * The {@code DiagnosticsViewController} class is a controller for
+ * {@code DiagnosticsView}. It shows all metrics of {@code MetricsRegistry}
+ * and refreshes them every second while the view is shown. Metrics
+ * can be limited to those which names contain the typed filter.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class DiagnosticsViewController implements Initializable {
+
+    private static final Duration REFRESH_INTERVAL = Duration.seconds(1);
+    private MetricsRegistry registry;
+    private Timeline refresh;
+
+    @FXML
+    private TextField txtFilter;
+    @FXML
+    private TableView<Map.Entry<String, Number>> tblMetrics;
+    @FXML
+    private TableColumn<Map.Entry<String, Number>, String> colMetricName;
+    @FXML
+    private TableColumn<Map.Entry<String, Number>, String> colMetricValue;
+
+    /**
+     * Creates connection with {@code MetricsRegistry} instance.
+     */
+    public DiagnosticsViewController()
+    {
+        registry = MetricsRegistry.createInstance();
+    }
+
+    /**
+     * Initializes the controller class. Sets columns of the table with metrics,
+     * creates the timeline which refreshes them and refreshes them every time
+     * the filter is changed.
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle rb) {
+        colMetricName.setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Map.Entry<String, Number>, String>, ObservableValue<String>>()
+            {
+                @Override
+                public ObservableValue<String> call(TableColumn.CellDataFeatures<Map.Entry<String, Number>, String> cell)
+                {
+                    return new ReadOnlyStringWrapper(cell.getValue().getKey());
+                }
+            }
+        );
+        colMetricValue.setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Map.Entry<String, Number>, String>, ObservableValue<String>>()
+            {
+                @Override
+                public ObservableValue<String> call(TableColumn.CellDataFeatures<Map.Entry<String, Number>, String> cell)
+                {
+                    return new ReadOnlyStringWrapper(format(cell.getValue().getValue()));
+                }
+            }
+        );
+        refresh = new Timeline(new KeyFrame(REFRESH_INTERVAL, new EventHandler<ActionEvent>()
+            {
+                @Override
+                public void handle(ActionEvent event)
+                {
+                    refreshMetrics();
+                }
+            }
+        ));
+        refresh.setCycleCount(Animation.INDEFINITE);
+        txtFilter.textProperty().addListener(new ChangeListener<String>()
+            {
+                @Override
+                public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue)
+                {
+                    refreshMetrics();
+                }
+            }
+        );
+    }
+
+    /**
+     * Shows current metrics and starts refreshing them.
+     */
+    public void start()
+    {
+        refreshMetrics();
+        refresh.play();
+    }
+
+    /**
+     * Stops refreshing metrics, so hidden view costs nothing.
+     */
+    public void stop()
+    {
+        refresh.stop();
+    }
+
+    /**
+     * Reads metrics from the registry and shows those matching the filter.
+     */
+    private void refreshMetrics()
+    {
+        String filter = txtFilter.getText() == null ? "" : txtFilter.getText().trim().toLowerCase();
+        List<Map.Entry<String, Number>> rows = new ArrayList<Map.Entry<String, Number>>();
+        for(Map.Entry<String, Number> entry : registry.getMetrics().entrySet())
+        {
+            if(filter.isEmpty() || entry.getKey().toLowerCase().contains(filter))
+            {
+                rows.add(entry);
+            }
+        }
+        tblMetrics.getItems().setAll(rows);
+    }
+
+    /**
+     * Returns the value of metric as text, with two decimal places for fractions.
+     */
+    private static String format(Number value)
+    {
+        if(value instanceof Double || value instanceof Float)
+        {
+            return String.format("%.2f", value.doubleValue());
+        }
+        return String.valueOf(value);
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.EventObject;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
@@ -23,6 +24,8 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import mytunes.be.User;
+import mytunes.diagnostics.LoginEvent;
+import mytunes.diagnostics.StartupReport;
 import mytunes.gui.model.MainModel;
 import mytunes.gui.model.UserModel;
 import mytunes.gui.util.WarningDisplayer;
@@ -111,27 +114,72 @@ public class LoginViewController implements Initializable {
     /**
      * Method which is invoked after clicking Log In button on {@code loginView}.
      * It gets a information about user with data typed on the text field from database
-     * through the {@code UserModel} instance. If data are correct it openes the {@code MainView},
-     * otherwise it displays an error.
+     * through the {@code UserModel} instance. If data are correct it creates {@code MainModel}
+     * and openes the {@code MainView}, otherwise it displays an error. Database is read
+     * outside of JavaFX Application Thread and the button is disabled until it is done.
      */
     @FXML
-    private void clickLogin(ActionEvent event) throws IOException {
-        User user = model.getUser(txtEmail.getText(), txtPassword.getText());
-        if(user != null)
+    private void clickLogin(ActionEvent event) {
+        final StartupReport startupReport = StartupReport.createInstance();
+        final long start = System.nanoTime();
+        final LoginEvent loginEvent = new LoginEvent();
+        loginEvent.begin();
+        final Stage stage = (Stage)((Node)((EventObject) event).getSource()).getScene().getWindow();
+        btnLogin.setDisable(true);
+        model.getUser(txtEmail.getText(), txtPassword.getText()).thenAccept(new Consumer<User>()
+            {
+                @Override
+                public void accept(User user)
+                {
+                    startupReport.record("Login", System.nanoTime() - start);
+                    loginEvent.commit(user != null);
+                    if(user == null)
+                    {
+                        btnLogin.setDisable(false);
+                        warningDisplayer.displayError(stage, "Cannot log in", "Invalid email or password");
+                        return;
+                    }
+                    MainModel.setUser(user);
+                    final long modelStart = System.nanoTime();
+                    MainModel.createInstanceAsync().thenAccept(new Consumer<MainModel>()
+                        {
+                            @Override
+                            public void accept(MainModel mainModel)
+                            {
+                                startupReport.record("MainModel", System.nanoTime() - modelStart);
+                                showMainView(stage, startupReport);
+                            }
+                        }
+                    );
+                }
+            }
+        );
+    }
+    
+    /**
+     * Replaces the scene of given stage with {@code MainView}.
+     * 
+     * @param stage The stage of {@code LoginView}.
+     * @param startupReport The report of loading times.
+     */
+    private void showMainView(Stage stage, StartupReport startupReport)
+    {
+        long start = System.nanoTime();
+        try
         {
-            Stage stage = (Stage)((Node)((EventObject) event).getSource()).getScene().getWindow();
-            stage.hide();
-            MainModel.setUser(user);
             FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/mytunes/gui/view/MainView.fxml"));
             Parent root = (Parent) fxmlLoader.load();
+            startupReport.record("MainView", System.nanoTime() - start);
+            stage.hide();
             stage.setScene(new Scene(root));  
             stage.centerOnScreen();
             WindowDecorator.showStage(stage);
+            startupReport.log();
         }
-        else
+        catch(IOException e)
         {
-            Stage currentStage = (Stage)((Node)((EventObject) event).getSource()).getScene().getWindow();
-            warningDisplayer.displayError(currentStage, "Cannot log in", "Invalid email or password");
+            btnLogin.setDisable(false);
+            warningDisplayer.displayError(stage, "Cannot log in", "Main view cannot be opened");
         }
     }
     
@@ -3,18 +3,27 @@ package mytunes.gui.controller;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EventObject;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.ResourceBundle;
+import java.util.WeakHashMap;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
 import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
 import javafx.event.EventHandler;
+import javafx.geometry.Orientation;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -23,8 +32,13 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.Skin;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
@@ -32,9 +46,16 @@ import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleButton;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.DragEvent;
+import javafx.scene.input.Dragboard;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.TransferMode;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaException;
 import javafx.scene.media.MediaPlayer;
@@ -42,12 +63,19 @@ import javafx.scene.media.MediaPlayer.Status;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import javafx.stage.WindowEvent;
+import javafx.util.Callback;
 import javafx.util.Duration;
 import mytunes.be.Playlist;
 import mytunes.be.Song;
+import mytunes.bll.util.DurationRange;
+import mytunes.bll.util.FacetOption;
 import mytunes.bll.util.TimeConverter;
+import mytunes.diagnostics.MetricsRegistry;
+import mytunes.diagnostics.PlaybackStartEvent;
 import mytunes.gui.PlayingMode;
 import mytunes.gui.model.MainModel;
+import mytunes.gui.util.SearchService;
 import mytunes.gui.util.WarningDisplayer;
 import mytunes.gui.util.WindowDecorator;
 
@@ -61,16 +89,30 @@ import mytunes.gui.util.WindowDecorator;
  */
 public class MainViewController implements Initializable {
     
+    private static final int LIBRARY_REFRESH_SECONDS = 30;
+    private static final KeyCombination DIAGNOSTICS_SHORTCUT =
+            new KeyCodeCombination(KeyCode.D, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
     private MainModel model;
     private MediaPlayer mediaPlayer;
+    private Set<MediaPlayer> mediaPlayers;
+    private PlaybackStartEvent playbackEvent;
+    private long playbackRequestedAt;
+    private MetricsRegistry.Timer trackSwitchTimer;
+    private Stage diagnosticsStage;
     private boolean songTimeChanged = false;
     private double previousVolume;
     private Timeline stopPlayer;
+    private Timeline libraryRefresh;
     private long timeOfPlayingLastSong = System.currentTimeMillis();
     private WarningDisplayer warningDisplayer;
     private double xOffset;
     private double yOffset;
     private boolean buttonPlaySelected;
+    private List<Song> draggedSongs;
+    private ObservableList<Song> filteredSongs;
+    private ObservableList<Playlist> filteredPlaylists;
+    private boolean updatingFacets;
+    private ScrollBar songsScrollBar;
 
     @FXML
     private ToggleButton btnPlaySong;
@@ -123,6 +165,10 @@ public class MainViewController implements Initializable {
     @FXML
     private TextField txtSearchPlaylists;
     @FXML
+    private ComboBox<FacetOption<String>> cmbGenreFacet;
+    @FXML
+    private ComboBox<FacetOption<DurationRange>> cmbDurationFacet;
+    @FXML
     private Slider sldTime;
     @FXML
     private Label lblSongEndTime;
@@ -144,6 +190,10 @@ public class MainViewController implements Initializable {
     {
         model = MainModel.createInstance();
         warningDisplayer = new WarningDisplayer();
+        filteredSongs = FXCollections.observableArrayList();
+        filteredPlaylists = FXCollections.observableArrayList();
+        mediaPlayers = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<MediaPlayer, Boolean>()));
+        trackSwitchTimer = MetricsRegistry.createInstance().timer("playback.trackSwitch");
     }
     
     /**
@@ -155,7 +205,11 @@ public class MainViewController implements Initializable {
         setPlayButton();
         disableElements();
         createSliderListeners();
+        setPlaylistSongsDragAndDrop();
+        setSongsPaging();
         loadData();
+        setLibraryRefresh();
+        setDiagnosticsShortcut();
     }
     
     /**
@@ -233,6 +287,130 @@ public class MainViewController implements Initializable {
         );
     }
     
+    /**
+     * Allows selecting multiple songs on the List View with songs on playlist
+     * and moving them by dragging and dropping them on another song. Dropped songs
+     * are placed before the song they were dropped on, or at the end of playlist
+     * if they were dropped below the last song.
+     */
+    private void setPlaylistSongsDragAndDrop()
+    {
+        lstPlaylistSongs.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        lstPlaylistSongs.setCellFactory(new Callback<ListView<Song>, ListCell<Song>>()
+            {
+                @Override
+                public ListCell<Song> call(ListView<Song> list)
+                {
+                    return createDraggableSongCell();
+                }
+            }
+        );
+    }
+    
+    /**
+     * Creates a cell for the List View with songs on playlist which can be dragged
+     * and which accepts dropped songs.
+     * 
+     * @return The cell for the List View.
+     */
+    private ListCell<Song> createDraggableSongCell()
+    {
+        ListCell<Song> cell = new ListCell<Song>()
+            {
+                @Override
+                protected void updateItem(Song song, boolean empty)
+                {
+                    super.updateItem(song, empty);
+                    setText(empty || song == null ? null : song.toString());
+                }
+            };
+        cell.setOnDragDetected(new EventHandler<MouseEvent>()
+            {
+                @Override
+                public void handle(MouseEvent event)
+                {
+                    if(!cell.isEmpty())
+                    {
+                        draggedSongs = new ArrayList<Song>(lstPlaylistSongs.getSelectionModel().getSelectedItems());
+                        Dragboard dragboard = cell.startDragAndDrop(TransferMode.MOVE);
+                        ClipboardContent content = new ClipboardContent();
+                        content.putString(cell.getItem().getTitle());
+                        dragboard.setContent(content);
+                    }
+                    event.consume();
+                }
+            }
+        );
+        cell.setOnDragOver(new EventHandler<DragEvent>()
+            {
+                @Override
+                public void handle(DragEvent event)
+                {
+                    if(draggedSongs != null && event.getGestureSource() != cell)
+                    {
+                        event.acceptTransferModes(TransferMode.MOVE);
+                    }
+                    event.consume();
+                }
+            }
+        );
+        cell.setOnDragDropped(new EventHandler<DragEvent>()
+            {
+                @Override
+                public void handle(DragEvent event)
+                {
+                    int dropIndex = cell.isEmpty() ? lstPlaylistSongs.getItems().size() : cell.getIndex();
+                    dropSongsOnPlaylist(dropIndex);
+                    event.setDropCompleted(true);
+                    event.consume();
+                }
+            }
+        );
+        cell.setOnDragDone(new EventHandler<DragEvent>()
+            {
+                @Override
+                public void handle(DragEvent event)
+                {
+                    draggedSongs = null;
+                    event.consume();
+                }
+            }
+        );
+        return cell;
+    }
+    
+    /**
+     * Sends a request to the {@code MainModel} for moving the dragged songs
+     * on selected playlist before the song at given index, and selects them again.
+     * 
+     * @param dropIndex The index of song on which dragged songs were dropped.
+     */
+    private void dropSongsOnPlaylist(int dropIndex)
+    {
+        Playlist selectedPlaylist = tblPlaylists.getSelectionModel().getSelectedItem();
+        if(selectedPlaylist == null || draggedSongs == null || draggedSongs.isEmpty())
+        {
+            return;
+        }
+        Set<Song> moved = new HashSet<Song>(draggedSongs);
+        int targetIndex = 0;
+        for(int i = 0; i < dropIndex && i < lstPlaylistSongs.getItems().size(); i++)
+        {
+            if(!moved.contains(lstPlaylistSongs.getItems().get(i)))
+            {
+                targetIndex++;
+            }
+        }
+        model.moveSongsOnPlaylist(selectedPlaylist, draggedSongs, targetIndex);
+        lstPlaylistSongs.getSelectionModel().clearSelection();
+        for(Song song : draggedSongs)
+        {
+            lstPlaylistSongs.getSelectionModel().select(song);
+        }
+        disableButtonsForPlaylistSongs();
+        draggedSongs = null;
+    }
+    
     /**
      * Loads the data to the tables.
      */
@@ -249,42 +427,390 @@ public class MainViewController implements Initializable {
         colSongArtist.setCellValueFactory(new PropertyValueFactory("artist"));
         colSongGenre.setCellValueFactory(new PropertyValueFactory("genre"));
         colSongTime.setCellValueFactory(new PropertyValueFactory("timeInString"));
+        updateSongFacets();
         tblSongs.setItems(model.getSongs());
+        model.libraryLoadingProperty().addListener(new ChangeListener<Boolean>()
+            {
+                @Override
+                public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue)
+                {
+                    if(!newValue)
+                    {
+                        filterSongs();
+                    }
+                }
+            }
+        );
     }
     
     /**
      * Method which is invoked everytime some key is typed on a text field for filtering songs.
-     * It uses {@code MainModel} for getting filtered list of songs
-     * and sets the Table View with songs to results received from {@code MainModel}.
+     * It uses {@code MainModel} for searching songs in background
+     * and sets the Table View with songs to results of the latest filter.
      */
     @FXML
     private void inputSearchSongs(KeyEvent event) {
+        filterSongs();
+    }
+    
+    /**
+     * Method which is invoked after picking genre or range of time for filtering songs.
+     * It passes picked options to {@code MainModel} and filters songs again.
+     */
+    @FXML
+    private void clickSongFacetPicked(ActionEvent event) {
+        if(updatingFacets)
+        {
+            return;
+        }
+        FacetOption<String> genre = cmbGenreFacet.getValue();
+        FacetOption<DurationRange> duration = cmbDurationFacet.getValue();
+        model.setGenreFilter(genre == null ? null : genre.getValue());
+        model.setDurationFilter(duration == null ? null : duration.getValue());
+        filterSongs();
+    }
+    
+    /**
+     * Sets the Table View with songs to songs matching the text filter and
+     * picked genre and range of time. Only text filter needs searching in background,
+     * songs of picked genre and range of time are taken from {@code MainModel} directly.
+     */
+    private void filterSongs()
+    {
         String filter = txtSearchSongs.getText().trim();
         if(filter.isEmpty())
         {
-            tblSongs.setItems(model.getSongs());
+            model.cancelSongSearch();
+            if(model.isFacetSelected())
+            {
+                showFilteredSongs(model.getFacetedSongs());
+            }
+            else
+            {
+                tblSongs.setItems(model.getSongs());
+            }
+            updateSongFacets();
         }
         else
         {
-            tblSongs.setItems(model.getFilteredSongs(filter));
+            model.searchSongs(filter, new SearchService.ResultHandler<Song>()
+                {
+                    @Override
+                    public void handle(String filter, List<Song> results)
+                    {
+                        showFilteredSongs(results);
+                        updateSongFacets();
+                        if(model.isServerSearch())
+                        {
+                            fillSongsPage();
+                        }
+                    }
+                }
+            );
+        }
+    }
+    
+    /**
+     * Sets the Table View with songs to given filtered songs.
+     * 
+     * @param results The filtered songs.
+     */
+    private void showFilteredSongs(List<Song> results)
+    {
+        filteredSongs.setAll(results);
+        if(tblSongs.getItems() != filteredSongs)
+        {
+            tblSongs.setItems(filteredSongs);
+        }
+    }
+    
+    /**
+     * Opens {@code DiagnosticsView} when Ctrl+Shift+D (Cmd+Shift+D on macOS)
+     * is pressed on the {@code MainView} and publishes the number of media
+     * players which were not disposed nor collected in {@code MetricsRegistry}.
+     */
+    private void setDiagnosticsShortcut()
+    {
+        btnPlaySong.sceneProperty().addListener(new ChangeListener<Scene>()
+            {
+                @Override
+                public void changed(ObservableValue<? extends Scene> observable, Scene oldScene, Scene newScene)
+                {
+                    if(newScene != null)
+                    {
+                        newScene.getAccelerators().put(DIAGNOSTICS_SHORTCUT, new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    showDiagnostics();
+                                }
+                            }
+                        );
+                    }
+                }
+            }
+        );
+        MetricsRegistry.createInstance().gauge("media.players", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    int alive = 0;
+                    synchronized(mediaPlayers)
+                    {
+                        for(MediaPlayer player : mediaPlayers)
+                        {
+                            if(player.getStatus() != Status.DISPOSED)
+                            {
+                                alive++;
+                            }
+                        }
+                    }
+                    return alive;
+                }
+            }
+        );
+    }
+    
+    /**
+     * Shows the window with {@code DiagnosticsView}, creating it on first use.
+     * Metrics are refreshed only while the window is shown.
+     */
+    private void showDiagnostics()
+    {
+        if(diagnosticsStage == null)
+        {
+            try
+            {
+                FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/mytunes/gui/view/DiagnosticsView.fxml"));
+                Parent root = (Parent) fxmlLoader.load();
+                final DiagnosticsViewController controller = (DiagnosticsViewController) fxmlLoader.getController();
+                diagnosticsStage = new Stage();
+                diagnosticsStage.setTitle("Diagnostics");
+                diagnosticsStage.setScene(new Scene(root));
+                diagnosticsStage.setOnShown(new EventHandler<WindowEvent>()
+                    {
+                        @Override
+                        public void handle(WindowEvent event)
+                        {
+                            controller.start();
+                        }
+                    }
+                );
+                diagnosticsStage.setOnHidden(new EventHandler<WindowEvent>()
+                    {
+                        @Override
+                        public void handle(WindowEvent event)
+                        {
+                            controller.stop();
+                        }
+                    }
+                );
+            }
+            catch(IOException e)
+            {
+                Stage currentStage = (Stage) btnPlaySong.getScene().getWindow();
+                warningDisplayer.displayError(currentStage, "Cannot show diagnostics", "Diagnostics view cannot be opened");
+                return;
+            }
+        }
+        diagnosticsStage.show();
+        diagnosticsStage.toFront();
+    }
+    
+    /**
+     * Refreshes tables when songs or playlists are changed from database,
+     * informs the user when changes could not be saved and asks
+     * {@code MainModel} for changes made in database periodically.
+     */
+    private void setLibraryRefresh()
+    {
+        model.libraryRevisionProperty().addListener(new ChangeListener<Number>()
+            {
+                @Override
+                public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue)
+                {
+                    tblSongs.refresh();
+                    tblPlaylists.refresh();
+                    updateSongFacets();
+                }
+            }
+        );
+        model.writeFailuresProperty().addListener(new ChangeListener<Number>()
+            {
+                @Override
+                public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue)
+                {
+                    Playlist selectedPlaylist = tblPlaylists.getSelectionModel().getSelectedItem();
+                    if(selectedPlaylist != null)
+                    {
+                        model.setPlaylistSongs(selectedPlaylist);
+                    }
+                    warningDisplayer.displayError((Stage) tblSongs.getScene().getWindow(), "Cannot save changes",
+                            "Your last changes could not be saved in database");
+                }
+            }
+        );
+        libraryRefresh = new Timeline(new KeyFrame(Duration.seconds(LIBRARY_REFRESH_SECONDS), new EventHandler<ActionEvent>()
+            {
+                @Override
+                public void handle(ActionEvent event)
+                {
+                    model.refreshLibrary();
+                }
+            }
+        ));
+        libraryRefresh.setCycleCount(Timeline.INDEFINITE);
+        libraryRefresh.play();
+    }
+    
+    /**
+     * Finds the vertical scroll bar of Table View with songs once its skin is created
+     * and reads the next page of songs when it is scrolled to the end.
+     */
+    private void setSongsPaging()
+    {
+        tblSongs.skinProperty().addListener(new ChangeListener<Skin<?>>()
+            {
+                @Override
+                public void changed(ObservableValue<? extends Skin<?>> observable, Skin<?> oldValue, Skin<?> newValue)
+                {
+                    for(Node node : tblSongs.lookupAll(".scroll-bar"))
+                    {
+                        if(node instanceof ScrollBar && ((ScrollBar) node).getOrientation() == Orientation.VERTICAL)
+                        {
+                            songsScrollBar = (ScrollBar) node;
+                        }
+                    }
+                    if(songsScrollBar != null)
+                    {
+                        songsScrollBar.valueProperty().addListener(new ChangeListener<Number>()
+                            {
+                                @Override
+                                public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue)
+                                {
+                                    if(newValue.doubleValue() >= songsScrollBar.getMax())
+                                    {
+                                        loadMoreSongs();
+                                    }
+                                }
+                            }
+                        );
+                    }
+                }
+            }
+        );
+    }
+    
+    /**
+     * Reads the next page of songs found in database and adds it
+     * to the Table View with songs. When all songs are shown, the next page
+     * of library too big to be loaded whole is added to them instead.
+     * Nothing is read if songs are searched in memory.
+     */
+    private void loadMoreSongs()
+    {
+        if(tblSongs.getItems() == model.getSongs())
+        {
+            model.loadMoreLibrarySongs();
+            return;
         }
+        if(!model.isServerSearch() || tblSongs.getItems() != filteredSongs || txtSearchSongs.getText().trim().isEmpty())
+        {
+            return;
+        }
+        model.loadMoreSongs(new SearchService.ResultHandler<Song>()
+            {
+                @Override
+                public void handle(String filter, List<Song> results)
+                {
+                    filteredSongs.addAll(results);
+                    updateSongFacets();
+                    fillSongsPage();
+                }
+            }
+        );
+    }
+    
+    /**
+     * Reads next pages of found songs while they do not fill
+     * the Table View with songs, so it can be scrolled.
+     */
+    private void fillSongsPage()
+    {
+        if(songsScrollBar == null || !songsScrollBar.isVisible())
+        {
+            Platform.runLater(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if(songsScrollBar == null || !songsScrollBar.isVisible())
+                        {
+                            loadMoreSongs();
+                        }
+                    }
+                }
+            );
+        }
+    }
+    
+    /**
+     * Refreshes options for picking genre and range of time
+     * with current numbers of songs and keeps picked options selected.
+     */
+    private void updateSongFacets()
+    {
+        updatingFacets = true;
+        cmbGenreFacet.getItems().setAll(model.getGenreFacets());
+        for(FacetOption<String> option : cmbGenreFacet.getItems())
+        {
+            String genre = model.getGenreFilter();
+            if(genre == null ? option.getValue() == null : genre.equals(option.getValue()))
+            {
+                cmbGenreFacet.setValue(option);
+            }
+        }
+        cmbDurationFacet.getItems().setAll(model.getDurationFacets());
+        for(FacetOption<DurationRange> option : cmbDurationFacet.getItems())
+        {
+            if(option.getValue() == model.getDurationFilter())
+            {
+                cmbDurationFacet.setValue(option);
+            }
+        }
+        updatingFacets = false;
     }
     
     /**
      * Method which is invoked everytime some key is typed on a text field for filtering playlists.
-     * It uses {@code MainModel} for getting filtered list of playlists
-     * and sets the Table View with playlists to results received from {@code MainModel}.
+     * It uses {@code MainModel} for searching playlists in background
+     * and sets the Table View with playlists to results of the latest filter.
      */
     @FXML
     private void inputSearchPlaylists(KeyEvent event) {
         String filter = txtSearchPlaylists.getText().trim();
         if(filter.isEmpty())
         {
+            model.cancelPlaylistSearch();
             tblPlaylists.setItems(model.getPlaylists());
         }
         else
         {
-            tblPlaylists.setItems(model.getFilteredPlaylists(filter));
+            model.searchPlaylists(filter, new SearchService.ResultHandler<Playlist>()
+                {
+                    @Override
+                    public void handle(String filter, List<Playlist> results)
+                    {
+                        filteredPlaylists.setAll(results);
+                        if(tblPlaylists.getItems() != filteredPlaylists)
+                        {
+                            tblPlaylists.setItems(filteredPlaylists);
+                        }
+                    }
+                }
+            );
         }
     }
     
@@ -686,8 +1212,13 @@ public class MainViewController implements Initializable {
     private void clickDeleteSong(ActionEvent event) {
         Song selectedSong = tblSongs.getSelectionModel().getSelectedItem();
         Stage currentStage = (Stage)((Node)((EventObject) event).getSource()).getScene().getWindow();
-        Optional<ButtonType> action = warningDisplayer.displayConfirmation(currentStage, "Confirmation", 
-                "Are you sure you want to delete \"" + selectedSong.getTitle() + "\" from your songs?");;
+        String message = "Are you sure you want to delete \"" + selectedSong.getTitle() + "\" from your songs?";
+        int numberOfPlaylists = model.getPlaylistsContainingSong(selectedSong).size();
+        if(numberOfPlaylists > 0)
+        {
+            message += " It will be also deleted from " + numberOfPlaylists + (numberOfPlaylists == 1 ? " playlist." : " playlists.");
+        }
+        Optional<ButtonType> action = warningDisplayer.displayConfirmation(currentStage, "Confirmation", message);
         if(action.get() == ButtonType.OK)
         {
             model.deleteSong(selectedSong);
@@ -732,6 +1263,9 @@ public class MainViewController implements Initializable {
         {
             mediaPlayer.stop();
         }
+        playbackRequestedAt = System.nanoTime();
+        playbackEvent = new PlaybackStartEvent();
+        playbackEvent.begin(songToPlay.getId());
         try
         {
             File fileSong = new File(songToPlay.getPath());
@@ -741,6 +1275,7 @@ public class MainViewController implements Initializable {
                 enablePlayingButtons();
             }
             mediaPlayer = new MediaPlayer(song);
+            mediaPlayers.add(mediaPlayer);
             setMediaPlayer(songToPlay, mode);
             mediaPlayer.play();
         }
@@ -783,6 +1318,7 @@ public class MainViewController implements Initializable {
         setAutoplay();
         setTimeListener();
         setFadingForStopping();
+        setPlaybackEvent();
     }
     
     /**
@@ -833,6 +1369,45 @@ public class MainViewController implements Initializable {
         );
     }
     
+    /**
+     * Records in {@code playbackEvent} when the media is ready and commits it
+     * on the first tick of current time, together with the time of switching
+     * tracks. The event is dropped if another song is requested before that.
+     */
+    private void setPlaybackEvent()
+    {
+        final PlaybackStartEvent event = playbackEvent;
+        final long requestedAt = playbackRequestedAt;
+        if(event == null)
+        {
+            return;
+        }
+        mediaPlayer.setOnReady(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    event.mediaReady();
+                }
+            }
+        );
+        mediaPlayer.currentTimeProperty().addListener(new ChangeListener<Duration>()
+            {
+                @Override
+                public void changed(ObservableValue<? extends Duration> observable, Duration oldTime, Duration newTime)
+                {
+                    if(playbackEvent == event && newTime.greaterThan(Duration.ZERO))
+                    {
+                        playbackEvent = null;
+                        event.firstTick();
+                        trackSwitchTimer.record(System.nanoTime() - requestedAt);
+                        observable.removeListener(this);
+                    }
+                }
+            }
+        );
+    }
+    
     /**
      * Sets the Timeline object for fading the volume while stopping the song.
      * After fading out the volume, {@code mediaPlayer} would be paused.
@@ -1040,6 +1615,7 @@ public class MainViewController implements Initializable {
      */
     @FXML
     private void clickClose(ActionEvent event) {
+        model.flushChanges();
         Platform.exit();
     }
     
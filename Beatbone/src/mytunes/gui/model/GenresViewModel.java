@@ -1,9 +1,13 @@
 package mytunes.gui.model;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import mytunes.bll.BllManager;
+import mytunes.bll.ApplicationContext;
+import mytunes.bll.IAsyncBllFacade;
+import mytunes.gui.util.FxExecutor;
 
 /**
  * The {@code GenresViewModel} class is responsible for 
@@ -19,21 +23,34 @@ import mytunes.bll.BllManager;
 public class GenresViewModel {
     
     private static GenresViewModel instance;
-    private BllManager bllManager;
+    private IAsyncBllFacade bllManager;
     private ObservableList<String> mainGenres;
     private ObservableList<String> allGenres;
     private String selectedGenre;
     
     /**
-     * Creates connection with BLL, fetches all genres from it and fills
-     * list with main genres.
+     * Creates connection with BLL shared by all models, fills list with
+     * main genres and fetches all genres outside of JavaFX Application Thread.
+     * The list with all genres is filled when they are read.
      */
     private GenresViewModel()
     {
-        bllManager = new BllManager();
+        bllManager = ApplicationContext.createInstance().getAsyncBllFacade();
         mainGenres = FXCollections.observableArrayList(new ArrayList());
         addMainGenres();
-        allGenres = FXCollections.observableArrayList(bllManager.getAllGenres());
+        allGenres = FXCollections.observableArrayList();
+        bllManager.getAllGenres().thenAcceptAsync(new Consumer<List<String>>()
+            {
+                @Override
+                public void accept(List<String> genres)
+                {
+                    if(genres != null)
+                    {
+                        allGenres.setAll(genres);
+                    }
+                }
+            }, FxExecutor.createInstance()
+        );
     }
     
     /**
@@ -6,19 +6,57 @@
 
 package mytunes.gui.model;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleLongProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import mytunes.be.LibraryChanges;
+import mytunes.be.LibraryMutation;
+import mytunes.be.LibrarySnapshot;
 import mytunes.be.Playlist;
 import mytunes.be.Song;
+import mytunes.be.SongPage;
+import mytunes.be.SongSearchPage;
 import mytunes.be.User;
-import mytunes.bll.BllManager;
+import mytunes.bll.ApplicationContext;
+import mytunes.bll.util.DurationRange;
+import mytunes.bll.util.FacetEngine;
+import mytunes.bll.util.FacetOption;
 import mytunes.bll.util.MusicSearcher;
 import mytunes.bll.util.TimeConverter;
 import mytunes.gui.PlayingMode;
+import mytunes.bll.IAsyncBllFacade;
 import mytunes.bll.IBllFacade;
+import mytunes.bll.util.PlaylistMembershipIndex;
+import mytunes.bll.util.SearchSession;
 import mytunes.bll.util.SongChooser;
+import mytunes.diagnostics.LibraryLoadEvent;
+import mytunes.diagnostics.MetricsRegistry;
+import mytunes.diagnostics.SearchEvent;
+import mytunes.diagnostics.StartupReport;
+import mytunes.gui.util.FxExecutor;
+import mytunes.gui.util.MutationQueue;
+import mytunes.gui.util.SearchService;
 
 /**
  * The {@code MainModel} class is responsible for 
@@ -35,10 +73,21 @@ import mytunes.bll.util.SongChooser;
 
 public class MainModel {
     
+    private static final long SEARCH_DEBOUNCE_MILLIS = 150;
+    private static final int LARGE_LIBRARY_SIZE = 100000;
+    private static final int FIRST_PAGE_SIZE = 500;
+    private static final int LOAD_PAGE_SIZE = 5000;
+    private static final long WRITE_DELAY_MILLIS = 250;
+    private static final long HEAP_ESTIMATE_MILLIS = 5000;
+    private static final int SONG_BYTES = 112;
+    private static final int PLAYLIST_BYTES = 160;
+    private static final int TRACK_BYTES = 88;
+    private static final int STRING_BYTES = 40;
     private static MainModel instance;
     private ObservableList<Song> songList;
     private ObservableList<Playlist> playlists;
     private ObservableList<Song> playlistSongs;
+    private Playlist shownPlaylist;
     private static User loggedUser;
     private PlayingMode mode;
     private Song currentlyPlayingSong;
@@ -46,7 +95,41 @@ public class MainModel {
     private boolean shuffle;
     private Stack<Song> previouslyPlayedRandomSongs;
     private IBllFacade bllManager;
+    private IAsyncBllFacade asyncBllManager;
     private SongChooser songChooser;
+    private PlaylistMembershipIndex membershipIndex;
+    private MusicSearcher musicSearcher;
+    private SearchSession<Song> songSearchSession;
+    private SearchSession<Playlist> playlistSearchSession;
+    private SearchService<Song> songSearchService;
+    private SearchService<Playlist> playlistSearchService;
+    private FacetEngine facetEngine;
+    private volatile String genreFilter;
+    private volatile DurationRange durationFilter;
+    private volatile List<Song> lastSongMatches;
+    private volatile boolean serverSearch;
+    private SimpleBooleanProperty libraryLoading;
+    private Map<Integer, Song> songsById;
+    private SimpleLongProperty libraryRevision;
+    private volatile long libraryVersion;
+    private boolean refreshingLibrary;
+    private Set<Song> createdWhileLoading;
+    private Set<Song> deletedWhileLoading;
+    private Set<Playlist> createdPlaylistsWhileLoading;
+    private Set<Integer> deletedPlaylistsWhileLoading;
+    private volatile SongSearchPage serverPage;
+    private volatile boolean largeLibrary;
+    private int libraryCursor;
+    private boolean libraryHasMore;
+    private boolean loadingLibraryPage;
+    private volatile String serverFilter;
+    private MutationQueue mutationQueue;
+    private SimpleIntegerProperty writeFailures;
+    private MetricsRegistry.Timer songSearchTimer;
+    private MetricsRegistry.Timer playlistSearchTimer;
+    private volatile long heapBytes;
+    private volatile long heapBytesEstimatedAt;
+    private final AtomicBoolean heapEstimateScheduled = new AtomicBoolean();
        
     /**
      * Creates a connection with BLL, fetches data and sets initial values.
@@ -54,18 +137,910 @@ public class MainModel {
     private MainModel()
     {
         //instantiate BLL classes.
-        bllManager = new BllManager();
+        ApplicationContext context = ApplicationContext.createInstance();
+        StartupReport startupReport = context.getStartupReport();
+        bllManager = context.getBllFacade();
+        asyncBllManager = context.getAsyncBllFacade();
         songChooser = new SongChooser();
+        songSearchTimer = MetricsRegistry.createInstance().timer("search.songs");
+        playlistSearchTimer = MetricsRegistry.createInstance().timer("search.playlists");
         
-        //load data
-        songList = FXCollections.observableArrayList(bllManager.getAllSongs(loggedUser));
-        playlists = FXCollections.observableArrayList(bllManager.getAllPlaylists(loggedUser));
+        //load data from local snapshot or the first songs from database,
+        //the model is created on the executor of database operations by createInstanceAsync
+        long startupStart = System.nanoTime();
+        long start = startupStart;
+        LibraryLoadEvent loadEvent = new LibraryLoadEvent();
+        loadEvent.begin();
+        LibrarySnapshot snapshot = bllManager.getLibrarySnapshot(loggedUser);
+        boolean hasMoreSongs = false;
+        SongPage firstPage = null;
+        if(snapshot != null)
+        {
+            songList = FXCollections.observableArrayList(snapshot.getSongs());
+            playlists = FXCollections.observableArrayList(snapshot.getPlaylists());
+            startupReport.record("MainModel: load snapshot", System.nanoTime() - start);
+            loadEvent.commit("load snapshot", songList.size(), playlists.size());
+        }
+        else
+        {
+            firstPage = bllManager.getSongsPage(loggedUser, FIRST_PAGE_SIZE, 0);
+            if(firstPage != null)
+            {
+                hasMoreSongs = firstPage.hasMore();
+                songList = FXCollections.observableArrayList(firstPage.getSongs());
+            }
+            else
+            {
+                songList = FXCollections.observableArrayList();
+            }
+            startupReport.record("MainModel: load first songs", System.nanoTime() - start);
+            loadEvent.commit("load first songs", songList.size(), 0);
+            start = System.nanoTime();
+            loadEvent = new LibraryLoadEvent();
+            loadEvent.begin();
+            playlists = FXCollections.observableArrayList(bllManager.getAllPlaylists(loggedUser));
+            startupReport.record("MainModel: load playlists", System.nanoTime() - start);
+            loadEvent.commit("load playlists", 0, playlists.size());
+        }
         playlistSongs = FXCollections.observableArrayList();
+        membershipIndex = new PlaylistMembershipIndex();
+        membershipIndex.build(playlists);
+        start = System.nanoTime();
+        loadEvent = new LibraryLoadEvent();
+        loadEvent.begin();
+        musicSearcher = new MusicSearcher();
+        musicSearcher.setSongIndexEnabled(songList.size() < LARGE_LIBRARY_SIZE);
+        musicSearcher.indexSongs(songList);
+        musicSearcher.indexPlaylists(playlists);
+        songSearchSession = musicSearcher.createSongSession();
+        playlistSearchSession = musicSearcher.createPlaylistSession();
+        facetEngine = new FacetEngine();
+        facetEngine.build(songList);
+        durationFilter = DurationRange.ANY;
+        songSearchService = new SearchService<Song>(new SearchService.Query<Song>()
+            {
+                @Override
+                public List<Song> search(String filter)
+                {
+                    if(serverSearch)
+                    {
+                        lastSongMatches = new ArrayList<Song>();
+                        return searchServerPage(filter, SongSearchPage.Cursor.FIRST);
+                    }
+                    long start = System.nanoTime();
+                    SearchEvent event = new SearchEvent();
+                    event.begin();
+                    List<Song> result = songSearchSession.search(filter);
+                    if(result.isEmpty())
+                    {
+                        result = musicSearcher.searchSongsFuzzy(filter);
+                        lastSongMatches = result;
+                        List<Song> filtered = facetEngine.filter(genreFilter, durationFilter, result);
+                        event.commit("fuzzy index", filter, filtered.size());
+                        songSearchTimer.record(System.nanoTime() - start);
+                        return filtered;
+                    }
+                    lastSongMatches = result;
+                    List<Song> ranked = musicSearcher.rankSongs(facetEngine.filter(genreFilter, durationFilter, result), filter);
+                    event.commit("index", filter, ranked.size());
+                    songSearchTimer.record(System.nanoTime() - start);
+                    return ranked;
+                }
+            }, SEARCH_DEBOUNCE_MILLIS
+        );
+        playlistSearchService = new SearchService<Playlist>(new SearchService.Query<Playlist>()
+            {
+                @Override
+                public List<Playlist> search(String filter)
+                {
+                    long start = System.nanoTime();
+                    SearchEvent event = new SearchEvent();
+                    event.begin();
+                    List<Playlist> result = musicSearcher.rankPlaylists(playlistSearchSession.search(filter), filter);
+                    event.commit("playlist index", filter, result.size());
+                    playlistSearchTimer.record(System.nanoTime() - start);
+                    return result;
+                }
+            }, SEARCH_DEBOUNCE_MILLIS
+        );
+        startupReport.record("MainModel: build search index", System.nanoTime() - start);
+        loadEvent.commit("build search index", songList.size(), playlists.size());
         
         //set initial values
         shuffle = false;  
         previouslyPlayedRandomSongs = new Stack();
         
+        //write changes to database in background
+        writeFailures = new SimpleIntegerProperty();
+        mutationQueue = new MutationQueue(new MutationQueue.Store()
+            {
+                @Override
+                public boolean save(List<LibraryMutation> mutations)
+                {
+                    return asyncBllManager.saveLibraryMutations(mutations).join();
+                }
+            }, WRITE_DELAY_MILLIS
+        );
+        mutationQueue.setFailureHandler(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    libraryChanged();
+                    writeFailures.set(writeFailures.get() + 1);
+                }
+            }
+        );
+        
+        //synchronize with database in background
+        libraryLoading = new SimpleBooleanProperty(true);
+        libraryRevision = new SimpleLongProperty();
+        songsById = new ConcurrentHashMap<Integer, Song>();
+        for(Song song : songList)
+        {
+            songsById.put(song.getId(), song);
+        }
+        createdWhileLoading = Collections.newSetFromMap(new ConcurrentHashMap<Song, Boolean>());
+        deletedWhileLoading = Collections.newSetFromMap(new ConcurrentHashMap<Song, Boolean>());
+        createdPlaylistsWhileLoading = new HashSet<Playlist>();
+        deletedPlaylistsWhileLoading = new HashSet<Integer>();
+        serverSearch = hasMoreSongs || !musicSearcher.isSongIndexEnabled();
+        startupReport.record(snapshot != null ? "MainModel: startup from snapshot" : "MainModel: startup from database",
+                System.nanoTime() - startupStart);
+        registerMetrics();
+        synchronizeLibrary(snapshot, firstPage, startupReport);
+    }
+    
+    /**
+     * Publishes the size of library, the state of {@code mutationQueue} and hit
+     * ratios of search sessions and {@code facetEngine} in {@code MetricsRegistry}.
+     */
+    private void registerMetrics()
+    {
+        MetricsRegistry registry = MetricsRegistry.createInstance();
+        registry.gauge("library.songs", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return songsById.size();
+                }
+            }
+        );
+        registry.gauge("library.playlists", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return playlists.size();
+                }
+            }
+        );
+        registry.gauge("model.heapBytes", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return getEstimatedHeapBytes();
+                }
+            }
+        );
+        registry.gauge("mutations.queueDepth", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return mutationQueue.getDepth();
+                }
+            }
+        );
+        registry.gauge("mutations.written", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return mutationQueue.getWrittenCount();
+                }
+            }
+        );
+        registry.gauge("mutations.failed", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return mutationQueue.getFailedCount();
+                }
+            }
+        );
+        registry.gauge("cache.songSearch.hitRatio", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return getHitRatio(songSearchSession.getHitCount(), songSearchSession.getMissCount());
+                }
+            }
+        );
+        registry.gauge("cache.playlistSearch.hitRatio", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return getHitRatio(playlistSearchSession.getHitCount(), playlistSearchSession.getMissCount());
+                }
+            }
+        );
+        registry.gauge("cache.facets.hitRatio", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return getHitRatio(facetEngine.getHitCount(), facetEngine.getMissCount());
+                }
+            }
+        );
+    }
+    
+    /**
+     * Returns the part of lookups which were hits, or 0 if there were no lookups.
+     */
+    private static double getHitRatio(long hits, long misses)
+    {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+    
+    /**
+     * Returns the estimated number of bytes taken on the heap by songs and
+     * playlists of the model, without search indexes. It can be called from
+     * any thread, for example by metrics. Songs and playlists are owned by
+     * JavaFX Application Thread, so they are counted there, at most once every
+     * {@code HEAP_ESTIMATE_MILLIS}, and this method returns the last estimate.
+     * 
+     * @return The estimated number of bytes, 0 before the first estimate.
+     */
+    public long getEstimatedHeapBytes()
+    {
+        if(System.currentTimeMillis() - heapBytesEstimatedAt >= HEAP_ESTIMATE_MILLIS
+                && heapEstimateScheduled.compareAndSet(false, true))
+        {
+            Platform.runLater(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        estimateHeapBytes();
+                    }
+                }
+            );
+        }
+        return heapBytes;
+    }
+    
+    /**
+     * Counts songs and playlists and publishes the estimate of their bytes.
+     * It has to be called on JavaFX Application Thread.
+     */
+    private void estimateHeapBytes()
+    {
+        long bytes = 0;
+        for(Song song : songsById.values())
+        {
+            bytes += SONG_BYTES + getStringBytes(song.getTitle()) + getStringBytes(song.getArtist())
+                    + getStringBytes(song.getGenre()) + getStringBytes(song.getPath())
+                    + getStringBytes(song.getFoldedTitle()) + getStringBytes(song.getFoldedArtist())
+                    + getStringBytes(song.getFoldedGenre());
+        }
+        for(Playlist playlist : playlists)
+        {
+            bytes += PLAYLIST_BYTES + getStringBytes(playlist.getName())
+                    + (long) TRACK_BYTES * playlist.getNumberOfSongs();
+        }
+        heapBytes = bytes;
+        heapBytesEstimatedAt = System.currentTimeMillis();
+        heapEstimateScheduled.set(false);
+    }
+    
+    /**
+     * Returns the estimated number of bytes taken by given string.
+     */
+    private static long getStringBytes(String text)
+    {
+        return text == null ? 0 : STRING_BYTES + 2L * text.length();
+    }
+    
+    /**
+     * Synchronizes songs and playlists with database outside of JavaFX Application Thread.
+     * If snapshot has the version of library, only changes made since this version are read.
+     * If the change token of database is the same as the token of snapshot, nothing
+     * is read. Otherwise all songs are read page by page, continuing after the first
+     * page if it was already read from database - new songs are added to
+     * the search index and facets in background and then to {@code songList} on
+     * JavaFX Application Thread in one change, changed songs are refreshed and
+     * songs missing in database are removed. Then playlists are read and only
+     * changed playlists are updated. Finally the snapshot is saved with the token
+     * and version read before songs and playlists, so it is never newer than them.
+     * Until songs are loaded they are searched in database. Libraries too big
+     * to be indexed in memory are not loaded whole - only the first page is kept,
+     * next pages are read with {@link #loadMoreLibrarySongs} when they are shown,
+     * songs are searched in database and no snapshot is saved.
+     * Songs are indexed on the loader thread, but every read and write of
+     * database runs on the executor of database operations, so loading does not
+     * take more connections than other operations.
+     * 
+     * @param snapshot The snapshot shown on start or null if snapshot was not read.
+     * @param firstPage The first page of songs shown on start or null if it was not read.
+     * @param startupReport The report of loading times.
+     */
+    private void synchronizeLibrary(final LibrarySnapshot snapshot, final SongPage firstPage, final StartupReport startupReport)
+    {
+        Thread loader = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    long start = System.nanoTime();
+                    LibraryLoadEvent loadEvent = new LibraryLoadEvent();
+                    loadEvent.begin();
+                    if(asyncBllManager.getSongCount(loggedUser).join() >= LARGE_LIBRARY_SIZE)
+                    {
+                        int playlistCount = loadLargeLibrary(snapshot != null ? null : firstPage);
+                        startupReport.record("MainModel: load large library", System.nanoTime() - start);
+                        loadEvent.commit("load large library", 0, playlistCount);
+                        startupReport.log();
+                        finishLoading();
+                        return;
+                    }
+                    if(snapshot != null && snapshot.getVersion() > 0)
+                    {
+                        LibraryChanges changes = asyncBllManager.getLibraryChanges(loggedUser, snapshot.getVersion()).join();
+                        if(changes != null)
+                        {
+                            applyLibraryChanges(changes);
+                            startupReport.record("MainModel: apply library changes", System.nanoTime() - start);
+                            loadEvent.commit("apply library changes", changes.getSongs().size(), changes.getPlaylists().size());
+                            startupReport.log();
+                            finishLoading();
+                            return;
+                        }
+                    }
+                    long version = asyncBllManager.getLibraryVersion().join();
+                    String changeToken = asyncBllManager.getLibraryChangeToken(loggedUser).join();
+                    if(snapshot != null && changeToken != null && changeToken.equals(snapshot.getChangeToken()))
+                    {
+                        libraryVersion = version;
+                        startupReport.record("MainModel: check snapshot", System.nanoTime() - start);
+                        loadEvent.commit("check snapshot", 0, 0);
+                        startupReport.log();
+                        finishLoading();
+                        return;
+                    }
+                    List<Song> loadedSongs = new ArrayList<Song>();
+                    int cursor = 0;
+                    boolean hasMore = true;
+                    if(firstPage != null)
+                    {
+                        loadedSongs.addAll(firstPage.getSongs());
+                        cursor = firstPage.getNextCursor();
+                        hasMore = firstPage.hasMore();
+                    }
+                    while(hasMore)
+                    {
+                        SongPage page = asyncBllManager.getSongsPage(loggedUser, LOAD_PAGE_SIZE, cursor).join();
+                        if(page == null)
+                        {
+                            finishLoading();
+                            return;
+                        }
+                        loadedSongs.addAll(page.getSongs());
+                        if(loadedSongs.size() >= LARGE_LIBRARY_SIZE && musicSearcher.isSongIndexEnabled())
+                        {
+                            musicSearcher.setSongIndexEnabled(false);
+                        }
+                        addLoadedSongs(page);
+                        cursor = page.getNextCursor();
+                        hasMore = page.hasMore();
+                    }
+                    List<Playlist> loadedPlaylists = asyncBllManager.getAllPlaylists(loggedUser).join();
+                    if(loadedPlaylists != null)
+                    {
+                        if(changeToken != null)
+                        {
+                            asyncBllManager.saveLibrarySnapshot(loggedUser, changeToken, version, loadedSongs, loadedPlaylists).join();
+                        }
+                        applyLoadedLibrary(loadedSongs, loadedPlaylists);
+                        libraryVersion = version;
+                    }
+                    startupReport.record("MainModel: synchronize library", System.nanoTime() - start);
+                    loadEvent.commit("synchronize library", loadedSongs.size(),
+                            loadedPlaylists == null ? 0 : loadedPlaylists.size());
+                    startupReport.log();
+                    finishLoading();
+                }
+            }, "library-loader"
+        );
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    /**
+     * Keeps only the first page of songs of library too big to be loaded whole
+     * and updates playlists. If songs were shown from snapshot they are replaced
+     * with the first page read from database. It is run on the loader thread.
+     * 
+     * @param firstPage The first page of songs shown on start or null if it was not read.
+     * @return The number of loaded playlists.
+     */
+    private int loadLargeLibrary(SongPage firstPage)
+    {
+        largeLibrary = true;
+        musicSearcher.setSongIndexEnabled(false);
+        long version = asyncBllManager.getLibraryVersion().join();
+        SongPage page = firstPage;
+        if(page == null)
+        {
+            page = asyncBllManager.getSongsPage(loggedUser, FIRST_PAGE_SIZE, 0).join();
+            if(page == null)
+            {
+                return 0;
+            }
+            showFirstPage(page);
+        }
+        final SongPage shownPage = page;
+        Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    libraryCursor = shownPage.getNextCursor();
+                    libraryHasMore = shownPage.hasMore();
+                }
+            }
+        );
+        List<Playlist> loadedPlaylists = asyncBllManager.getAllPlaylists(loggedUser).join();
+        if(loadedPlaylists == null)
+        {
+            return 0;
+        }
+        applyLoadedPlaylists(loadedPlaylists);
+        libraryVersion = version;
+        return loadedPlaylists.size();
+    }
+    
+    /**
+     * Replaces songs shown from snapshot with given first page of songs
+     * on JavaFX Application Thread. Songs created by user during loading are kept.
+     * 
+     * @param page The first page of songs.
+     */
+    private void showFirstPage(final SongPage page)
+    {
+        Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    List<Song> songs = new ArrayList<Song>(page.getSongs().size() + createdWhileLoading.size());
+                    for(Song song : page.getSongs())
+                    {
+                        if(!deletedWhileLoading.contains(song))
+                        {
+                            songs.add(song);
+                        }
+                    }
+                    for(Song song : createdWhileLoading)
+                    {
+                        if(!songs.contains(song))
+                        {
+                            songs.add(song);
+                        }
+                    }
+                    songsById.clear();
+                    for(Song song : songs)
+                    {
+                        songsById.put(song.getId(), song);
+                    }
+                    songList.setAll(songs);
+                    facetEngine.build(songList);
+                    applyChangedRows(page.getChangedRows());
+                    libraryChanged();
+                }
+            }
+        );
+    }
+    
+    /**
+     * Reads the next page of songs of library too big to be loaded whole
+     * outside of JavaFX Application Thread and adds it to {@code songList}.
+     * Nothing is read while songs are loaded, while another page is read
+     * or if all songs are already on the list.
+     * 
+     * @return true if the next page is read.
+     */
+    public boolean loadMoreLibrarySongs()
+    {
+        if(!largeLibrary || libraryLoading.get() || loadingLibraryPage || !libraryHasMore)
+        {
+            return false;
+        }
+        loadingLibraryPage = true;
+        asyncBllManager.getSongsPage(loggedUser, FIRST_PAGE_SIZE, libraryCursor).whenCompleteAsync(new BiConsumer<SongPage, Throwable>()
+            {
+                @Override
+                public void accept(SongPage page, Throwable error)
+                {
+                    if(page != null)
+                    {
+                        libraryCursor = page.getNextCursor();
+                        libraryHasMore = page.hasMore();
+                        addLoadedSongs(page);
+                    }
+                    loadingLibraryPage = false;
+                }
+            }, FxExecutor.createInstance()
+        );
+        return true;
+    }
+    
+    /**
+     * Reads changes made in database since the last synchronization outside
+     * of JavaFX Application Thread and applies them to songs and playlists.
+     * It takes time proportional to the number of changes, not to the size of library.
+     * Nothing is done while songs are loaded, while changes of user are not written
+     * yet, so they are not replaced with older rows, or if the version of library is unknown.
+     */
+    public void refreshLibrary()
+    {
+        final long version = libraryVersion;
+        if(libraryLoading.get() || refreshingLibrary || version == 0 || mutationQueue.getDepth() > 0)
+        {
+            return;
+        }
+        refreshingLibrary = true;
+        asyncBllManager.getLibraryChanges(loggedUser, version).whenCompleteAsync(new BiConsumer<LibraryChanges, Throwable>()
+            {
+                @Override
+                public void accept(LibraryChanges changes, Throwable error)
+                {
+                    if(changes != null)
+                    {
+                        applyLibraryChanges(changes);
+                    }
+                    refreshingLibrary = false;
+                }
+            }, FxExecutor.createInstance()
+        );
+    }
+    
+    /**
+     * Adds loaded songs which are not on {@code songList} yet to the search index
+     * and facets and then to {@code songList} on JavaFX Application Thread.
+     * Songs which were changed in database since they were put on the list
+     * are refreshed there too. Songs deleted by user during loading are skipped.
+     * 
+     * @param page The page of loaded songs.
+     */
+    private void addLoadedSongs(SongPage page)
+    {
+        final List<Song> addedSongs = new ArrayList<Song>(page.getSongs().size());
+        final Map<Song, Song> changedRows = page.getChangedRows();
+        for(Song song : page.getSongs())
+        {
+            if(deletedWhileLoading.contains(song))
+            {
+                continue;
+            }
+            if(songsById.putIfAbsent(song.getId(), song) == null)
+            {
+                addedSongs.add(song);
+            }
+        }
+        musicSearcher.addSongs(addedSongs);
+        facetEngine.addSongs(addedSongs);
+        Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    songList.addAll(addedSongs);
+                    if(applyChangedRows(changedRows))
+                    {
+                        libraryChanged();
+                    }
+                }
+            }
+        );
+    }
+    
+    /**
+     * Copies data read from database to songs of library and refreshes
+     * the songs in the search index and facets. It has to be run on JavaFX
+     * Application Thread, where songs are changed by user. Songs changed or
+     * deleted by user which are not written to database yet are skipped,
+     * so their changes are not reverted by older rows.
+     * 
+     * @param changedRows The songs mapped to songs with data read from database.
+     * @return true if any song was changed.
+     */
+    private boolean applyChangedRows(Map<Song, Song> changedRows)
+    {
+        boolean changed = false;
+        for(Map.Entry<Song, Song> entry : changedRows.entrySet())
+        {
+            Song song = entry.getKey();
+            Song row = entry.getValue();
+            if(songsById.get(song.getId()) != song || mutationQueue.isSongPending(song.getId()))
+            {
+                continue;
+            }
+            song.setTitle(row.getTitle());
+            song.setArtist(row.getArtist());
+            song.setGenre(row.getGenre());
+            song.setPath(row.getPath());
+            musicSearcher.updateSong(song);
+            facetEngine.updateSong(song);
+            changed = true;
+        }
+        return changed;
+    }
+    
+    /**
+     * Removes songs which are not in database any more and updates playlists
+     * which were changed in database on JavaFX Application Thread. Songs are
+     * compared by their ids, so a song is never removed only because it was read
+     * as another object. Songs and playlists created or deleted by user during
+     * loading are left as they are.
+     * 
+     * @param loadedSongs All songs read from database.
+     * @param loadedPlaylists All playlists read from database.
+     */
+    private void applyLoadedLibrary(List<Song> loadedSongs, final List<Playlist> loadedPlaylists)
+    {
+        Set<Integer> idsInDatabase = new HashSet<Integer>(loadedSongs.size() * 2);
+        for(Song song : loadedSongs)
+        {
+            idsInDatabase.add(song.getId());
+        }
+        final List<Song> removedSongs = new ArrayList<Song>();
+        for(Song song : songsById.values())
+        {
+            if(!idsInDatabase.contains(song.getId()) && !createdWhileLoading.contains(song))
+            {
+                removedSongs.add(song);
+            }
+        }
+        Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    removeSongs(removedSongs);
+                }
+            }
+        );
+        applyLoadedPlaylists(loadedPlaylists);
+    }
+    
+    /**
+     * Updates playlists which were changed in database and removes playlists
+     * which are not in database any more on JavaFX Application Thread.
+     * Playlists created or deleted by user during loading are left as they are.
+     * 
+     * @param loadedPlaylists All playlists read from database.
+     */
+    private void applyLoadedPlaylists(final List<Playlist> loadedPlaylists)
+    {
+        Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Set<Integer> deletedPlaylistIds = new HashSet<Integer>();
+                    for(Playlist playlist : playlists)
+                    {
+                        if(!createdPlaylistsWhileLoading.contains(playlist))
+                        {
+                            deletedPlaylistIds.add(playlist.getId());
+                        }
+                    }
+                    for(Playlist playlist : loadedPlaylists)
+                    {
+                        deletedPlaylistIds.remove(playlist.getId());
+                    }
+                    applyPlaylistChanges(loadedPlaylists, deletedPlaylistIds);
+                    libraryChanged();
+                }
+            }
+        );
+    }
+    
+    /**
+     * Applies changes read from database to songs and playlists on
+     * JavaFX Application Thread and saves the snapshot of library if
+     * anything was changed.
+     * 
+     * @param changes The changes of library.
+     */
+    private void applyLibraryChanges(final LibraryChanges changes)
+    {
+        Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    List<Song> removedSongs = new ArrayList<Song>();
+                    for(int id : changes.getDeletedSongIds())
+                    {
+                        Song song = songsById.remove(id);
+                        if(song != null)
+                        {
+                            removedSongs.add(song);
+                        }
+                    }
+                    removeSongs(removedSongs);
+                    List<Song> addedSongs = new ArrayList<Song>();
+                    for(Song song : changes.getSongs())
+                    {
+                        if(songsById.putIfAbsent(song.getId(), song) == null)
+                        {
+                            addedSongs.add(song);
+                        }
+                    }
+                    musicSearcher.addSongs(addedSongs);
+                    facetEngine.addSongs(addedSongs);
+                    songList.addAll(addedSongs);
+                    applyChangedRows(changes.getChangedRows());
+                    applyPlaylistChanges(changes.getPlaylists(), changes.getDeletedPlaylistIds());
+                    libraryVersion = changes.getVersion();
+                    if(!changes.isEmpty())
+                    {
+                        libraryChanged();
+                        saveSnapshot();
+                    }
+                }
+            }
+        );
+    }
+    
+    /**
+     * Removes given songs from {@code songList}, playlists,
+     * the search index and facets.
+     * 
+     * @param songs The songs to remove.
+     */
+    private void removeSongs(List<Song> songs)
+    {
+        if(songs.isEmpty())
+        {
+            return;
+        }
+        for(Song song : songs)
+        {
+            songsById.remove(song.getId());
+            deleteSongFromAllPlaylists(song);
+            musicSearcher.removeSong(song);
+            facetEngine.removeSong(song);
+        }
+        songList.removeAll(new HashSet<Song>(songs));
+    }
+    
+    /**
+     * Updates playlists with given changed playlists and removes playlists
+     * with given ids. Changed playlists keep their objects, so the ones shown
+     * on view stay valid. Playlists deleted by user during loading are not added.
+     * 
+     * @param changedPlaylists The added or changed playlists.
+     * @param deletedPlaylistIds The ids of deleted playlists.
+     */
+    private void applyPlaylistChanges(List<Playlist> changedPlaylists, Set<Integer> deletedPlaylistIds)
+    {
+        Map<Integer, Playlist> playlistsById = new HashMap<Integer, Playlist>();
+        for(Playlist playlist : playlists)
+        {
+            playlistsById.put(playlist.getId(), playlist);
+        }
+        for(int id : deletedPlaylistIds)
+        {
+            Playlist playlist = playlistsById.get(id);
+            if(playlist != null)
+            {
+                membershipIndex.removePlaylist(playlist);
+                musicSearcher.removePlaylist(playlist);
+                playlists.remove(playlist);
+            }
+        }
+        for(Playlist changed : changedPlaylists)
+        {
+            Playlist playlist = playlistsById.get(changed.getId());
+            if(playlist == null)
+            {
+                if(!deletedPlaylistsWhileLoading.contains(changed.getId()))
+                {
+                    membershipIndex.addPlaylist(changed);
+                    musicSearcher.addPlaylist(changed);
+                    playlists.add(changed);
+                }
+            }
+            else if(!playlist.hasSameContent(changed))
+            {
+                membershipIndex.removePlaylist(playlist);
+                playlist.replaceContent(changed);
+                membershipIndex.addPlaylist(playlist);
+                musicSearcher.updatePlaylist(playlist);
+                refreshPlaylist(playlist);
+            }
+        }
+    }
+    
+    /**
+     * Saves the snapshot of songs and playlists outside of JavaFX Application Thread.
+     * Lists and playlists are copied first, so they can be changed while saving.
+     * Libraries too big to be loaded whole have only some songs on the list,
+     * so their snapshot is not saved.
+     */
+    private void saveSnapshot()
+    {
+        if(largeLibrary)
+        {
+            return;
+        }
+        final long version = libraryVersion;
+        final List<Song> songs = new ArrayList<Song>(songList);
+        final List<Playlist> playlistCopies = new ArrayList<Playlist>(playlists.size());
+        for(Playlist playlist : playlists)
+        {
+            playlistCopies.add(copyPlaylist(playlist));
+        }
+        asyncBllManager.saveLibrarySnapshot(loggedUser, null, version, songs, playlistCopies);
+    }
+    
+    /**
+     * Informs listeners that songs or playlists were changed from database.
+     */
+    private void libraryChanged()
+    {
+        libraryRevision.set(libraryRevision.get() + 1);
+    }
+    
+    /**
+     * Marks the library as loaded on JavaFX Application Thread.
+     */
+    private void finishLoading()
+    {
+        Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    serverSearch = !musicSearcher.isSongIndexEnabled();
+                    createdWhileLoading.clear();
+                    deletedWhileLoading.clear();
+                    createdPlaylistsWhileLoading.clear();
+                    deletedPlaylistsWhileLoading.clear();
+                    libraryLoading.set(false);
+                }
+            }
+        );
+    }
+    
+    /**
+     * Returns the property which is changed every time songs or playlists
+     * are changed from database, so views can show their new content.
+     * 
+     * @return The property of revision of library.
+     */
+    public ReadOnlyLongProperty libraryRevisionProperty()
+    {
+        return libraryRevision;
+    }
+    
+    /**
+     * Returns the property which is true until all songs are loaded.
+     * 
+     * @return The property of loading songs.
+     */
+    public ReadOnlyBooleanProperty libraryLoadingProperty()
+    {
+        return libraryLoading;
     }
     
     /**
@@ -83,7 +1058,7 @@ public class MainModel {
      * 
      * @return The instance of MainModel class.
      */
-    public static MainModel createInstance()
+    public static synchronized MainModel createInstance()
     {
         if(instance == null)
         {
@@ -92,6 +1067,33 @@ public class MainModel {
         return instance;
     }
     
+    /**
+     * Creates single instance of MainModel class outside of JavaFX Application
+     * Thread, so reading the first songs and playlists does not freeze the window.
+     * 
+     * @return The future of instance of MainModel class, completed on JavaFX Application Thread.
+     */
+    public static CompletableFuture<MainModel> createInstanceAsync()
+    {
+        return CompletableFuture.supplyAsync(new Supplier<MainModel>()
+            {
+                @Override
+                public MainModel get()
+                {
+                    return createInstance();
+                }
+            }, ApplicationContext.createInstance().getDatabaseExecutor()
+        ).thenApplyAsync(new Function<MainModel, MainModel>()
+            {
+                @Override
+                public MainModel apply(MainModel model)
+                {
+                    return model;
+                }
+            }, FxExecutor.createInstance()
+        );
+    }
+    
     /**
      * Returns list with all songs.
      * 
@@ -104,25 +1106,55 @@ public class MainModel {
     
     /**
      * Deletes song from the list of songs.
-     * It makes a request for BLL to delete song 
-     * from database and deletes song from 
-     * temporary state of data. It is also deleting
-     * song from all playlists that containt this song.
+     * It deletes song from temporary state of data, also from all
+     * playlists that containt this song, and then submits the deletion
+     * to {@code MutationQueue}, which writes it to database in background.
      * 
      * @param song The song to delete.
      */
-    public void deleteSong(Song song)
+    public void deleteSong(final Song song)
     {
-        bllManager.deleteSong(song);
+        final int index = songList.indexOf(song);
+        final List<Playlist> containingPlaylists = new ArrayList<Playlist>(membershipIndex.getPlaylists(song));
+        final List<Playlist> copies = new ArrayList<Playlist>(containingPlaylists.size());
+        for(Playlist playlist : containingPlaylists)
+        {
+            copies.add(copyPlaylist(playlist));
+        }
+        if(libraryLoading.get())
+        {
+            deletedWhileLoading.add(song);
+        }
+        songsById.remove(song.getId());
         deleteSongFromAllPlaylists(song);
+        musicSearcher.removeSong(song);
+        facetEngine.removeSong(song);
         songList.remove(song);
+        mutationQueue.submit(Collections.singletonList(LibraryMutation.deleteSong(song)), containingPlaylists, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    deletedWhileLoading.remove(song);
+                    songsById.put(song.getId(), song);
+                    musicSearcher.addSong(song);
+                    facetEngine.addSong(song);
+                    songList.add(Math.max(0, Math.min(index, songList.size())), song);
+                    for(int i = 0; i < containingPlaylists.size(); i++)
+                    {
+                        restorePlaylist(containingPlaylists.get(i), copies.get(i));
+                    }
+                }
+            }
+        );
     }
     
     /**
      * Creates song.
-     * It makes a request for BLL to create song
-     * in database and then adds created song that BLL returns
-     * to the list of all songs.
+     * It makes a request for BLL to create song in database outside
+     * of JavaFX Application Thread, because the id of song is given by
+     * database, and then adds created song that BLL returns to the list
+     * of all songs on JavaFX Application Thread.
      * 
      * @param title The songs title.
      * @param artist The songs artist.
@@ -132,26 +1164,70 @@ public class MainModel {
      */
     public void createSong(String title, String artist, String genre, String path, int time)
     {
-        Song song = bllManager.createSong(loggedUser, title, artist, genre, path, time);
-        songList.add(song);
+        asyncBllManager.createSong(loggedUser, title, artist, genre, path, time).thenAcceptAsync(new Consumer<Song>()
+            {
+                @Override
+                public void accept(Song song)
+                {
+                    if(song == null)
+                    {
+                        writeFailures.set(writeFailures.get() + 1);
+                        return;
+                    }
+                    if(libraryLoading.get())
+                    {
+                        createdWhileLoading.add(song);
+                    }
+                    songsById.put(song.getId(), song);
+                    musicSearcher.addSong(song);
+                    facetEngine.addSong(song);
+                    songList.add(song);
+                }
+            }, FxExecutor.createInstance()
+        );
     }
     
     /**
      * Updates song.
-     * It makes a request for BLL to update song
-     * in database and then updates the song that BLL returns
-     * in temporary state of data.
+     * It updates the song in temporary state of data and then
+     * submits the update to {@code MutationQueue}, which writes it
+     * to database in background.
      * 
      * @param song The song to update.
      * @param newTitle The new title for song.
      * @param newArtist The new artist for song.
      * @param newGenre The new genre for song.
      */
-    public void updateSong(Song song, String newTitle, String newArtist, String newGenre)
+    public void updateSong(final Song song, String newTitle, String newArtist, String newGenre)
+    {
+        final String oldTitle = song.getTitle();
+        final String oldArtist = song.getArtist();
+        final String oldGenre = song.getGenre();
+        setSongFields(song, newTitle, newArtist, newGenre);
+        mutationQueue.submit(LibraryMutation.updateSong(song, newTitle, newArtist, newGenre), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    setSongFields(song, oldTitle, oldArtist, oldGenre);
+                }
+            }
+        );
+    }
+    
+    /**
+     * Sets title, artist and genre of song and refreshes
+     * the song in indexes, on lists and on playlists.
+     */
+    private void setSongFields(Song song, String title, String artist, String genre)
     {
-        updateSongOnAllPlaylists(song, newTitle, newArtist, newGenre);
-        Song updatedSong = bllManager.updateSong(song, newTitle, newArtist, newGenre);
-        updateListOfSongs(updatedSong);
+        song.setTitle(title);
+        song.setArtist(artist);
+        song.setGenre(genre);
+        musicSearcher.updateSong(song);
+        facetEngine.updateSong(song);
+        updateListOfSongs(song);
+        updateSongOnAllPlaylists(song);
     }
     
     /**
@@ -163,7 +1239,10 @@ public class MainModel {
     private void updateListOfSongs(Song song)
     {
         int index = songList.indexOf(song);
-        songList.set(index, song);
+        if(index != -1)
+        {
+            songList.set(index, song);
+        }
     }
     
     /**
@@ -178,45 +1257,93 @@ public class MainModel {
     
     /**
      * Deletes playlist from the list of all playlists.
-     * It makes a request for BLL to delete playlist 
-     * from database and deletes playlist from 
-     * temporary state of data.
+     * It deletes playlist from temporary state of data and then
+     * submits the deletion to {@code MutationQueue}, which writes it
+     * to database in background.
      * 
      * @param playlist The playlist to delete.
      */
-    public void deletePlaylist(Playlist playlist)
+    public void deletePlaylist(final Playlist playlist)
     {
-        bllManager.deletePlaylist(playlist);
+        final int index = playlists.indexOf(playlist);
+        if(libraryLoading.get())
+        {
+            deletedPlaylistsWhileLoading.add(playlist.getId());
+        }
+        membershipIndex.removePlaylist(playlist);
+        musicSearcher.removePlaylist(playlist);
         playlists.remove(playlist);
+        mutationQueue.submit(LibraryMutation.deletePlaylist(playlist), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    deletedPlaylistsWhileLoading.remove(playlist.getId());
+                    membershipIndex.addPlaylist(playlist);
+                    musicSearcher.addPlaylist(playlist);
+                    playlists.add(Math.max(0, Math.min(index, playlists.size())), playlist);
+                }
+            }
+        );
     }
     
     /**
      * Creates playlist.
-     * It makes a request for BLL to create playlist
-     * in database and then adds created playlist that BLL returns
-     * to the list of all playlists..
+     * It makes a request for BLL to create playlist in database outside
+     * of JavaFX Application Thread and then adds created playlist that BLL
+     * returns to the list of all playlists on JavaFX Application Thread.
      * 
      * @param name The name of playlist.
      */
     public void createPlaylist(String name)
     {
-        Playlist playlist = bllManager.createPlaylist(loggedUser, name);
-        playlists.add(playlist);
+        asyncBllManager.createPlaylist(loggedUser, name).thenAcceptAsync(new Consumer<Playlist>()
+            {
+                @Override
+                public void accept(Playlist playlist)
+                {
+                    if(playlist == null)
+                    {
+                        writeFailures.set(writeFailures.get() + 1);
+                        return;
+                    }
+                    if(libraryLoading.get())
+                    {
+                        createdPlaylistsWhileLoading.add(playlist);
+                    }
+                    musicSearcher.addPlaylist(playlist);
+                    playlists.add(playlist);
+                }
+            }, FxExecutor.createInstance()
+        );
     }
     
     /**
      * Updates playlist.
-     * It makes a request for BLL to update playlist
-     * in database and then updates playlist that BLL returns
-     * in temporary state of data.
+     * It updates playlist in temporary state of data and then
+     * submits the update to {@code MutationQueue}, which writes it
+     * to database in background.
      * 
      * @param playlist The playlist to update.
      * @param newName The new name or playlist.
      */
-    public void updatePlaylist(Playlist playlist, String newName)
+    public void updatePlaylist(final Playlist playlist, String newName)
     {
-        Playlist updatedPlaylist = bllManager.updatePlaylist(playlist, newName);
+        final String oldName = playlist.getName();
+        playlist.setName(newName);
+        musicSearcher.updatePlaylist(playlist);
         updateListOfPlaylists(playlist);
+        mutationQueue.submit(LibraryMutation.renamePlaylist(playlist, newName), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    playlist.setName(oldName);
+                    musicSearcher.updatePlaylist(playlist);
+                    refreshPlaylist(playlist);
+                }
+            }
+        );
     }
 
     /**
@@ -229,13 +1356,10 @@ public class MainModel {
      */
     public void moveSongUpOnPlaylist(Playlist playlist, Song song)
     {
-        int id = playlistSongs.indexOf(song);
-        if(id!=0)
+        int id = playlist.getPositionOfSong(song);
+        if(id > 0)
         {
-            Song secondSong = playlistSongs.get(id-1);
-            bllManager.switchSongsPlacesOnPlaylist(playlist, song, secondSong);
-            Collections.swap(playlistSongs, id, id-1);
-            Collections.swap(playlist.getTracklist(), id, id-1);
+            moveSongsOnPlaylist(playlist, Collections.singletonList(song), id-1);
         }
     }
     
@@ -249,30 +1373,58 @@ public class MainModel {
      */
     public void moveSongDownOnPlaylist(Playlist playlist, Song song)
     {
-        int id = playlistSongs.indexOf(song);
-        if(id!= playlist.getNumberOfSongs()-1)
+        int id = playlist.getPositionOfSong(song);
+        if(id != -1 && id != playlist.getNumberOfSongs()-1)
+        {
+            moveSongsOnPlaylist(playlist, Collections.singletonList(song), id+1);
+        }
+    }
+    
+    /**
+     * Moves songs on the playlist so they start at the given index.
+     * It moves songs in temporary state of data, refreshes the list with songs
+     * on selected playlist and submits new positions of songs which were changed,
+     * usually only the moved ones, to {@code MutationQueue}. Repeated moves
+     * of the same song write only its last position.
+     * Target index is counted on the tracklist without moved songs.
+     * 
+     * @param playlist The playlist with given songs.
+     * @param songs The songs to move.
+     * @param targetIndex The index where moved songs should start.
+     */
+    public void moveSongsOnPlaylist(Playlist playlist, List<Song> songs, int targetIndex)
+    {
+        Playlist copy = copyPlaylist(playlist);
+        List<Song> changedSongs = playlist.moveSongs(songs, targetIndex);
+        setPlaylistSongs(playlist);
+        if(changedSongs.isEmpty())
+        {
+            return;
+        }
+        List<LibraryMutation> mutations = new ArrayList<LibraryMutation>(changedSongs.size());
+        for(Song song : changedSongs)
         {
-            Song secondSong = playlistSongs.get(id+1);
-            bllManager.switchSongsPlacesOnPlaylist(playlist, song, secondSong);
-            Collections.swap(playlistSongs, id, id+1);
-            Collections.swap(playlist.getTracklist(), id, id+1);
+            mutations.add(LibraryMutation.moveTrack(playlist, song, playlist.getOrderKey(song)));
         }
+        mutationQueue.submit(mutations, createPlaylistRestore(playlist, copy));
     }
     
     /**
      * Deletes song from playlist.
-     * It makes a request for BLL to delete song from playlist
-     * in database and then deletes song from playlist in temporary
-     * state of data.
+     * It deletes song from playlist in temporary state of data
+     * and then submits the deletion to {@code MutationQueue}, which
+     * writes it to database in background.
      * 
      * @param playlist The playlist with song to delete.
      * @param song The song to delete.
      */
     public void deleteSongFromPlaylist(Playlist playlist, Song song)
     {
-        bllManager.deleteSongFromPlaylist(playlist, song);
+        Playlist copy = copyPlaylist(playlist);
         playlist.removeSong(song);
-        updateListOfPlaylists(playlist);     
+        membershipIndex.removeSong(playlist, song);
+        updateListOfPlaylists(playlist);
+        mutationQueue.submit(LibraryMutation.removeTrack(playlist, song), createPlaylistRestore(playlist, copy));
     }
     
     /**
@@ -293,6 +1445,7 @@ public class MainModel {
      */
     public void setPlaylistSongs(Playlist playlist)
     {
+        shownPlaylist = playlist;
         playlistSongs.setAll(playlist.getTracklist());
     }
     
@@ -301,64 +1454,173 @@ public class MainModel {
      */
     public void clearPlaylistSongs()
     {
+        shownPlaylist = null;
         playlistSongs.clear();
     }
     
     /**
      * Adds a song to playlist.
+     * The song is added at the end of playlist in temporary state of data
+     * and then the addition is submitted to {@code MutationQueue}, which
+     * writes it to database in background.
      * 
      * @param playlist The playlist to which song should be added.
      * @param song The song to add.
      */
     public void addSongToPlaylist(Playlist playlist, Song song)
     {
-        Playlist updatedPlaylist = bllManager.addSongToPlaylist(playlist, song);       
-        updateListOfPlaylists(updatedPlaylist);
+        Playlist copy = copyPlaylist(playlist);
+        playlist.addSong(song);
+        membershipIndex.addSong(playlist, song);
+        updateListOfPlaylists(playlist);
+        mutationQueue.submit(LibraryMutation.addTrack(playlist, song, playlist.getOrderKey(song)),
+                createPlaylistRestore(playlist, copy));
+    }
+    
+    /**
+     * Returns the copy of playlist with its name, songs and their order keys.
+     * 
+     * @param playlist The playlist to copy.
+     * @return The copy of playlist.
+     */
+    private static Playlist copyPlaylist(Playlist playlist)
+    {
+        Playlist copy = new Playlist(playlist.getId(), playlist.getName());
+        copy.replaceContent(playlist);
+        return copy;
+    }
+    
+    /**
+     * Returns the action which restores given playlist to the content of its copy.
+     * 
+     * @param playlist The playlist to restore.
+     * @param copy The copy of playlist made before the change.
+     * @return The action restoring playlist.
+     */
+    private Runnable createPlaylistRestore(final Playlist playlist, final Playlist copy)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                restorePlaylist(playlist, copy);
+            }
+        };
+    }
+    
+    /**
+     * Restores given playlist to the content of its copy
+     * and updates indexes and the list of all playlists.
+     * If the playlist is shown, its songs are shown again in the previous order,
+     * so the view does not keep a change which is not in database.
+     * 
+     * @param playlist The playlist to restore.
+     * @param copy The copy of playlist made before the change.
+     */
+    private void restorePlaylist(Playlist playlist, Playlist copy)
+    {
+        membershipIndex.removePlaylist(playlist);
+        playlist.replaceContent(copy);
+        membershipIndex.addPlaylist(playlist);
+        musicSearcher.updatePlaylist(playlist);
+        refreshPlaylist(playlist);
+        if(shownPlaylist == playlist)
+        {
+            playlistSongs.setAll(playlist.getTracklist());
+        }
+    }
+    
+    /**
+     * Writes changes waiting in {@code MutationQueue} to database and waits
+     * until they are written. It should be called before application is closed.
+     */
+    public void flushChanges()
+    {
+        mutationQueue.flush();
+    }
+    
+    /**
+     * Returns the queue writing changes of library to database.
+     * It provides the depth of queue and the latency percentiles of writes.
+     * 
+     * @return The queue of changes.
+     */
+    public MutationQueue getMutationQueue()
+    {
+        return mutationQueue;
+    }
+    
+    /**
+     * Returns the property which is increased every time changes could not be
+     * written to database and were undone, so views can inform the user.
+     * 
+     * @return The property with the number of failed writes.
+     */
+    public ReadOnlyIntegerProperty writeFailuresProperty()
+    {
+        return writeFailures;
+    }
+    
+    /**
+     * Returns the playlists which contain given song.
+     * 
+     * @param song The song to check.
+     * @return The list of playlists with song.
+     */
+    public List<Playlist> getPlaylistsContainingSong(Song song)
+    {
+        return membershipIndex.getPlaylists(song);
     }
     
     /**
      * Deletes the song from all playlists that contain this song.
+     * Only playlists found in membership index are changed.
      * 
      * @param song The song to delete.
      */
     private void deleteSongFromAllPlaylists(Song song)
     {
-        for(int i = 0; i < playlists.size(); i++)
+        for(Playlist playlist : membershipIndex.removeSongFromAll(song))
         {
-            for(int j = 0; j < playlists.get(i).getTracklist().size(); j++)
-            {
-                if(song.getId() == playlists.get(i).getTracklist().get(j).getId())
-                {
-                    playlists.get(i).removeSong(playlists.get(i).getTracklist().get(j));
-                    updateListOfPlaylists(playlists.get(i));
-                }
-            }
+            playlist.removeSong(song);
+            refreshPlaylist(playlist);
         }
+        playlistSongs.remove(song);
     }
     
     /**
-     * Updates the song from all playlists that contain this song.
+     * Refreshes all playlists that contain given song. Playlists
+     * share the song object with the list of all songs, so
+     * the song itself is already updated. Only playlists found
+     * in membership index are refreshed.
      * 
-     * @param song The song to update.
-     * @param newTitle The new title for song.
-     * @param newArtist The new artist for song.
-     * @param newGenre The new genre for song.
+     * @param song The updated song.
      */
-    private void updateSongOnAllPlaylists(Song song, String newTitle, String newArtist, String newGenre)
+    private void updateSongOnAllPlaylists(Song song)
     {
-        for(int i = 0; i < playlists.size(); i++)
+        for(Playlist playlist : membershipIndex.getPlaylists(song))
         {
-            for(int j = 0; j < playlists.get(i).getTracklist().size(); j++)
-            {
-                if(song.getId() == playlists.get(i).getTracklist().get(j).getId())
-                {
-                    Song songToUpdate = playlists.get(i).getTracklist().get(j);
-                    songToUpdate.setTitle(newTitle);
-                    songToUpdate.setArtist(newArtist);
-                    songToUpdate.setGenre(newGenre);
-                    updateListOfPlaylists(playlists.get(i));
-                }
-            }
+            refreshPlaylist(playlist);
+        }
+        int index = playlistSongs.indexOf(song);
+        if(index != -1)
+        {
+            playlistSongs.set(index, song);
+        }
+    }
+    
+    /**
+     * Refreshes the row of given playlist on list of all playlists.
+     * 
+     * @param playlist The playlist to refresh.
+     */
+    private void refreshPlaylist(Playlist playlist)
+    {
+        int index = playlists.indexOf(playlist);
+        if(index != -1)
+        {
+            playlists.set(index, playlist);
         }
     }
     
@@ -480,7 +1742,7 @@ public class MainModel {
         {
             if(mode == PlayingMode.PLAYLIST)
             {
-                return songChooser.getNextSong(currentlyPlayingPlaylist.getTracklist(), currentlyPlayingSong);
+                return songChooser.getNextSong(currentlyPlayingPlaylist, currentlyPlayingSong);
             }
             else
             {
@@ -518,7 +1780,7 @@ public class MainModel {
         {
             if(mode == PlayingMode.PLAYLIST)
             {
-                return songChooser.getPreviousSong(currentlyPlayingPlaylist.getTracklist(), currentlyPlayingSong);
+                return songChooser.getPreviousSong(currentlyPlayingPlaylist, currentlyPlayingSong);
             }
             else
             {
@@ -528,27 +1790,261 @@ public class MainModel {
     }
     
     /**
-     * Returns list of songs from {@code songList} that matches to given filter.
+     * Searches songs from {@code songList} that match to given filter
+     * outside of JavaFX Application Thread. Songs are found in the search index
+     * and when the filter extends the previous one, previous results are narrowed.
+     * Songs matching every word of filter in any field are found, limited
+     * to selected genre and range of time, and the best matches are placed first.
+     * If no song starts with the filter, songs similar to the filter are searched,
+     * so typos are tolerated. Handler receives only results of the latest filter.
+     * While songs are loaded and for big libraries songs starting with the filter
+     * are read from database page by page, and next pages are read with {@link #loadMoreSongs}.
+     * 
+     * @param filter The filter for songs.
+     * @param handler The handler of found songs.
+     */
+    public void searchSongs(String filter, SearchService.ResultHandler<Song> handler)
+    {
+        songSearchService.submit(filter, handler);
+    }
+    
+    /**
+     * Reads the next page of songs found by the latest search in database.
+     * Handler receives only songs of the next page, limited to selected genre
+     * and range of time, and nothing is read if another search was started
+     * or there are no more songs.
+     * 
+     * @param handler The handler of songs on the next page.
+     * @return true if the next page is read.
+     */
+    public boolean loadMoreSongs(SearchService.ResultHandler<Song> handler)
+    {
+        final SongSearchPage page = serverPage;
+        if(!serverSearch || page == null || !page.hasMore())
+        {
+            return false;
+        }
+        serverPage = null;
+        songSearchService.submitNext(new SearchService.Query<Song>()
+            {
+                @Override
+                public List<Song> search(String filter)
+                {
+                    return searchServerPage(filter, page.getNextCursor());
+                }
+            }, serverFilter, handler
+        );
+        return true;
+    }
+    
+    /**
+     * Returns true if songs are searched in database
+     * instead of the search index, because songs are still loaded
+     * or the library is too big to be indexed in memory.
+     * 
+     * @return true if songs are searched in database.
+     */
+    public boolean isServerSearch()
+    {
+        return serverSearch;
+    }
+    
+    /**
+     * Reads pages of songs starting with given filter from database,
+     * starting after given cursor, until some song is left after limiting songs
+     * to selected genre and range of time or there are no more songs.
      * 
      * @param filter The filter for songs.
+     * @param cursor The cursor of the first page.
      * @return The list of songs.
      */
-    public ObservableList<Song> getFilteredSongs(String filter)
+    private List<Song> searchServerPage(String filter, SongSearchPage.Cursor cursor)
     {
-        ObservableList<Song> filteredList = FXCollections.observableArrayList(MusicSearcher.searchSongs(songList, filter));
-        return filteredList;
+        long start = System.nanoTime();
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        serverFilter = filter;
+        List<Song> matches = new ArrayList<Song>(lastSongMatches);
+        List<Song> result = Collections.emptyList();
+        SongSearchPage page;
+        do
+        {
+            page = asyncBllManager.searchSongs(loggedUser, filter, MusicSearcher.PAGE_SIZE, cursor).join();
+            if(page == null)
+            {
+                page = new SongSearchPage(new ArrayList<Song>(), cursor, false);
+            }
+            matches.addAll(page.getSongs());
+            result = isFacetSelected() ? facetEngine.filter(genreFilter, durationFilter, page.getSongs()) : page.getSongs();
+            cursor = page.getNextCursor();
+        }
+        while(result.isEmpty() && page.hasMore());
+        lastSongMatches = matches;
+        serverPage = page;
+        event.commit("database", filter, result.size());
+        songSearchTimer.record(System.nanoTime() - start);
+        return result;
     }
     
     /**
-     * Returns list of playlists from {@code playlists} that matches to given filter.
+     * Searches playlists from {@code playlists} that match to given filter
+     * outside of JavaFX Application Thread. Playlists are found in the search index
+     * and when the filter extends the previous one, previous results are narrowed.
+     * The best matches are placed first. Handler receives only results of the latest filter.
      * 
      * @param filter The filter for playlists.
-     * @return The list of playlists.
+     * @param handler The handler of found playlists.
+     */
+    public void searchPlaylists(String filter, SearchService.ResultHandler<Playlist> handler)
+    {
+        playlistSearchService.submit(filter, handler);
+    }
+    
+    /**
+     * Cancels the search of songs and forgets the previous filter.
+     */
+    public void cancelSongSearch()
+    {
+        songSearchService.cancel();
+        songSearchSession.reset();
+        lastSongMatches = null;
+        serverPage = null;
+    }
+    
+    /**
+     * Sets the genre to which songs are limited.
+     * 
+     * @param genre The genre or null for all genres.
+     */
+    public void setGenreFilter(String genre)
+    {
+        genreFilter = genre;
+    }
+    
+    /**
+     * Returns the genre to which songs are limited.
+     * 
+     * @return The genre or null for all genres.
+     */
+    public String getGenreFilter()
+    {
+        return genreFilter;
+    }
+    
+    /**
+     * Sets the range of time to which songs are limited.
+     * 
+     * @param range The range of time.
+     */
+    public void setDurationFilter(DurationRange range)
+    {
+        durationFilter = range == null ? DurationRange.ANY : range;
+    }
+    
+    /**
+     * Returns the range of time to which songs are limited.
+     * 
+     * @return The range of time.
+     */
+    public DurationRange getDurationFilter()
+    {
+        return durationFilter;
+    }
+    
+    /**
+     * Returns true if songs are limited to some genre or range of time.
+     * 
+     * @return true if genre or range of time is selected.
+     */
+    public boolean isFacetSelected()
+    {
+        return genreFilter != null || !durationFilter.isAny();
+    }
+    
+    /**
+     * Returns songs of selected genre and range of time.
+     * Results are cached until songs are changed.
+     * 
+     * @return The list of songs.
+     */
+    public List<Song> getFacetedSongs()
+    {
+        return facetEngine.filter(genreFilter, durationFilter, null);
+    }
+    
+    /**
+     * Returns options for filtering songs by genre with numbers of songs
+     * in selected range of time, which match the last filter of songs.
+     * 
+     * @return The list of options.
+     */
+    public List<FacetOption<String>> getGenreFacets()
+    {
+        return facetEngine.getGenreFacets(durationFilter, lastSongMatches);
+    }
+    
+    /**
+     * Returns options for filtering songs by range of time with numbers
+     * of songs of selected genre, which match the last filter of songs.
+     * 
+     * @return The list of options.
+     */
+    public List<FacetOption<DurationRange>> getDurationFacets()
+    {
+        return facetEngine.getDurationFacets(genreFilter, lastSongMatches);
+    }
+    
+    /**
+     * Cancels the search of playlists and forgets the previous filter.
+     */
+    public void cancelPlaylistSearch()
+    {
+        playlistSearchService.cancel();
+        playlistSearchSession.reset();
+    }
+    
+    /**
+     * Returns the service running searches of songs.
+     * It provides the latency percentiles of queries.
+     * 
+     * @return The search service for songs.
+     */
+    public SearchService<Song> getSongSearchService()
+    {
+        return songSearchService;
+    }
+    
+    /**
+     * Returns the service running searches of playlists.
+     * It provides the latency percentiles of queries.
+     * 
+     * @return The search service for playlists.
+     */
+    public SearchService<Playlist> getPlaylistSearchService()
+    {
+        return playlistSearchService;
+    }
+    
+    /**
+     * Returns the search session of search box with songs.
+     * It provides the numbers of narrowed and full searches.
+     * 
+     * @return The search session for songs.
+     */
+    public SearchSession<Song> getSongSearchSession()
+    {
+        return songSearchSession;
+    }
+    
+    /**
+     * Returns the search session of search box with playlists.
+     * It provides the numbers of narrowed and full searches.
+     * 
+     * @return The search session for playlists.
      */
-    public ObservableList<Playlist> getFilteredPlaylists(String filter)
+    public SearchSession<Playlist> getPlaylistSearchSession()
     {
-        ObservableList<Playlist> filteredList = FXCollections.observableArrayList(MusicSearcher.searchPlaylists(playlists, filter));
-        return filteredList;
+        return playlistSearchSession;
     }
     
     /**
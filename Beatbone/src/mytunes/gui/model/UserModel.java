@@ -1,34 +1,38 @@
 package mytunes.gui.model;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import mytunes.be.User;
-import mytunes.bll.BllManager;
-import mytunes.bll.IBllFacade;
+import mytunes.bll.ApplicationContext;
+import mytunes.bll.IAsyncBllFacade;
+import mytunes.gui.util.FxExecutor;
 
 /**
- * The {@code UserModel} class is responsible for 
- * getting and passing users informations to 
- * Business Logic Layer. It is using singleton 
- * design pattern.
- * 
+ * The {@code UserModel} class is responsible for
+ * getting and passing users informations to
+ * Business Logic Layer. It is using singleton
+ * design pattern. Users are read and created outside of
+ * JavaFX Application Thread and futures are completed on it.
+ *
  * @author schemabuoi
  * @author kiddo
  */
 public class UserModel {
-    
+
     private static UserModel instance;
-    private IBllFacade bllManager;
-    
+    private IAsyncBllFacade bllManager;
+
     /**
-     * Creates connection with BLL.
+     * Creates connection with BLL shared by all models.
      */
     private UserModel()
     {
-        bllManager = new BllManager();
+        bllManager = ApplicationContext.createInstance().getAsyncBllFacade();
     }
-    
+
     /**
      * Returns single instance of UserModel class.
-     * 
+     *
      * @return The instance of UserModel class.
      */
     public static UserModel createInstance()
@@ -39,29 +43,45 @@ public class UserModel {
         }
         return instance;
     }
-    
+
     /**
      * Creates the user with given e-mail address and password.
-     * 
+     *
      * @param email The users e-mail address.
      * @param password The users password.
-     * @return Created user.
+     * @return The future of created user, completed on JavaFX Application Thread.
      */
-    public User createUser(String email, String password)
+    public CompletableFuture<User> createUser(String email, String password)
     {
-        return bllManager.createUser(email, password);
+        return onFxThread(bllManager.createUser(email, password));
     }
-    
+
     /**
      * Returns the user with given e-mail address and password.
-     * If there is no user with given e-mail and password returns null.
-     * 
+     * If there is no user with given e-mail and password the future has null.
+     *
      * @param email The users e-mail address.
      * @param password The users password.
-     * @return The user with given e-mail and password.
+     * @return The future of the user, completed on JavaFX Application Thread.
+     */
+    public CompletableFuture<User> getUser(String email, String password)
+    {
+        return onFxThread(bllManager.getUser(email, password));
+    }
+
+    /**
+     * Returns the future completed with the same user on JavaFX Application Thread.
      */
-    public User getUser(String email, String password)
+    private static CompletableFuture<User> onFxThread(CompletableFuture<User> future)
     {
-        return bllManager.getUser(email, password);
+        return future.thenApplyAsync(new Function<User, User>()
+            {
+                @Override
+                public User apply(User user)
+                {
+                    return user;
+                }
+            }, FxExecutor.createInstance()
+        );
     }
 }
@@ -0,0 +1,54 @@
+package mytunes.gui.util;
+
+import java.util.concurrent.Executor;
+import javafx.application.Platform;
+
+/**
+ * The {@code FxExecutor} class is running tasks on JavaFX Application Thread.
+ * It is passed to asynchronous stages of futures, so results of database
+ * operations are handled on the thread which can change the view.
+ * It is using singleton design pattern.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class FxExecutor implements Executor {
+
+    private static final FxExecutor INSTANCE = new FxExecutor();
+
+    /**
+     * Creates the executor.
+     */
+    private FxExecutor()
+    {
+    }
+
+    /**
+     * Returns single instance of FxExecutor class.
+     *
+     * @return The instance of FxExecutor class.
+     */
+    public static FxExecutor createInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs given task on JavaFX Application Thread. If it is called
+     * on this thread, the task is run immediately.
+     *
+     * @param task The task to run.
+     */
+    @Override
+    public void execute(Runnable task)
+    {
+        if(Platform.isFxApplicationThread())
+        {
+            task.run();
+        }
+        else
+        {
+            Platform.runLater(task);
+        }
+    }
+}
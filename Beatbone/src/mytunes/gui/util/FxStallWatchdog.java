@@ -0,0 +1,386 @@
+package mytunes.gui.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+import mytunes.diagnostics.FxStallEvent;
+import mytunes.diagnostics.MetricsRegistry;
+
+/**
+ * The {@code FxStallWatchdog} class is detecting stalls of JavaFX Application
+ * Thread. A background thread posts a heartbeat to JavaFX Application Thread and
+ * when the heartbeat is not run within the threshold, the stack of JavaFX
+ * Application Thread is captured. The stall is attributed to the innermost
+ * controller method and DAO method on the stack, for example
+ * {@code LoginViewController.clickLogin -> UserDAO.getUser}, and when
+ * the heartbeat finally runs the stall is logged with its whole duration.
+ * Numbers of stalls are counted for every call site and every stall is
+ * emitted as {@code FxStallEvent} to Flight Recorder. The number of stalls
+ * is published in {@code MetricsRegistry}.
+ * It is using singleton design pattern.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class FxStallWatchdog {
+
+    private static final Logger LOGGER = Logger.getLogger(FxStallWatchdog.class.getName());
+    private static final long HEARTBEAT_MILLIS = 50;
+    private static final long DEFAULT_THRESHOLD_MILLIS = 200;
+    private static final int LOGGED_FRAMES = 15;
+    private static final String CONTROLLER_PACKAGE = "mytunes.gui.controller.";
+    private static final String DAO_PACKAGE = "mytunes.dal.daos.";
+    private static final String DAL_PACKAGE = "mytunes.dal.";
+    private static final String APPLICATION_PACKAGE = "mytunes.";
+    private static FxStallWatchdog instance;
+
+    /**
+     * The statistics of stalls with the same call site.
+     */
+    private static class CallSite {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Runnable heartbeat;
+    private final Map<String, CallSite> callSites;
+    private volatile long thresholdNanos;
+    private volatile Thread fxThread;
+    private ScheduledFuture<?> checks;
+    private long postedAt;
+    private FxStallEvent heartbeatEvent;
+    private long stallPostedAt;
+    private String stallSite;
+    private StackTraceElement[] stallStack;
+    private long stallCount;
+
+    /**
+     * Creates stopped watchdog.
+     */
+    private FxStallWatchdog()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "fx-stall-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+        );
+        heartbeat = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                beat();
+            }
+        };
+        callSites = new HashMap<String, CallSite>();
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_THRESHOLD_MILLIS);
+        MetricsRegistry.createInstance().gauge("ui.stalls", new MetricsRegistry.Gauge()
+            {
+                @Override
+                public Number getValue()
+                {
+                    return getStallCount();
+                }
+            }
+        );
+    }
+
+    /**
+     * Returns single instance of FxStallWatchdog class.
+     *
+     * @return The instance of FxStallWatchdog class.
+     */
+    public static synchronized FxStallWatchdog createInstance()
+    {
+        if(instance == null)
+        {
+            instance = new FxStallWatchdog();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts posting heartbeats to JavaFX Application Thread.
+     */
+    public synchronized void start()
+    {
+        if(checks != null)
+        {
+            return;
+        }
+        checks = executor.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    check();
+                }
+            }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Stops posting heartbeats.
+     */
+    public synchronized void stop()
+    {
+        if(checks != null)
+        {
+            checks.cancel(false);
+            checks = null;
+        }
+    }
+
+    /**
+     * Sets the time after which late heartbeat is reported as a stall.
+     *
+     * @param thresholdMillis The threshold in milliseconds.
+     */
+    public void setThresholdMillis(long thresholdMillis)
+    {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Returns the time after which late heartbeat is reported as a stall.
+     *
+     * @return The threshold in milliseconds.
+     */
+    public long getThresholdMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * Returns the number of detected stalls.
+     *
+     * @return The number of stalls.
+     */
+    public synchronized long getStallCount()
+    {
+        return stallCount;
+    }
+
+    /**
+     * Returns numbers of stalls for every call site,
+     * starting with the most frequent one.
+     *
+     * @return The map with call sites and numbers of their stalls.
+     */
+    public synchronized Map<String, Long> getCallSiteCounts()
+    {
+        List<Map.Entry<String, CallSite>> entries = new ArrayList<Map.Entry<String, CallSite>>(callSites.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, CallSite>>()
+            {
+                @Override
+                public int compare(Map.Entry<String, CallSite> first, Map.Entry<String, CallSite> second)
+                {
+                    return Long.compare(second.getValue().count, first.getValue().count);
+                }
+            }
+        );
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for(Map.Entry<String, CallSite> entry : entries)
+        {
+            counts.put(entry.getKey(), entry.getValue().count);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the longest stall of given call site.
+     *
+     * @param site The call site.
+     * @return The time in milliseconds or 0 if there was no stall.
+     */
+    public synchronized double getMaxStallMillis(String site)
+    {
+        CallSite callSite = callSites.get(site);
+        return callSite == null ? 0 : callSite.maxNanos / 1e6;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder("FX stalls: ").append(stallCount);
+        for(Map.Entry<String, Long> entry : getCallSiteCounts().entrySet())
+        {
+            CallSite callSite = callSites.get(entry.getKey());
+            sb.append(String.format("%n  %-70s count=%d avg=%.1fms max=%.1fms", entry.getKey(), callSite.count,
+                    callSite.totalNanos / 1e6 / callSite.count, callSite.maxNanos / 1e6));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Posts the heartbeat if previous one was run, otherwise captures
+     * the stack of JavaFX Application Thread once the heartbeat is late
+     * more than the threshold.
+     */
+    private void check()
+    {
+        long now = System.nanoTime();
+        long posted;
+        synchronized(this)
+        {
+            posted = postedAt;
+            if(posted == 0)
+            {
+                postedAt = now;
+                heartbeatEvent = new FxStallEvent();
+                heartbeatEvent.begin();
+            }
+            else if(stallPostedAt == posted || now - posted < thresholdNanos || fxThread == null)
+            {
+                return;
+            }
+        }
+        if(posted == 0)
+        {
+            Platform.runLater(heartbeat);
+            return;
+        }
+        StackTraceElement[] stack = fxThread.getStackTrace();
+        synchronized(this)
+        {
+            if(postedAt == posted)
+            {
+                stallPostedAt = posted;
+                stallStack = stack;
+                stallSite = attribute(stack);
+            }
+        }
+    }
+
+    /**
+     * Runs on JavaFX Application Thread and logs the stall
+     * if the heartbeat was late more than the threshold.
+     */
+    private void beat()
+    {
+        fxThread = Thread.currentThread();
+        long delay;
+        String site;
+        StackTraceElement[] stack;
+        long count;
+        FxStallEvent event;
+        synchronized(this)
+        {
+            delay = System.nanoTime() - postedAt;
+            boolean stalled = stallPostedAt == postedAt;
+            event = heartbeatEvent;
+            postedAt = 0;
+            stallPostedAt = 0;
+            heartbeatEvent = null;
+            if(!stalled)
+            {
+                return;
+            }
+            site = stallSite;
+            stack = stallStack;
+            stallSite = null;
+            stallStack = null;
+            CallSite callSite = callSites.get(site);
+            if(callSite == null)
+            {
+                callSite = new CallSite();
+                callSites.put(site, callSite);
+            }
+            callSite.count++;
+            callSite.totalNanos += delay;
+            callSite.maxNanos = Math.max(callSite.maxNanos, delay);
+            stallCount++;
+            count = callSite.count;
+        }
+        if(event != null)
+        {
+            event.commit(site);
+        }
+        StringBuilder sb = new StringBuilder(String.format("FX stall: duration=%.1fms site=\"%s\" count=%d",
+                delay / 1e6, site, count));
+        for(int i = 0; i < Math.min(LOGGED_FRAMES, stack.length); i++)
+        {
+            sb.append("\n\tat ").append(stack[i]);
+        }
+        LOGGER.warning(sb.toString());
+    }
+
+    /**
+     * Returns the call site of stall with given stack - the innermost
+     * controller method and the innermost DAO method, or other method
+     * of application if there is no controller or DAO on the stack.
+     *
+     * @param stack The stack of JavaFX Application Thread.
+     * @return The call site.
+     */
+    static String attribute(StackTraceElement[] stack)
+    {
+        String handler = null;
+        String dao = null;
+        String dal = null;
+        String application = null;
+        for(StackTraceElement frame : stack)
+        {
+            String className = frame.getClassName();
+            if(!className.startsWith(APPLICATION_PACKAGE) || className.startsWith(FxStallWatchdog.class.getName()))
+            {
+                continue;
+            }
+            if(handler == null && className.startsWith(CONTROLLER_PACKAGE))
+            {
+                handler = getName(frame);
+            }
+            else if(dao == null && className.startsWith(DAO_PACKAGE))
+            {
+                dao = getName(frame);
+            }
+            else if(dal == null && className.startsWith(DAL_PACKAGE))
+            {
+                dal = getName(frame);
+            }
+            if(application == null)
+            {
+                application = getName(frame);
+            }
+        }
+        String database = dao != null ? dao : dal;
+        String caller = handler != null ? handler : application;
+        if(caller == null)
+        {
+            return stack.length > 0 ? getName(stack[0]) : "unknown";
+        }
+        if(database == null || database.equals(caller))
+        {
+            return caller;
+        }
+        return caller + " \u2192 " + database;
+    }
+
+    /**
+     * Returns the simple name of class and the name of method of given frame.
+     */
+    private static String getName(StackTraceElement frame)
+    {
+        String className = frame.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+    }
+}
@@ -0,0 +1,465 @@
+package mytunes.gui.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+import mytunes.be.LibraryMutation;
+import mytunes.be.Playlist;
+
+/**
+ * The {@code MutationQueue} class is writing changes of library to database
+ * outside of JavaFX Application Thread. Changes are applied to songs and playlists
+ * in memory first and submitted together with the action which undoes them.
+ * Submitted mutations wait for the flush delay and are merged with older
+ * mutations of the same row, so moving one song several times writes only its
+ * last position and adding and then removing a song writes nothing. All waiting
+ * mutations are written in one transaction. If the transaction fails, undo
+ * actions of all its mutations are run on JavaFX Application Thread in reverse order.
+ * Changes submitted while the transaction was written, which change the same songs
+ * or playlists, are dropped and undone together with it, because their undo actions
+ * expect the failed changes in memory and they cannot be written without them.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ */
+public class MutationQueue {
+
+    /**
+     * The writer of mutations to database.
+     */
+    public interface Store {
+
+        /**
+         * Writes all given mutations in one transaction.
+         *
+         * @param mutations The mutations.
+         * @return true if mutations were saved.
+         */
+        boolean save(List<LibraryMutation> mutations);
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(MutationQueue.class.getName());
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final Store store;
+    private final long flushDelayMillis;
+    private final ScheduledExecutorService executor;
+    private final Map<String, LibraryMutation> pending;
+    private final List<Change> pendingChanges;
+    private ScheduledFuture<?> scheduledFlush;
+    private List<LibraryMutation> flushing;
+    private Runnable failureHandler;
+    private final long[] latencies;
+    private long flushCount;
+    private long submittedCount;
+    private long writtenCount;
+    private long failedCount;
+
+    /**
+     * Creates queue writing mutations with given store.
+     *
+     * @param store The writer of mutations.
+     * @param flushDelayMillis The time in milliseconds for which mutations wait to be merged.
+     */
+    public MutationQueue(Store store, long flushDelayMillis)
+    {
+        this.store = store;
+        this.flushDelayMillis = flushDelayMillis;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "mutation-queue");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+        );
+        pending = new LinkedHashMap<String, LibraryMutation>();
+        pendingChanges = new ArrayList<Change>();
+        flushing = Collections.emptyList();
+        latencies = new long[LATENCY_SAMPLES];
+    }
+
+    /**
+     * Sets the handler which is run on JavaFX Application Thread
+     * after changes of failed transaction were undone.
+     *
+     * @param failureHandler The handler.
+     */
+    public synchronized void setFailureHandler(Runnable failureHandler)
+    {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Submits mutation which was already applied in memory.
+     *
+     * @param mutation The mutation to write.
+     * @param undo The action restoring the state before mutation in memory.
+     */
+    public void submit(LibraryMutation mutation, Runnable undo)
+    {
+        submit(Collections.singletonList(mutation), undo);
+    }
+
+    /**
+     * Submits mutations of one change which was already applied in memory.
+     * Every mutation is merged with waiting mutation of the same row. Deleting
+     * a song or a playlist also drops waiting mutations of its songs on
+     * playlists, which are deleted together with it.
+     *
+     * @param mutations The mutations to write.
+     * @param undo The action restoring the state before the change in memory.
+     */
+    public void submit(List<LibraryMutation> mutations, Runnable undo)
+    {
+        submit(mutations, Collections.<Playlist>emptyList(), undo);
+    }
+
+    /**
+     * Submits mutations of one change which was already applied in memory
+     * and which undo action also restores given playlists, for example
+     * playlists from which deleted song was removed.
+     *
+     * @param mutations The mutations to write.
+     * @param restoredPlaylists The playlists restored by undo action besides the changed rows.
+     * @param undo The action restoring the state before the change in memory.
+     */
+    public synchronized void submit(List<LibraryMutation> mutations, Collection<Playlist> restoredPlaylists, Runnable undo)
+    {
+        Change change = new Change(mutations, undo);
+        for(Playlist playlist : restoredPlaylists)
+        {
+            change.scopes.add("playlist:" + playlist.getId());
+        }
+        pendingChanges.add(change);
+        submittedCount += mutations.size();
+        addPending(mutations);
+        if(scheduledFlush == null)
+        {
+            scheduledFlush = executor.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        flushPending();
+                    }
+                }, flushDelayMillis, TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * Writes waiting mutations and waits until all mutations are written,
+     * for example before application is closed.
+     */
+    public void flush()
+    {
+        try
+        {
+            executor.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        flushPending();
+                    }
+                }
+            ).get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch(Exception e)
+        {
+            //mutations which are not written in time are lost like on crash
+        }
+    }
+
+    /**
+     * Returns the number of mutations waiting to be written or being written.
+     *
+     * @return The depth of queue.
+     */
+    public synchronized int getDepth()
+    {
+        return pending.size() + flushing.size();
+    }
+
+    /**
+     * Returns true if a change or deletion of given song is waiting
+     * to be written or is being written, so the song in memory is newer
+     * than its row in database.
+     *
+     * @param songId The id of song.
+     * @return true if song has mutations which are not written yet.
+     */
+    public synchronized boolean isSongPending(int songId)
+    {
+        return isSongChanged(pending.values(), songId) || isSongChanged(flushing, songId);
+    }
+
+    /**
+     * Returns the number of submitted mutations.
+     *
+     * @return The number of mutations.
+     */
+    public synchronized long getSubmittedCount()
+    {
+        return submittedCount;
+    }
+
+    /**
+     * Returns the number of statements written to database after merging.
+     * The difference to submitted mutations is the number of saved writes.
+     *
+     * @return The number of written mutations.
+     */
+    public synchronized long getWrittenCount()
+    {
+        return writtenCount;
+    }
+
+    /**
+     * Returns the number of transactions which failed and were undone.
+     *
+     * @return The number of failed flushes.
+     */
+    public synchronized long getFailedCount()
+    {
+        return failedCount;
+    }
+
+    /**
+     * Returns the percentile of time spent on recent flushes.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The time in milliseconds or 0 if nothing was flushed.
+     */
+    public synchronized double getFlushLatencyPercentile(double percentile)
+    {
+        int count = (int) Math.min(flushCount, LATENCY_SAMPLES);
+        if(count == 0)
+        {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        index = Math.max(0, Math.min(count - 1, index));
+        return sorted[index] / 1000000.0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("depth=%d, submitted=%d, written=%d, failed=%d, p50=%.2fms, p99=%.2fms",
+                getDepth(), getSubmittedCount(), getWrittenCount(), getFailedCount(),
+                getFlushLatencyPercentile(50), getFlushLatencyPercentile(99));
+    }
+
+    /**
+     * Returns true if given mutations change or delete given song.
+     */
+    private static boolean isSongChanged(Iterable<LibraryMutation> mutations, int songId)
+    {
+        for(LibraryMutation mutation : mutations)
+        {
+            if(mutation.getSongId() == songId && (mutation.getType() == LibraryMutation.Type.UPDATE_SONG
+                    || mutation.getType() == LibraryMutation.Type.DELETE_SONG))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges given mutations with waiting mutations of the same rows.
+     */
+    private void addPending(List<LibraryMutation> mutations)
+    {
+        for(LibraryMutation mutation : mutations)
+        {
+            if(mutation.getType() == LibraryMutation.Type.DELETE_SONG
+                    || mutation.getType() == LibraryMutation.Type.DELETE_PLAYLIST)
+            {
+                dropTracks(mutation);
+            }
+            String key = mutation.getKey();
+            LibraryMutation previous = pending.remove(key);
+            LibraryMutation merged = previous == null ? mutation : previous.mergeWith(mutation);
+            if(merged != null)
+            {
+                pending.put(key, merged);
+            }
+        }
+    }
+
+    /**
+     * Removes waiting changes which change the same songs or playlists as given
+     * failed changes or as other removed changes, and merges the mutations
+     * of remaining changes again.
+     *
+     * @return The removed changes in order of submission.
+     */
+    private List<Change> dropDependentChanges(List<Change> failed)
+    {
+        Set<String> scopes = new HashSet<String>();
+        for(Change change : failed)
+        {
+            scopes.addAll(change.scopes);
+        }
+        List<Change> dropped = new ArrayList<Change>();
+        Iterator<Change> iterator = pendingChanges.iterator();
+        while(iterator.hasNext())
+        {
+            Change change = iterator.next();
+            if(!Collections.disjoint(scopes, change.scopes))
+            {
+                scopes.addAll(change.scopes);
+                dropped.add(change);
+                iterator.remove();
+            }
+        }
+        if(!dropped.isEmpty())
+        {
+            pending.clear();
+            for(Change change : pendingChanges)
+            {
+                addPending(change.mutations);
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Removes waiting mutations of songs on playlists
+     * which belong to deleted song or playlist.
+     */
+    private void dropTracks(LibraryMutation deletion)
+    {
+        Iterator<LibraryMutation> iterator = pending.values().iterator();
+        while(iterator.hasNext())
+        {
+            LibraryMutation mutation = iterator.next();
+            if(mutation.isTrack() && (deletion.getType() == LibraryMutation.Type.DELETE_SONG
+                    ? mutation.getSongId() == deletion.getSongId() : mutation.getPlaylistId() == deletion.getPlaylistId()))
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes all waiting mutations in one transaction and undoes them
+     * in memory if the transaction fails, also when the store throws
+     * an unchecked exception. Waiting changes which depend on the failed
+     * ones are dropped and undone first.
+     */
+    private void flushPending()
+    {
+        final List<LibraryMutation> mutations;
+        final List<Change> changes;
+        synchronized(this)
+        {
+            scheduledFlush = null;
+            mutations = new ArrayList<LibraryMutation>(pending.values());
+            changes = new ArrayList<Change>(pendingChanges);
+            pending.clear();
+            pendingChanges.clear();
+            flushing = mutations;
+        }
+        if(mutations.isEmpty())
+        {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean saved = false;
+        try
+        {
+            saved = store.save(mutations);
+        }
+        catch(RuntimeException e)
+        {
+            LOGGER.log(Level.WARNING, "Writing of " + mutations.size() + " mutations failed", e);
+        }
+        long elapsed = System.nanoTime() - start;
+        final Runnable handler;
+        final List<Change> undone = new ArrayList<Change>(changes);
+        synchronized(this)
+        {
+            flushing = Collections.emptyList();
+            latencies[(int) (flushCount % LATENCY_SAMPLES)] = elapsed;
+            flushCount++;
+            if(saved)
+            {
+                writtenCount += mutations.size();
+                return;
+            }
+            failedCount++;
+            handler = failureHandler;
+            undone.addAll(dropDependentChanges(changes));
+        }
+        final List<Runnable> undos = new ArrayList<Runnable>(undone.size());
+        for(Change change : undone)
+        {
+            undos.add(change.undo);
+        }
+        Collections.reverse(undos);
+        Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for(Runnable undo : undos)
+                    {
+                        undo.run();
+                    }
+                    if(handler != null)
+                    {
+                        handler.run();
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * One submitted change - its mutations, the action which undoes it
+     * and the songs and playlists which are changed by it or by its undo.
+     */
+    private static class Change {
+
+        private final List<LibraryMutation> mutations;
+        private final Runnable undo;
+        private final Set<String> scopes;
+
+        private Change(List<LibraryMutation> mutations, Runnable undo)
+        {
+            this.mutations = mutations;
+            this.undo = undo;
+            scopes = new HashSet<String>();
+            for(LibraryMutation mutation : mutations)
+            {
+                scopes.add(mutation.isTrack() || mutation.getPlaylistId() != 0
+                        ? "playlist:" + mutation.getPlaylistId() : "song:" + mutation.getSongId());
+            }
+        }
+    }
+}
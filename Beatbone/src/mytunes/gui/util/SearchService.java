@@ -0,0 +1,264 @@
+package mytunes.gui.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javafx.application.Platform;
+
+/**
+ * The {@code SearchService} class is running searches outside
+ * of JavaFX Application Thread. Every query is started after the debounce
+ * time, so fast typing runs only the last query. A new query cancels the
+ * one which is waiting or running, and only results of the latest query
+ * are passed to the handler on JavaFX Application Thread.
+ *
+ * @author schemabuoi
+ * @author kiddo
+ * @param <T> The type of searched items.
+ */
+public class SearchService<T> {
+
+    /**
+     * The search executed outside of JavaFX Application Thread.
+     *
+     * @param <T> The type of searched items.
+     */
+    public interface Query<T> {
+
+        /**
+         * Returns items matching given filter.
+         *
+         * @param filter The filter.
+         * @return The list of matching items.
+         */
+        List<T> search(String filter);
+    }
+
+    /**
+     * The handler receiving results on JavaFX Application Thread.
+     *
+     * @param <T> The type of searched items.
+     */
+    public interface ResultHandler<T> {
+
+        /**
+         * Receives the results of the latest query.
+         *
+         * @param filter The filter of query.
+         * @param results The list of matching items.
+         */
+        void handle(String filter, List<T> results);
+    }
+
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "search-service");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }
+    );
+
+    private final Query<T> query;
+    private final AtomicLong generation;
+    private volatile long debounceMillis;
+    private ScheduledFuture<?> pending;
+    private final long[] latencies;
+    private long completedCount;
+    private long cancelledCount;
+
+    /**
+     * Creates service running given query.
+     *
+     * @param query The search to run.
+     * @param debounceMillis The time in milliseconds to wait before query is started.
+     */
+    public SearchService(Query<T> query, long debounceMillis)
+    {
+        this.query = query;
+        this.debounceMillis = debounceMillis;
+        generation = new AtomicLong();
+        latencies = new long[LATENCY_SAMPLES];
+    }
+
+    /**
+     * Schedules search with given filter. The query waiting for
+     * start or still running is cancelled and its results are dropped.
+     *
+     * @param filter The filter.
+     * @param handler The handler of results.
+     */
+    public synchronized void submit(final String filter, final ResultHandler<T> handler)
+    {
+        final long queryGeneration = cancelPending();
+        pending = EXECUTOR.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    execute(query, queryGeneration, filter, handler);
+                }
+            }, debounceMillis, TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Runs given query without waiting, as a continuation of the latest
+     * submitted query - for example for reading its next page. Results are
+     * dropped if another query is submitted in the meantime.
+     *
+     * @param next The query to run.
+     * @param filter The filter of the latest query.
+     * @param handler The handler of results.
+     */
+    public synchronized void submitNext(final Query<T> next, final String filter, final ResultHandler<T> handler)
+    {
+        final long queryGeneration = generation.get();
+        EXECUTOR.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    execute(next, queryGeneration, filter, handler);
+                }
+            }
+        );
+    }
+
+    /**
+     * Cancels the query waiting for start or still running,
+     * so its results are never passed to the handler.
+     */
+    public synchronized void cancel()
+    {
+        cancelPending();
+    }
+
+    /**
+     * Sets the time to wait before query is started.
+     *
+     * @param debounceMillis The time in milliseconds.
+     */
+    public void setDebounceMillis(long debounceMillis)
+    {
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Returns the time to wait before query is started.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getDebounceMillis()
+    {
+        return debounceMillis;
+    }
+
+    /**
+     * Returns the number of queries which finished.
+     *
+     * @return The number of completed queries.
+     */
+    public synchronized long getCompletedCount()
+    {
+        return completedCount;
+    }
+
+    /**
+     * Returns the number of queries which were replaced by newer
+     * queries before their results were published.
+     *
+     * @return The number of cancelled queries.
+     */
+    public synchronized long getCancelledCount()
+    {
+        return cancelledCount;
+    }
+
+    /**
+     * Returns the percentile of time spent on running recent queries.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The time in milliseconds or 0 if no query was completed.
+     */
+    public synchronized double getLatencyPercentile(double percentile)
+    {
+        int count = (int) Math.min(completedCount, LATENCY_SAMPLES);
+        if(count == 0)
+        {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        index = Math.max(0, Math.min(count - 1, index));
+        return sorted[index] / 1000000.0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("completed=%d, cancelled=%d, p50=%.2fms, p90=%.2fms, p99=%.2fms",
+                getCompletedCount(), getCancelledCount(),
+                getLatencyPercentile(50), getLatencyPercentile(90), getLatencyPercentile(99));
+    }
+
+    /**
+     * Cancels pending query and returns the generation of next query.
+     */
+    private long cancelPending()
+    {
+        if(pending != null && !pending.isDone())
+        {
+            pending.cancel(false);
+            cancelledCount++;
+        }
+        pending = null;
+        return generation.incrementAndGet();
+    }
+
+    /**
+     * Runs the query if it is still the latest one
+     * and publishes its results on JavaFX Application Thread.
+     */
+    private void execute(Query<T> query, final long queryGeneration, final String filter, final ResultHandler<T> handler)
+    {
+        if(queryGeneration != generation.get())
+        {
+            return;
+        }
+        long start = System.nanoTime();
+        final List<T> results = query.search(filter);
+        long elapsed = System.nanoTime() - start;
+        synchronized(this)
+        {
+            latencies[(int) (completedCount % LATENCY_SAMPLES)] = elapsed;
+            completedCount++;
+        }
+        if(queryGeneration != generation.get())
+        {
+            return;
+        }
+        Platform.runLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if(queryGeneration == generation.get())
+                    {
+                        handler.handle(filter, results);
+                    }
+                }
+            }
+        );
+    }
+}